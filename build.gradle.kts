@@ -15,6 +15,11 @@ repositories {
 
 val junitVersion = "5.12.1"
 
+// Class-data-sharing archive (AppCDS) shipped in the jlink image, see cdsArchive below.
+// Opt-in (-Pcds): recording it runs the application, which needs a display.
+val cdsArchiveName = "bibliofx.jsa"
+val cdsEnabled = providers.gradleProperty("cds").isPresent
+
 java {
     toolchain {
         languageVersion = JavaLanguageVersion.of(24)
@@ -44,13 +49,27 @@ dependencies {
 
 tasks.withType<Test> {
     useJUnitPlatform()
+    // Stub HTTP servers of the tests (com.sun.net.httpserver)
+    extensions.configure<org.javamodularity.moduleplugin.extensions.TestModuleOptions> {
+        addModules = listOf("jdk.httpserver")
+        addReads = mapOf("fr.cactusstudio.bibliofx" to "jdk.httpserver")
+    }
+}
+
+tasks.compileTestJava {
+    extensions.configure<org.javamodularity.moduleplugin.extensions.CompileTestModuleOptions> {
+        addModules = listOf("jdk.httpserver")
+        addReads = mapOf("fr.cactusstudio.bibliofx" to "jdk.httpserver")
+    }
 }
 
 jlink {
     imageZip.set(layout.buildDirectory.file("distributions/app-${javafx.platform.classifier}.zip"))
-    options.set(listOf("--strip-debug", "--compress", "2", "--no-header-files", "--no-man-pages"))
+    // --generate-cds-archive: base archive of the JDK classes, required by the application archive
+    options.set(listOf("--strip-debug", "--compress", "2", "--no-header-files", "--no-man-pages", "--generate-cds-archive"))
     launcher {
         name = "BiblioFX"
+        if (cdsEnabled) jvmArgs = listOf("-XX:SharedArchiveFile={{BIN_DIR}}/../lib/$cdsArchiveName")
     }
     jpackage {
         // On Windows, this will create an .exe installer
@@ -59,6 +78,8 @@ jlink {
         installerName = "BiblioFX-setup"
         vendor = "CactusStudio"
         appVersion = project.version.toString()
+        // The runtime image (with its archive) is copied to <app>/runtime
+        if (cdsEnabled) jvmArgs = listOf("-XX:SharedArchiveFile=\$APPDIR/../runtime/lib/$cdsArchiveName")
         // You can set icon if available in resources, e.g.: src/main/resources/icon.ico
         // icon = file("src/main/resources/icon.ico").absolutePath
         installerOptions = listOf(
@@ -69,6 +90,81 @@ jlink {
 }
 
 
+/**
+ * Runs the application from the jlink image through its training scenario
+ * (Training entry point: sample library, search, add dialog, exit).
+ * @return the standard error output (startup trace)
+ */
+fun runTraining(image: File, home: File, jvmArgs: List<String>): String {
+    val java = File(image, if (System.getProperty("os.name").startsWith("Windows")) "bin/java.exe" else "bin/java")
+    val command = listOf(java.absolutePath, "-Duser.home=${home.absolutePath}") + jvmArgs +
+            listOf("-m", "fr.cactusstudio.bibliofx/fr.cactusstudio.bibliofx.Training")
+    val process = ProcessBuilder(command).directory(home).redirectOutput(ProcessBuilder.Redirect.DISCARD).start()
+    val err = process.errorStream.bufferedReader().readText()
+    if (process.waitFor() != 0) throw GradleException("Training run failed (exit ${process.exitValue()}): ${command.joinToString(" ")}\n$err")
+    return err
+}
+
+val imageDir = layout.buildDirectory.dir("image")
+val cdsHome = layout.buildDirectory.dir("cds/home")
+
+// Application class-data-sharing archive, recorded from a training run of the image.
+// Only with -Pcds; needs a display (on a headless Linux machine: xvfb-run ./gradlew -Pcds makePortable).
+tasks.register("cdsArchive") {
+    group = "distribution"
+    description = "Record the AppCDS archive of the jlink image from a training run of the application (requires -Pcds)."
+    dependsOn("jlink")
+    doFirst {
+        if (!cdsEnabled) throw GradleException("The CDS archive is opt-in: run with -Pcds so that the launcher uses it")
+    }
+    doLast {
+        val image = imageDir.get().asFile
+        val home = cdsHome.get().asFile
+        val archive = File(image, "lib/$cdsArchiveName")
+        home.deleteRecursively()
+        home.mkdirs()
+        archive.delete()
+        // First run writes the sample library; the second one starts on existing data, like a normal launch, and records the loaded classes
+        runTraining(image, home, emptyList())
+        runTraining(image, home, listOf("-XX:ArchiveClassesAtExit=${archive.absolutePath}"))
+        if (!archive.isFile) throw GradleException("No CDS archive was written to $archive")
+        logger.lifecycle("CDS archive: $archive (${archive.length() / 1024} KiB)")
+    }
+}
+
+// Checks that the image starts with the archive and that application classes come from it,
+// then compares time-to-interactive with and without it (best of 3 runs each)
+tasks.register("verifyCdsArchive") {
+    group = "verification"
+    description = "Check that the jlink image loads its classes from the AppCDS archive and report the startup gain."
+    dependsOn("cdsArchive")
+    doLast {
+        val image = imageDir.get().asFile
+        val home = cdsHome.get().asFile
+        val archive = File(image, "lib/$cdsArchiveName")
+        val classLog = File(home, "class-load.log")
+        // -Xshare:on: the JVM refuses to start if the archive cannot be mapped
+        runTraining(image, home, listOf("-Xshare:on", "-XX:SharedArchiveFile=${archive.absolutePath}",
+                "-Xlog:class+load=info:file=${classLog.name}"))
+        val loaded = classLog.readLines().filter { it.contains("source: ") }
+        val fromArchive = loaded.filter { it.contains("source: shared objects file") }
+        val appFromArchive = fromArchive.count { it.contains(" fr.cactusstudio.bibliofx.") }
+        if (appFromArchive == 0 || fromArchive.none { it.contains(" fr.cactusstudio.bibliofx.Controller ") }) {
+            throw GradleException("Application classes are not loaded from $archive (see $classLog)")
+        }
+        logger.lifecycle("Classes loaded from the CDS archives: ${fromArchive.size}/${loaded.size} ($appFromArchive application classes)")
+
+        val interactive = Regex("""(\d+) ms .*interactif""")
+        fun timeToInteractive(jvmArgs: List<String>): Long = (1..3).minOf {
+            val trace = runTraining(image, home, jvmArgs + "-Dbibliofx.startupTrace=true")
+            interactive.find(trace)?.groupValues?.get(1)?.toLong() ?: throw GradleException("No startup trace:\n$trace")
+        }
+        val withoutArchive = timeToInteractive(emptyList())
+        val withArchive = timeToInteractive(listOf("-XX:SharedArchiveFile=${archive.absolutePath}"))
+        logger.lifecycle("Time to interactive: $withoutArchive ms without the application archive, $withArchive ms with it")
+    }
+}
+
 // Convenience task to create the Windows installer quickly
 tasks.register("makeInstaller") {
     group = "distribution"
@@ -88,4 +184,11 @@ tasks.register("makeImage") {
     group = "distribution"
     description = "Build the custom runtime image (unzipped) with launch scripts in build/image (via jlink)."
     dependsOn("jlink")
+    if (cdsEnabled) dependsOn("cdsArchive")
+}
+
+// With -Pcds, the archive is recorded into the image before it is zipped or packaged
+if (cdsEnabled) {
+    tasks.named("jlinkZip") { dependsOn("cdsArchive") }
+    tasks.named("jpackageImage") { dependsOn("cdsArchive") }
 }
@@ -1,5 +1,6 @@
 package fr.cactusstudio.bibliofx;
 
+import fr.cactusstudio.bibliofx.BookLookupService.Suggestion;
 import fr.cactusstudio.bibliofx.model.Book;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
@@ -9,7 +10,8 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
-import java.util.Locale;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Contrôleur de la boîte de dialogue d'ajout/édition d'un livre.
@@ -88,115 +90,58 @@ public class AddEditBookController {
         });
     }
 
-    private static class Suggestion {
-        final String title;
-        final String author;
-        final Integer year;
-        final String genre;
-        final String summary;
-        final String coverUrl;
-        Suggestion(String t, String a, Integer y, String g, String s, String cu) { this.title = t; this.author = a; this.year = y; this.genre = g; this.summary = s; this.coverUrl = cu; }
-        @Override public String toString() { return title + (author != null ? " — " + author : ""); }
-    }
+    /** Nombre maximal de suggestions affichées. */
+    private static final int MAX_SUGGESTIONS = 5;
 
     private final javafx.collections.ObservableList<Suggestion> suggestions = FXCollections.observableArrayList();
+    /** Suggestions du catalogue local ({@link #suggestions} est alors vide, et inversement). */
+    private final List<LocalCatalog.Entry> catalogSuggestions = new java.util.ArrayList<>();
+    private BookLookupService lookup;
+    private LocalCatalog catalog;
+    /** Recherche de suggestions en cours (remplacée par toute nouvelle recherche). */
+    private CompletableFuture<List<Suggestion>> pendingSearch;
+    /** Lecture en cours des détails d'une suggestion du catalogue (remplacée par tout nouveau choix). */
+    private CompletableFuture<Suggestion> pendingDetails;
+
+    /**
+     * @param lookup service de recherche des suggestions (partagé par les boîtes de dialogue)
+     */
+    public void setLookupService(BookLookupService lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * @param catalog catalogue local consulté avant la recherche en ligne
+     */
+    public void setCatalog(LocalCatalog catalog) {
+        this.catalog = catalog;
+    }
 
     /**
      * Lance en arrière-plan la recherche de suggestions Google Books pour la requête.
+     * Une recherche précédente encore en cours est abandonnée: seule la dernière s'affiche.
      * @param query texte à rechercher (typiquement le titre)
      */
     private void fetchSuggestionsAsync(String query) {
-        java.util.concurrent.CompletableFuture.runAsync(() -> {
-            try {
-                var uri = java.net.URI.create("https://www.googleapis.com/books/v1/volumes?q=" + java.net.URLEncoder.encode(query, java.nio.charset.StandardCharsets.UTF_8) + "&maxResults=5");
-                var client = java.net.http.HttpClient.newHttpClient();
-                var req = java.net.http.HttpRequest.newBuilder(uri).GET().build();
-                var resp = client.send(req, java.net.http.HttpResponse.BodyHandlers.ofString());
-                var json = resp.body();
-                var parsed = com.google.gson.JsonParser.parseString(json).getAsJsonObject();
-                var items = parsed.has("items") ? parsed.getAsJsonArray("items") : new com.google.gson.JsonArray();
-                java.util.List<Suggestion> list = new java.util.ArrayList<>();
-                for (var el : items) {
-                    var vol = el.getAsJsonObject().getAsJsonObject("volumeInfo");
-                    String t = vol.has("title") ? vol.get("title").getAsString() : null;
-                    String a = null;
-                    if (vol.has("authors") && vol.get("authors").isJsonArray() && vol.getAsJsonArray("authors").size() > 0) {
-                        a = vol.getAsJsonArray("authors").get(0).getAsString();
-                    }
-                    Integer y = null;
-                    if (vol.has("publishedDate")) {
-                        String pd = vol.get("publishedDate").getAsString();
-                        // take first 4 digits if present
-                        if (pd.length() >= 4 && pd.substring(0,4).chars().allMatch(Character::isDigit)) {
-                            y = Integer.parseInt(pd.substring(0,4));
-                        }
-                    }
-                    String suggestedGenre = null;
-                    if (vol.has("categories") && vol.get("categories").isJsonArray() && vol.getAsJsonArray("categories").size() > 0) {
-                        String rawCat = vol.getAsJsonArray("categories").get(0).getAsString();
-                        suggestedGenre = mapCategoryToGenre(rawCat);
-                    }
-
-                    String summary = vol.has("description") ? vol.get("description").getAsString() : null;
-
-                    String coverUrl = null;
-                    if (vol.has("imageLinks") && vol.get("imageLinks").isJsonObject()) {
-                        var imgs = vol.getAsJsonObject("imageLinks");
-
-                        String[] keys = new String[]{"extraLarge","large","medium","small","thumbnail","smallThumbnail"};
-                        for (String k : keys) {
-                            if (imgs.has(k) && imgs.get(k).isJsonPrimitive()) {
-                                coverUrl = imgs.get(k).getAsString();
-                                break;
-                            }
-                        }
-                    }
-                    if (coverUrl != null && coverUrl.startsWith("http:")) {
-                        coverUrl = "https:" + coverUrl.substring(5);
-                    }
-                    if (t != null) list.add(new Suggestion(t, a, y, suggestedGenre, summary, coverUrl));
-                }
-                javafx.application.Platform.runLater(() -> {
-                    suggestions.setAll(list);
-                    showSuggestionPopup();
-                });
-            } catch (Exception ignored) {
+        if (lookup == null) return;
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        CompletableFuture<List<Suggestion>> search = lookup.search(query);
+        pendingSearch = search;
+        search.whenComplete((list, error) -> javafx.application.Platform.runLater(() -> {
+            if (pendingSearch != search) return;
+            pendingSearch = null;
+            if (error != null) {
+                System.err.println("Suggestions indisponibles: " + error.getMessage());
+                return;
             }
-        });
+            catalogSuggestions.clear();
+            suggestions.setAll(list);
+            showSuggestionPopup();
+        }));
     }
 
     private javafx.scene.control.ContextMenu suggestionMenu;
 
-    // Map a Google Books category string to one of our supported genres
-    /**
-         * Convertit une catégorie Google Books en l'un des genres supportés par l'application.
-         * @param rawCategory chaîne de catégorie brute
-         * @return genre mappé ou null si non reconnu
-         */
-        private static String mapCategoryToGenre(String rawCategory) {
-        if (rawCategory == null) return null;
-        String c = rawCategory.toLowerCase(Locale.ROOT);
-
-        c = c.replace('’', '\'');
-
-        if (c.contains("roman") || c.contains("fiction") || c.contains("novel")) return "Roman";
-        if (c.contains("essai") || c.contains("essay")) return "Essai";
-        if (c.contains("science") || c.contains("sciences")) return "Science";
-        if (c.contains("histoire") || c.contains("history")) return "Histoire";
-        if (c.contains("biograph") || c.contains("autobiograph")) return "Biographie";
-        if (c.contains("fantasy") || c.contains("fantastique") || c.contains("fantaisie")) return "Fantastique";
-        if (c.contains("policier") || c.contains("detective") || c.contains("crime") || c.contains("mystery") || c.contains("thriller")) return "Policier";
-
-        if (c.contains("/")) {
-            String[] parts = c.split("/");
-            for (String p : parts) {
-                String m = mapCategoryToGenre(p.trim());
-                if (m != null) return m;
-            }
-        }
-        return null;
-    }
-
     @FXML
     private void onSearchSuggestions() {
         String q = titleField.getText() == null ? "" : titleField.getText().trim();
@@ -207,7 +152,18 @@ public class AddEditBookController {
             titleModified = !q.isBlank();
         }
         if (q.length() >= 2) {
-            fetchSuggestionsAsync(q);
+            // Catalogue local d'abord (hors ligne, immédiat); Google Books s'il ne connaît rien d'approchant
+            List<LocalCatalog.Entry> local = catalog != null ? catalog.suggest(q, MAX_SUGGESTIONS) : List.of();
+            if (local.isEmpty()) {
+                fetchSuggestionsAsync(q);
+            } else {
+                if (pendingSearch != null) pendingSearch.cancel(true);
+                pendingSearch = null;
+                suggestions.clear();
+                catalogSuggestions.clear();
+                catalogSuggestions.addAll(local);
+                showSuggestionPopup();
+            }
         } else if (suggestionMenu != null && suggestionMenu.isShowing()) {
             suggestionMenu.hide();
         }
@@ -229,6 +185,11 @@ public class AddEditBookController {
             item.setOnAction(e -> applySuggestion(s));
             suggestionMenu.getItems().add(item);
         }
+        for (LocalCatalog.Entry entry : catalogSuggestions) {
+            var item = new javafx.scene.control.MenuItem(entry.toString());
+            item.setOnAction(e -> applyCatalogEntry(entry));
+            suggestionMenu.getItems().add(item);
+        }
         if (!suggestionMenu.getItems().isEmpty()) {
 
             var scene = titleField.getScene();
@@ -253,15 +214,36 @@ public class AddEditBookController {
         }
     }
 
+    /**
+     * Remplit aussitôt titre, auteur et année, puis genre, résumé et couverture une fois
+     * relus par le catalogue.
+     * @param entry livre choisi dans le catalogue local
+     */
+    private void applyCatalogEntry(LocalCatalog.Entry entry) {
+        applySuggestion(new Suggestion(entry.title(), entry.author(), entry.year() > 0 ? entry.year() : null, null, null, null));
+        if (pendingDetails != null) pendingDetails.cancel(true);
+        CompletableFuture<Suggestion> details = catalog.details(entry);
+        pendingDetails = details;
+        details.whenComplete((s, error) -> javafx.application.Platform.runLater(() -> {
+            if (pendingDetails != details) return;
+            pendingDetails = null;
+            if (error != null) {
+                System.err.println("Détails indisponibles: " + error.getMessage());
+                return;
+            }
+            applySuggestion(s);
+        }));
+    }
+
     private void applySuggestion(Suggestion s) {
-        if (s.title != null) titleField.setText(s.title);
-        if (s.author != null) authorField.setText(s.author);
-        if (s.year != null) yearField.setText(Integer.toString(s.year));
+        if (s.title() != null) titleField.setText(s.title());
+        if (s.author() != null) authorField.setText(s.author());
+        if (s.year() != null) yearField.setText(Integer.toString(s.year()));
 
-        if (s.genre != null && !s.genre.isBlank()) {
+        if (s.genre() != null && !s.genre().isBlank()) {
 
             if (genreCombo.getValue() == null || genreCombo.getValue().isBlank() || "Autre".equals(genreCombo.getValue())) {
-                genreCombo.setValue(s.genre);
+                genreCombo.setValue(s.genre());
             }
         } else if (genreCombo.getValue() == null || genreCombo.getValue().isBlank()) {
             genreCombo.setValue("Autre");
@@ -270,16 +252,16 @@ public class AddEditBookController {
         if (summaryField != null) {
             String current = summaryField.getText();
             if (current == null || current.isBlank()) {
-                if (s.summary != null && !s.summary.isBlank()) {
-                    summaryField.setText(s.summary);
+                if (s.summary() != null && !s.summary().isBlank()) {
+                    summaryField.setText(s.summary());
                 }
             }
         }
 
         if (coverUrlField != null) {
             String current = coverUrlField.getText();
-            if ((current == null || current.isBlank()) && s.coverUrl != null && !s.coverUrl.isBlank()) {
-                coverUrlField.setText(s.coverUrl);
+            if ((current == null || current.isBlank()) && s.coverUrl() != null && !s.coverUrl().isBlank()) {
+                coverUrlField.setText(s.coverUrl());
             }
         }
         if (suggestionMenu != null) suggestionMenu.hide();
@@ -378,12 +360,13 @@ public class AddEditBookController {
         if (!available) {
             result.setBorrowedAt(now);
         } else {
-            result.setBorrowedAt(null);
+            result.setBorrowedAt(Book.NO_DATE);
         }
         close();
     }
 
     private void close() {
+        if (pendingSearch != null) pendingSearch.cancel(true);
         Stage stage = (Stage) okBtn.getScene().getWindow();
         stage.close();
     }
@@ -7,8 +7,6 @@ import javafx.scene.control.TextArea;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
-import java.io.File;
-
 /**
  * Contrôleur chargé d'afficher les détails d'un livre (vue book.fxml incluse).
  */
@@ -24,6 +22,17 @@ public class BookDetailController {
     @FXML private TextArea summaryArea;
     @FXML private ImageView coverImageView;
 
+    private CoverCache coverCache;
+    /** Couverture en cours de chargement pour le livre affiché (null sinon). */
+    private CoverCache.Request coverRequest;
+
+    /**
+     * @param coverCache cache des images de couverture
+     */
+    public void setCoverCache(CoverCache coverCache) {
+        this.coverCache = coverCache;
+    }
+
     /**
      * Alimente la vue avec les informations du livre fourni.
      * Si le livre est null, réinitialise l'affichage.
@@ -41,6 +50,7 @@ public class BookDetailController {
             borrowedAtLabel.setText("Prêté le: -");
             if (readingStatusLabel != null) readingStatusLabel.setText("Statut de lecture: -");
             if (summaryArea != null) summaryArea.setText("");
+            cancelCover();
             if (coverImageView != null) coverImageView.setImage(null);
         } else {
             titleLabel.setText("Titre: " + book.getTitle());
@@ -59,27 +69,24 @@ public class BookDetailController {
                 String sum = book.getSummary();
                 summaryArea.setText(sum == null || sum.isBlank() ? "" : sum);
             }
-            // Image de couverture
+            // Image de couverture (depuis le cache si elle a déjà été affichée)
             if (coverImageView != null) {
+                cancelCover();
                 String cu = book.getCoverUrl();
-                if (cu == null || cu.isBlank()) {
+                if (cu == null || cu.isBlank() || coverCache == null) {
                     coverImageView.setImage(null);
                 } else {
-                    try {
-                        Image img;
-                        if (cu.startsWith("http://") || cu.startsWith("https://") || cu.startsWith("file:")) {
-                            img = new Image(cu, true);
-                        } else {
-                            File f = new File(cu);
-                            String uri = f.exists() ? f.toURI().toString() : cu;
-                            img = new Image(uri, true);
-                        }
-                        coverImageView.setImage(img);
-                    } catch (Exception e) {
-                        coverImageView.setImage(null);
-                    }
+                    Image cached = coverCache.getIfPresent(cu);
+                    coverImageView.setImage(cached);
+                    if (cached == null) coverRequest = coverCache.load(cu, coverImageView::setImage);
                 }
             }
         }
     }
-}
\ No newline at end of file
+
+    /** Abandonne le chargement de la couverture précédente (la sélection a changé). */
+    private void cancelCover() {
+        if (coverRequest != null) coverRequest.cancel();
+        coverRequest = null;
+    }
+}
@@ -0,0 +1,319 @@
+package fr.cactusstudio.bibliofx;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche de métadonnées de livres (API Google Books) pour pré-remplir le formulaire.
+ * <p>
+ * Un seul client HTTP/2 est partagé par toutes les recherches. Les réponses analysées
+ * sont gardées en cache par requête normalisée (minuscules, espaces réduits), pour une
+ * durée limitée et en nombre limité (les moins récemment utilisées sont évincées). Des
+ * recherches identiques simultanées partagent une seule requête HTTP, qui n'est annulée
+ * que lorsque plus aucun appelant ne l'attend. Les requêtes sont limitées par un seau à
+ * jetons (débit moyen et rafale): au-delà, elles sont différées, jamais refusées.
+ * <p>
+ * Réglages ({@code -D...}): {@code bibliofx.booksApi} (adresse de l'API, par exemple un
+ * serveur local de test), {@code bibliofx.booksApi.connectTimeoutMs} (3 s),
+ * {@code bibliofx.booksApi.timeoutMs} (8 s), {@code bibliofx.booksApi.ratePerSecond} (2),
+ * {@code bibliofx.booksApi.burst} (5). Méthodes utilisables depuis n'importe quel thread.
+ */
+public class BookLookupService {
+    /** Adresse par défaut de l'API. */
+    public static final String DEFAULT_API = "https://www.googleapis.com/books/v1/volumes";
+    /** Nombre de résultats demandés par recherche. */
+    private static final int MAX_RESULTS = 5;
+    /** Durée de vie d'une réponse en cache. */
+    private static final long CACHE_TTL_MS = 10 * 60_000L;
+    /** Nombre maximal de recherches gardées en cache. */
+    private static final int CACHE_MAX_ENTRIES = 256;
+
+    /**
+     * Livre proposé par l'API.
+     * @param title    titre
+     * @param author   premier auteur (null si inconnu)
+     * @param year     année de publication (null si inconnue)
+     * @param genre    genre de l'application correspondant à la catégorie (null si aucun)
+     * @param summary  résumé (null si absent)
+     * @param coverUrl meilleure image de couverture disponible, en https (null si absente)
+     */
+    public record Suggestion(String title, String author, Integer year, String genre, String summary, String coverUrl) {
+        @Override
+        public String toString() {
+            return title + (author != null ? " — " + author : "");
+        }
+    }
+
+    private final URI api;
+    private final Duration requestTimeout;
+    private final HttpClient http;
+    private final TokenBucket limiter;
+
+    // Etat partagé, protégé par le verrou de l'instance
+    /** Réponses en cache, de la moins récemment utilisée à la plus récente. */
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(64, 0.75f, true);
+    /** Recherches en cours, par requête normalisée. */
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+
+    private record Cached(List<Suggestion> suggestions, long expiresAt) {
+    }
+
+    /** Requête HTTP en cours et nombre d'appelants qui l'attendent. */
+    private static final class InFlight {
+        CompletableFuture<List<Suggestion>> result;
+        int waiters;
+    }
+
+    /**
+     * Service configuré par les propriétés système (voir la description de la classe).
+     */
+    public BookLookupService() {
+        this(URI.create(System.getProperty("bibliofx.booksApi", DEFAULT_API)),
+                Duration.ofMillis(Long.getLong("bibliofx.booksApi.connectTimeoutMs", 3000)),
+                Duration.ofMillis(Long.getLong("bibliofx.booksApi.timeoutMs", 8000)),
+                Double.parseDouble(System.getProperty("bibliofx.booksApi.ratePerSecond", "2")),
+                Integer.getInteger("bibliofx.booksApi.burst", 5));
+    }
+
+    /**
+     * @param api            adresse de l'API (ressource {@code volumes})
+     * @param connectTimeout délai maximal d'établissement de la connexion
+     * @param requestTimeout délai maximal d'une réponse
+     * @param ratePerSecond  nombre moyen de requêtes par seconde
+     * @param burst          nombre de requêtes pouvant partir sans attente
+     */
+    public BookLookupService(URI api, Duration connectTimeout, Duration requestTimeout, double ratePerSecond, int burst) {
+        this.api = api;
+        this.requestTimeout = requestTimeout;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.limiter = new TokenBucket(ratePerSecond, burst);
+    }
+
+    /**
+     * Recherche des livres correspondant au texte.
+     * <p>
+     * Le résultat est propre à l'appelant: l'annuler (recherche remplacée par une plus
+     * récente) ne touche pas les autres appelants de la même recherche, et interrompt la
+     * requête HTTP si personne d'autre ne l'attend.
+     * @param query texte recherché (typiquement le titre)
+     * @return les suggestions (liste vide si aucune); en échec avec une {@link IOException}
+     * si le service ne répond pas correctement
+     */
+    public CompletableFuture<List<Suggestion>> search(String query) {
+        String key = normalize(query);
+        if (key.isEmpty()) return CompletableFuture.completedFuture(List.of());
+        InFlight f;
+        synchronized (this) {
+            Cached c = cache.get(key);
+            if (c != null && c.expiresAt > System.currentTimeMillis()) return CompletableFuture.completedFuture(c.suggestions);
+            if (c != null) cache.remove(key);
+            f = inFlight.get(key);
+            if (f == null) {
+                InFlight created = new InFlight();
+                created.result = fetch(key);
+                created.result.whenComplete((list, error) -> done(key, created, list));
+                inFlight.put(key, created);
+                f = created;
+            }
+            f.waiters++;
+        }
+        InFlight shared = f;
+        // Résultat propre à l'appelant, à annuler sans toucher à la requête partagée
+        CompletableFuture<List<Suggestion>> mine = new CompletableFuture<>();
+        shared.result.whenComplete((list, error) -> {
+            if (error != null) mine.completeExceptionally(error);
+            else mine.complete(list);
+        });
+        mine.whenComplete((list, error) -> {
+            if (mine.isCancelled()) abandon(key, shared);
+        });
+        return mine;
+    }
+
+    /** Fin d'une requête: mise en cache de la réponse (les échecs ne sont pas gardés). */
+    private synchronized void done(String key, InFlight f, List<Suggestion> list) {
+        if (inFlight.get(key) == f) inFlight.remove(key);
+        if (list == null) return;
+        cache.put(key, new Cached(list, System.currentTimeMillis() + CACHE_TTL_MS));
+        while (cache.size() > CACHE_MAX_ENTRIES) {
+            var it = cache.entrySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    /** Un appelant renonce: la requête est interrompue si c'était le dernier. */
+    private void abandon(String key, InFlight f) {
+        boolean last;
+        synchronized (this) {
+            last = --f.waiters == 0 && !f.result.isDone();
+            if (last && inFlight.get(key) == f) inFlight.remove(key);
+        }
+        if (last) f.result.cancel(true);
+    }
+
+    /** Envoie la requête dès que le limiteur l'autorise, puis analyse la réponse. */
+    private CompletableFuture<List<Suggestion>> fetch(String key) {
+        URI uri = URI.create(api + "?q=" + URLEncoder.encode(key, StandardCharsets.UTF_8) + "&maxResults=" + MAX_RESULTS);
+        HttpRequest req = HttpRequest.newBuilder(uri).timeout(requestTimeout).GET().build();
+        long waitNanos = limiter.reserve();
+        CompletableFuture<Void> slot = waitNanos <= 0 ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+        CompletableFuture<List<Suggestion>> result = new CompletableFuture<>();
+        slot.thenCompose(v -> {
+            if (result.isDone()) return CompletableFuture.completedFuture(null);
+            CompletableFuture<HttpResponse<String>> sent = http.sendAsync(req, HttpResponse.BodyHandlers.ofString());
+            // Annulation de la recherche: la requête HTTP est interrompue
+            result.whenComplete((list, error) -> {
+                if (result.isCancelled()) sent.cancel(true);
+            });
+            return sent;
+        }).whenComplete((resp, error) -> {
+            if (result.isDone()) return;
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else if (resp.statusCode() != 200) {
+                result.completeExceptionally(new IOException("HTTP " + resp.statusCode() + " pour " + uri));
+            } else {
+                try {
+                    result.complete(parse(resp.body()));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(new IOException("Réponse illisible pour " + uri, e));
+                }
+            }
+        });
+        return result;
+    }
+
+    /** @return la requête en minuscules, sans espaces superflus */
+    static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param json réponse de l'API ({@code volumes})
+     * @return les livres ayant un titre, dans l'ordre de la réponse
+     */
+    static List<Suggestion> parse(String json) {
+        JsonObject parsed = JsonParser.parseString(json).getAsJsonObject();
+        JsonArray items = parsed.has("items") ? parsed.getAsJsonArray("items") : new JsonArray();
+        List<Suggestion> list = new ArrayList<>();
+        for (JsonElement el : items) {
+            JsonObject vol = el.getAsJsonObject().getAsJsonObject("volumeInfo");
+            if (vol == null) continue;
+            String t = vol.has("title") ? vol.get("title").getAsString() : null;
+            String a = null;
+            if (vol.has("authors") && vol.get("authors").isJsonArray() && vol.getAsJsonArray("authors").size() > 0) {
+                a = vol.getAsJsonArray("authors").get(0).getAsString();
+            }
+            Integer y = null;
+            if (vol.has("publishedDate")) {
+                String pd = vol.get("publishedDate").getAsString();
+                // take first 4 digits if present
+                if (pd.length() >= 4 && pd.substring(0, 4).chars().allMatch(Character::isDigit)) {
+                    y = Integer.parseInt(pd.substring(0, 4));
+                }
+            }
+            String genre = null;
+            if (vol.has("categories") && vol.get("categories").isJsonArray() && vol.getAsJsonArray("categories").size() > 0) {
+                genre = mapCategoryToGenre(vol.getAsJsonArray("categories").get(0).getAsString());
+            }
+            String summary = vol.has("description") ? vol.get("description").getAsString() : null;
+            String coverUrl = null;
+            if (vol.has("imageLinks") && vol.get("imageLinks").isJsonObject()) {
+                JsonObject imgs = vol.getAsJsonObject("imageLinks");
+                for (String k : new String[]{"extraLarge", "large", "medium", "small", "thumbnail", "smallThumbnail"}) {
+                    if (imgs.has(k) && imgs.get(k).isJsonPrimitive()) {
+                        coverUrl = imgs.get(k).getAsString();
+                        break;
+                    }
+                }
+            }
+            if (coverUrl != null && coverUrl.startsWith("http:")) {
+                coverUrl = "https:" + coverUrl.substring(5);
+            }
+            if (t != null) list.add(new Suggestion(t, a, y, genre, summary, coverUrl));
+        }
+        return List.copyOf(list);
+    }
+
+    /**
+     * Convertit une catégorie Google Books en l'un des genres supportés par l'application.
+     * @param rawCategory chaîne de catégorie brute
+     * @return genre mappé ou null si non reconnu
+     */
+    static String mapCategoryToGenre(String rawCategory) {
+        if (rawCategory == null) return null;
+        String c = rawCategory.toLowerCase(Locale.ROOT);
+
+        c = c.replace('’', '\'');
+
+        if (c.contains("roman") || c.contains("fiction") || c.contains("novel")) return "Roman";
+        if (c.contains("essai") || c.contains("essay")) return "Essai";
+        if (c.contains("science") || c.contains("sciences")) return "Science";
+        if (c.contains("histoire") || c.contains("history")) return "Histoire";
+        if (c.contains("biograph") || c.contains("autobiograph")) return "Biographie";
+        if (c.contains("fantasy") || c.contains("fantastique") || c.contains("fantaisie")) return "Fantastique";
+        if (c.contains("policier") || c.contains("detective") || c.contains("crime") || c.contains("mystery") || c.contains("thriller")) return "Policier";
+
+        if (c.contains("/")) {
+            String[] parts = c.split("/");
+            for (String p : parts) {
+                String m = mapCategoryToGenre(p.trim());
+                if (m != null) return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Seau à jetons: {@code burst} requêtes immédiates, puis {@code rate} par seconde.
+     * Une requête sans jeton disponible réserve le suivant et attend son arrivée.
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long updatedAt = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, int burst) {
+            this.ratePerNano = Math.max(ratePerSecond, 1e-3) / 1e9;
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+        }
+
+        /** @return le délai (ns) avant que la requête puisse partir, 0 si immédiatement */
+        synchronized long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * ratePerNano);
+            updatedAt = now;
+            tokens -= 1;
+            // Jetons négatifs: requêtes déjà réservées, servies dans l'ordre
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerNano);
+        }
+    }
+}
@@ -1,29 +1,46 @@
 package fr.cactusstudio.bibliofx;
 
 import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookDelta;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+import fr.cactusstudio.bibliofx.model.SortKeys;
+import fr.cactusstudio.bibliofx.search.SearchIndex;
+import fr.cactusstudio.bibliofx.storage.BookColumns;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 // import removed: import javafx.scene.control.cell.CheckBoxTableCell;
-import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Region;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Callback;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.beans.value.WeakChangeListener;
 
 import java.io.IOException;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Contrôleur principal de l'application (hello-view.fxml).
@@ -31,14 +48,41 @@ import java.util.function.Predicate;
  * Gère la table des livres, les filtres (recherche, genre, disponibilité),
  * l'ouverture des boîtes de dialogue d'ajout/édition, et la gestion
  * multi-bibliothèques via {@link LibraryRepository}.
+ * <p>
+ * La recherche passe par un index inversé ({@link SearchIndex}) tenu à jour à chaque
+ * modification de la liste des livres: la saisie ne relit pas le texte de chaque livre.
+ * Les filtres sont évalués hors du thread JavaFX ({@link FilterService}); genre, état de
+ * lecture et disponibilité sont résolus par le même index, qui donne aussi le nombre de
+ * livres affiché à côté de chaque option.
+ * <p>
+ * Une bibliothèque d'au moins {@code -Dbibliofx.readOnlyThreshold} livres (500 000 par
+ * défaut, 0 pour désactiver) est affichée en lecture seule à partir de son index projeté
+ * en mémoire ({@link PagedBookView}): seules les pages de lignes consultées sont décodées,
+ * filtres et tri sont évalués sur l'index, l'édition est désactivée.
+ * <p>
+ * Les métadonnées manquantes de la bibliothèque courante peuvent être complétées en lot
+ * ({@link EnrichmentJob}): avancement et annulation dans la barre d'outils, livres
+ * complétés remplacés dans la table à chaque lot.
+ * <p>
+ * Au démarrage, le dépôt et la bibliothèque courante sont préparés sur un thread de fond
+ * ({@link Startup}, {@link LibraryLoader}): la table s'affiche vide et se remplit dès
+ * qu'ils sont prêts.
  */
 public class Controller {
-    private static final String DATA_FILE = "books.ser";
     @FXML private TextField searchField;
     @FXML private ComboBox<String> genreFilter;
     @FXML private CheckBox availableFilter;
     @FXML private ComboBox<String> readingStatusFilter;
     @FXML private ComboBox<String> libraryCombo;
+    @FXML private Button addButton;
+    @FXML private Button editButton;
+    @FXML private Button deleteButton;
+    @FXML private Label readOnlyLabel;
+    @FXML private Label saveStatusLabel;
+    @FXML private Button enrichButton;
+    @FXML private HBox enrichBox;
+    @FXML private ProgressBar enrichProgress;
+    @FXML private Label enrichLabel;
     @FXML private TableView<Book> table;
     @FXML private TableColumn<Book, String> titleCol;
     @FXML private TableColumn<Book, String> authorCol;
@@ -52,10 +96,32 @@ public class Controller {
     @FXML private BookDetailController bookDetailController; // populated via fx:include + fx:id convention
 
     private final ObservableList<Book> master = FXCollections.observableArrayList();
-    private FilteredList<Book> filtered;
+    private FilterService filter;
     private SortedList<Book> sorted;
-    private final LibraryRepository repository = new LibraryRepository();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final GenreDictionary genres = new GenreDictionary();
+    private final LibraryRepository repository = Startup.repository();
+    private final PersistenceService persistence = new PersistenceService(repository);
+    private final CoverCache coverCache = new CoverCache();
+    private final BookLookupService lookup = new BookLookupService();
+    private final LocalCatalog catalog = LocalCatalog.create(repository);
+    /** Enrichissement en cours, ou null. */
+    private EnrichmentJob enrichment;
+    /** Dernier avancement reçu des threads de l'enrichissement, affiché au prochain passage du thread JavaFX. */
+    private final AtomicReference<EnrichmentJob.Progress> enrichProgressPending = new AtomicReference<>();
     private String currentLibrary;
+    /** Vue projetée de la bibliothèque courante en mode lecture seule (null sinon). */
+    private BookColumns readOnlyBooks;
+    /** Table du mode lecture seule (null sinon). */
+    private PagedBookView pagedView;
+    /** Politique de tri de la liste en mémoire, rétablie en quittant le mode lecture seule. */
+    private Callback<TableView<Book>, Boolean> listSortPolicy;
+    /** Comparateur de chaque colonne triable, sur les clés de tri des livres. */
+    private final Map<TableColumn<Book, ?>, Comparator<Book>> sortComparators = new HashMap<>();
+    /** Nombre de livres de chaque option des filtres, pour le filtre courant (suivi par les {@link FacetCell}). */
+    private final ObjectProperty<SearchIndex.Counts> facetCounts = new SimpleObjectProperty<>();
+    /** Libellé de la case « disponibles », sans le nombre. */
+    private String availableFilterText;
 
     /**
      * Initialisation de la vue et des composants JavaFX après le chargement du FXML.
@@ -63,107 +129,64 @@ public class Controller {
      */
     @FXML
     private void initialize() {
-        // Try to load from binary serialization first
-        List<Book> serLoaded = loadSer();
+        // Index de recherche: enregistré avant la liste filtrée, pour être à jour quand elle réévalue
+        master.addListener(this::updateSearchIndex);
+        master.addListener(genres);
+
         // Libraries UI
         currentLibrary = repository.getCurrentLibrary();
         libraryCombo.setItems(FXCollections.observableArrayList(repository.listLibraries()));
         libraryCombo.getSelectionModel().select(currentLibrary);
         libraryCombo.valueProperty().addListener((obs, oldName, newName) -> onSwitchLibrary(oldName, newName));
 
-
-        List<Book> loaded = (serLoaded != null && !serLoaded.isEmpty()) ? serLoaded : repository.load(currentLibrary);
-
-        long nowInit = System.currentTimeMillis();
-        for (Book b : loaded) {
-            if (b.getAddedAt() == null || b.getAddedAt() <= 0) {
-                b.setAddedAt(nowInit);
-            }
-
-        }
-        master.setAll(loaded);
+        // Catalogue des suggestions hors ligne, construit en arrière-plan
+        catalog.loadAsync();
 
         // Table columns bindings
-        titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
-        authorCol.setCellValueFactory(new PropertyValueFactory<>("author"));
-        yearCol.setCellValueFactory(new PropertyValueFactory<>("year"));
-        genreCol.setCellValueFactory(new PropertyValueFactory<>("genre"));
-        availableCol.setCellValueFactory(new PropertyValueFactory<>("available"));
-        // Comparateurs explicites pour un tri cohérent
-        titleCol.setComparator(Comparator.nullsLast(String::compareToIgnoreCase));
-        authorCol.setComparator(Comparator.nullsLast(String::compareToIgnoreCase));
-        genreCol.setComparator(Comparator.nullsLast(String::compareToIgnoreCase));
-        yearCol.setComparator(Comparator.nullsLast(Integer::compareTo));
-        availableCol.setComparator(Comparator.nullsLast(Boolean::compareTo)); // false < true
-        if (readingStatusCol != null) {
-            readingStatusCol.setCellValueFactory(new PropertyValueFactory<>("readingStatus"));
-            // Ordre personnalisé: Non lu < En cours de lecture < Lu
-            readingStatusCol.setComparator((a, b) -> {
-                String sa = (a == null || a.isBlank()) ? "Non lu" : a;
-                String sb = (b == null || b.isBlank()) ? "Non lu" : b;
-                int ra = switch (sa.toLowerCase()) {
-                    case "non lu" -> 0;
-                    case "en cours de lecture" -> 1;
-                    case "lu" -> 2;
-                    default -> 3; // valeurs inconnues à la fin
-                };
-                int rb = switch (sb.toLowerCase()) {
-                    case "non lu" -> 0;
-                    case "en cours de lecture" -> 1;
-                    case "lu" -> 2;
-                    default -> 3;
-                };
-                int cmp = Integer.compare(ra, rb);
-                if (cmp != 0) return cmp;
-                return sa.compareToIgnoreCase(sb);
-            });
-        }
-        if (addedCol != null) {
-            addedCol.setCellValueFactory(cd -> new javafx.beans.property.SimpleStringProperty(
-                    cd.getValue() != null ? cd.getValue().getAddedAtDateOnly() : ""));
-            addedCol.setComparator((a, b) -> {
-                java.time.format.DateTimeFormatter fmt = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy");
-                try {
-                    java.time.LocalDate da = (a == null || a.isBlank() || "—".equals(a)) ? null : java.time.LocalDate.parse(a, fmt);
-                    java.time.LocalDate db = (b == null || b.isBlank() || "—".equals(b)) ? null : java.time.LocalDate.parse(b, fmt);
-                    if (da == null && db == null) return 0;
-                    if (da == null) return -1;
-                    if (db == null) return 1;
-                    return da.compareTo(db);
-                } catch (Exception ex) {
-                    return 0;
-                }
-            });
-        }
+        // Les cellules lisent directement le livre de leur ligne (BookCell): ni recherche
+        // réflexive de l'accesseur, ni valeur observable créée par cellule. Les livres ne sont
+        // jamais modifiés en place: une édition remplace le livre dans la liste, ce qui ne met
+        // à jour que sa ligne, refiltrée et replacée seule.
+        titleCol.setCellFactory(col -> new BookCell<>(Book::getTitle));
+        authorCol.setCellFactory(col -> new BookCell<>(Book::getAuthor));
+        yearCol.setCellFactory(col -> new BookCell<>(b -> String.valueOf(b.getYear())));
+        genreCol.setCellFactory(col -> new BookCell<>(Book::getGenre));
         //"Disponible" or "Emprunté le <date>"
+        availableCol.setCellFactory(col -> new BookCell<>(b -> {
+            if (b.isAvailable()) return "Disponible";
+            String when = b.getBorrowedAtDateOnly();
+            return (when == null || when.isBlank() || "—".equals(when)) ? "Emprunté" : ("Prêté le " + when);
+        }));
+        if (readingStatusCol != null) readingStatusCol.setCellFactory(col -> new BookCell<>(Book::getReadingStatus));
+        if (addedCol != null) addedCol.setCellFactory(col -> new BookCell<>(Book::getAddedAtDateOnly));
+        // Tri sur des clés précalculées par livre (ordre alphabétique français, rang de
+        // l'état de lecture: non lu < en cours < lu, horodatage d'ajout)
+        sortComparators.put(titleCol, SortKeys.BY_TITLE);
+        sortComparators.put(authorCol, SortKeys.BY_AUTHOR);
+        sortComparators.put(genreCol, SortKeys.BY_GENRE);
+        sortComparators.put(yearCol, SortKeys.BY_YEAR);
+        sortComparators.put(availableCol, SortKeys.BY_AVAILABLE); // empruntés d'abord
+        if (readingStatusCol != null) sortComparators.put(readingStatusCol, SortKeys.BY_READING_STATUS);
+        if (addedCol != null) sortComparators.put(addedCol, SortKeys.BY_ADDED_AT);
         table.setEditable(false);
         availableCol.setEditable(false);
-        availableCol.setCellFactory(col -> new TableCell<>() {
-            @Override
-            protected void updateItem(Boolean item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText("");
-                } else if (item) {
-                    setText("Disponible");
-                } else {
-                    Book rowBook = (Book) getTableRow().getItem();
-                    String when = (rowBook != null) ? rowBook.getBorrowedAtDateOnly() : "—";
-                    setText((when == null || when.isBlank() || "—".equals(when)) ? "Emprunté" : ("Prêté le " + when));
-                }
-            }
-        });
 
         // Filters
-        filtered = new FilteredList<>(master, b -> true);
+        filter = new FilterService(master);
         // Wrap filtered list in a SortedList for column sorting support
-        sorted = new SortedList<>(filtered);
-        sorted.comparatorProperty().bind(table.comparatorProperty());
+        sorted = new SortedList<>(filter.getResult());
+        // La liste triée suit l'ordre de tri de la table, appliqué aux clés des livres
+        table.setSortPolicy(t -> {
+            sorted.setComparator(sortComparator(t.getSortOrder()));
+            return true;
+        });
         table.setItems(sorted);
 
-        searchField.textProperty().addListener((obs, o, n) -> applyFilters());
+        // La saisie est évaluée à la fin de la frappe, les autres filtres immédiatement
+        searchField.textProperty().addListener((obs, o, n) -> applyFilters(true));
         availableFilter.selectedProperty().addListener((obs, o, n) -> applyFilters());
         genreFilter.valueProperty().addListener((obs, o, n) -> applyFilters());
+        availableFilterText = availableFilter.getText();
         if (readingStatusFilter != null) {
             readingStatusFilter.setItems(FXCollections.observableArrayList("Tous","Non lu","En cours de lecture","Lu"));
             readingStatusFilter.valueProperty().addListener((obs, o, n) -> applyFilters());
@@ -171,10 +194,13 @@ public class Controller {
             readingStatusFilter.getSelectionModel().select("Tous");
         }
 
-        // Populate genre filter from existing data
-        refreshGenreFilterItems();
+        // Genres présents dans les données, tenus à jour à chaque modification
+        genreFilter.setItems(genres.getItems());
+        installFacetCells();
 
         // Selection listener to update details
+        if (bookDetailController != null) bookDetailController.setCoverCache(coverCache);
+        new CoverPrefetcher(table, coverCache);
         table.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> {
             if (bookDetailController != null) bookDetailController.setBook(n);
         });
@@ -194,14 +220,227 @@ public class Controller {
             });
             return row;
         });
+
+        // Etat des sauvegardes (publié par le service sur le thread JavaFX)
+        if (saveStatusLabel != null) {
+            persistence.statusProperty().addListener((obs, o, n) -> updateSaveStatus());
+            persistence.lastErrorProperty().addListener((obs, o, n) -> updateSaveStatus());
+        }
+
+        listSortPolicy = table.getSortPolicy();
+
+        // Bibliothèque préparée sur un thread de fond depuis le lancement: la fenêtre
+        // s'affiche d'abord avec une table vide
+        showLibrary(Startup.library(repository, currentLibrary));
     }
 
-    /** Récupère les genres présents dans les données et alimente le filtre Genre. */
-    private void refreshGenreFilterItems() {
-        Set<String> genres = new HashSet<>();
-        for (Book b : master) { if (b.getGenre() != null && !b.getGenre().isBlank()) genres.add(b.getGenre()); }
-        List<String> items = genres.stream().sorted(Comparator.naturalOrder()).toList();
-        genreFilter.setItems(FXCollections.observableArrayList(items));
+    /**
+     * Cellule de la table qui affiche un champ du livre de sa ligne, lu dans la liste de la
+     * table à chaque changement de position ou de contenu. Les colonnes n'ont pas de
+     * fabrique de valeurs: aucune valeur observable n'est créée par cellule affichée.
+     */
+    private static final class BookCell<T> extends TableCell<Book, T> {
+        private final Function<Book, String> text;
+
+        BookCell(Function<Book, String> text) {
+            this.text = text;
+        }
+
+        @Override
+        public void updateIndex(int i) {
+            super.updateIndex(i);
+            // Livre remplacé à la même position: la valeur de la cellule (nulle) ne change pas
+            showBook();
+        }
+
+        @Override
+        protected void updateItem(T item, boolean empty) {
+            super.updateItem(item, empty);
+            showBook();
+        }
+
+        private void showBook() {
+            TableView<Book> tv = getTableView();
+            int i = getIndex();
+            Book b = (!isEmpty() && tv != null && i >= 0 && i < tv.getItems().size()) ? tv.getItems().get(i) : null;
+            setText(b != null ? text.apply(b) : null);
+        }
+    }
+
+    /**
+     * @param sortOrder colonnes de tri, par priorité
+     * @return le comparateur correspondant, ou null pour l'ordre de la liste
+     */
+    private Comparator<Book> sortComparator(List<TableColumn<Book, ?>> sortOrder) {
+        Comparator<Book> out = null;
+        for (TableColumn<Book, ?> col : sortOrder) {
+            Comparator<Book> c = sortComparators.get(col);
+            if (c == null) continue;
+            if (col.getSortType() == TableColumn.SortType.DESCENDING) c = c.reversed();
+            out = out == null ? c : out.thenComparing(c);
+        }
+        return out;
+    }
+
+    /** Reporte les modifications de la liste des livres dans l'index de recherche. */
+    private void updateSearchIndex(ListChangeListener.Change<? extends Book> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) continue;
+            if (c.getRemovedSize() > 0 && c.getRemovedSize() >= searchIndex.size()) {
+                searchIndex.clear();
+            } else {
+                for (Book b : c.getRemoved()) searchIndex.remove(b);
+            }
+            searchIndex.addAll(c.getAddedSubList());
+        }
+    }
+
+    /** Met à jour l'indicateur de sauvegarde. */
+    private void updateSaveStatus() {
+        PersistenceService.Status st = persistence.statusProperty().get();
+        String text = switch (st) {
+            case IDLE -> "Enregistré";
+            case PENDING, SAVING -> "Enregistrement…";
+            case FAILED -> "Échec de l'enregistrement";
+        };
+        saveStatusLabel.setText(text);
+        String error = persistence.lastErrorProperty().get();
+        saveStatusLabel.setTooltip(st == PersistenceService.Status.FAILED && error != null ? new Tooltip(error) : null);
+    }
+
+    /**
+     * Écrit les sauvegardes en attente avant la fermeture de l'application.
+     */
+    public void shutdown() {
+        if (enrichment != null) {
+            // Résultats déjà obtenus appliqués et notés pour la reprise avant l'écriture finale
+            enrichment.cancel();
+            try {
+                enrichment.await(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (filter != null) filter.close();
+        if (pagedView != null) pagedView.close();
+        coverCache.close();
+        persistence.close(10_000);
+    }
+
+    /**
+     * Programme l'écriture (asynchrone) des modifications déjà appliquées au dépôt et de
+     * l'instantané de démarrage rapide. Les livres de {@code master} ne sont jamais
+     * modifiés en place: une édition remplace l'élément, ce qui permet de transmettre une
+     * simple copie de la liste.
+     */
+    private void persist() {
+        if (readOnlyBooks != null) return;
+        persistence.saveChanges();
+    }
+
+    /**
+     * Active (ou quitte, si {@code books} est null) le mode lecture seule.
+     * La table affiche alors une vue paginée des livres préparés par {@link LibraryLoader}
+     * ({@link PagedBookView}): filtres et tri restent disponibles, l'édition est désactivée.
+     */
+    private void setReadOnly(BookColumns books) {
+        boolean wasReadOnly = readOnlyBooks != null;
+        readOnlyBooks = books;
+        boolean readOnly = books != null;
+        if (pagedView != null) pagedView.close();
+        pagedView = null;
+        if (readOnly) {
+            master.clear();
+            PagedBookView view = new PagedBookView(books);
+            pagedView = view;
+            view.itemsProperty().addListener((obs, o, n) -> {
+                if (pagedView == view) table.setItems(n);
+            });
+            view.countsProperty().addListener((obs, o, n) -> {
+                if (pagedView == view && n != null) showFacetCounts(n);
+            });
+            genreFilter.setItems(view.getGenres());
+            table.getSortOrder().clear();
+            // Tri évalué par la vue paginée, sur la première colonne de tri
+            table.setSortPolicy(t -> {
+                TableColumn<Book, ?> col = t.getSortOrder().isEmpty() ? null : t.getSortOrder().get(0);
+                view.setSort(col != null ? PagedBookView.SortColumn.of(sortComparators.get(col)) : null,
+                        col != null && col.getSortType() == TableColumn.SortType.DESCENDING);
+                return true;
+            });
+            table.setItems(view.itemsProperty().get());
+        } else if (wasReadOnly) {
+            genreFilter.setItems(genres.getItems());
+            table.setSortPolicy(listSortPolicy);
+            table.setItems(sorted);
+            table.getSortOrder().setAll(List.of(titleCol));
+        }
+        setEditingDisabled(readOnly);
+        if (readOnlyLabel != null) {
+            readOnlyLabel.setVisible(readOnly);
+            readOnlyLabel.setManaged(readOnly);
+        }
+    }
+
+    /** Désactive (ou réactive) les boutons qui modifient la bibliothèque. */
+    private void setEditingDisabled(boolean disabled) {
+        for (Control c : new Control[]{addButton, editButton, deleteButton}) {
+            if (c != null) c.setDisable(disabled);
+        }
+        if (enrichButton != null) enrichButton.setDisable(disabled || enrichment != null);
+    }
+
+    /**
+     * Affiche une bibliothèque (en lecture seule si elle est volumineuse) et réinitialise la vue.
+     * {@link #currentLibrary} doit déjà désigner cette bibliothèque.
+     * @param name nom de la bibliothèque
+     */
+    private void showLibrary(String name) {
+        showLibrary(CompletableFuture.supplyAsync(() -> LibraryLoader.load(repository, name)));
+    }
+
+    /**
+     * Affiche une bibliothèque préparée sur un thread de fond: en attendant, la table est
+     * vide, sans édition ni changement de bibliothèque. Ignorée si une autre bibliothèque a
+     * été choisie entre-temps.
+     * @param pending préparation en cours par {@link LibraryLoader}
+     */
+    private void showLibrary(CompletableFuture<LibraryLoader.Loaded> pending) {
+        Node placeholder = table.getPlaceholder();
+        table.setPlaceholder(new Label("Chargement de la bibliothèque…"));
+        setReadOnly(null);
+        master.clear();
+        setEditingDisabled(true);
+        libraryCombo.setDisable(true);
+        pending.whenComplete((loaded, error) -> Platform.runLater(() -> {
+            table.setPlaceholder(placeholder);
+            libraryCombo.setDisable(false);
+            if (error != null) {
+                error.printStackTrace();
+                setEditingDisabled(false);
+                return;
+            }
+            if (!loaded.name().equals(currentLibrary)) return;
+            showLibrary(loaded);
+            Startup.markNextFrame(table.getScene(), "bibliothèque affichée, interactif");
+        }));
+    }
+
+    /**
+     * Affiche une bibliothèque déjà préparée et réinitialise la vue.
+     * @param loaded bibliothèque préparée par {@link LibraryLoader}
+     */
+    private void showLibrary(LibraryLoader.Loaded loaded) {
+        // Dates d'ajout complétées au chargement: à enregistrer
+        if (loaded.changed()) persistence.saveChanges();
+        if (loaded.readOnly() != null) {
+            setReadOnly(loaded.readOnly());
+        } else {
+            setReadOnly(null);
+            master.setAll(loaded.books());
+        }
+        if (bookDetailController != null) bookDetailController.setBook(null);
+        resetFilters();
     }
 
     /** Réinitialise tous les filtres et relance l'application des filtres. */
@@ -213,97 +452,261 @@ public class Controller {
         applyFilters();
     }
 
+    /** Installe (une fois) les cellules des filtres, qui affichent les nombres de {@link #facetCounts}. */
+    private void installFacetCells() {
+        BiFunction<SearchIndex.Counts, String, Integer> genreCount = (c, g) -> c.genres().getOrDefault(g, 0);
+        genreFilter.setCellFactory(lv -> new FacetCell(facetCounts, genreCount, null));
+        genreFilter.setButtonCell(new FacetCell(facetCounts, genreCount, genreFilter.getPromptText()));
+        if (readingStatusFilter != null) {
+            BiFunction<SearchIndex.Counts, String, Integer> statusCount = (c, rs) -> "Tous".equals(rs)
+                    ? c.readingStatuses().values().stream().mapToInt(Integer::intValue).sum()
+                    : c.readingStatuses().getOrDefault(rs.toLowerCase(Locale.ROOT), 0);
+            readingStatusFilter.setCellFactory(lv -> new FacetCell(facetCounts, statusCount, null));
+            readingStatusFilter.setButtonCell(new FacetCell(facetCounts, statusCount, readingStatusFilter.getPromptText()));
+        }
+    }
+
+    /** Affiche le nombre de livres à côté de chaque option des filtres. */
+    private void showFacetCounts(SearchIndex.Counts counts) {
+        facetCounts.set(counts);
+        availableFilter.setText(availableFilterText + " (" + counts.available() + ")");
+    }
+
+    /** Option d'un filtre suivie du nombre de livres correspondants, mise à jour avec les nombres. */
+    private static final class FacetCell extends ListCell<String> {
+        private final ObservableValue<SearchIndex.Counts> counts;
+        private final BiFunction<SearchIndex.Counts, String, Integer> count;
+        /** Texte affiché sans option choisie (bouton de la liste déroulante). */
+        private final String prompt;
+        /** Gardé par la cellule: l'écouteur faible vit aussi longtemps qu'elle. */
+        private final ChangeListener<SearchIndex.Counts> refresh = (obs, o, n) -> render();
+
+        FacetCell(ObservableValue<SearchIndex.Counts> counts, BiFunction<SearchIndex.Counts, String, Integer> count, String prompt) {
+            this.counts = counts;
+            this.count = count;
+            this.prompt = prompt;
+            counts.addListener(new WeakChangeListener<>(refresh));
+        }
+
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
+            render();
+        }
+
+        private void render() {
+            String item = getItem();
+            SearchIndex.Counts c = counts.getValue();
+            if (isEmpty() || item == null) setText(prompt);
+            else setText(c == null ? item : item + " (" + count.apply(c, item) + ")");
+        }
+    }
+
     /** Applique les filtres de recherche/genre/disponibilité à la table. */
     private void applyFilters() {
-        String query = searchField.getText() == null ? "" : searchField.getText().toLowerCase().trim();
+        applyFilters(false);
+    }
+
+    /**
+     * Applique les filtres de recherche/genre/disponibilité à la table (évaluation asynchrone).
+     * @param debounce true pour attendre la fin de la saisie
+     */
+    private void applyFilters(boolean debounce) {
+        String query = searchField.getText();
         String genre = genreFilter.getValue();
         boolean onlyAvailable = availableFilter.isSelected();
         String rs = readingStatusFilter != null ? readingStatusFilter.getValue() : null;
+        boolean anyGenre = genre == null || genre.isBlank();
+        boolean anyReading = rs == null || rs.isBlank() || "Tous".equals(rs);
+        // Recherche dans le titre, l'auteur, le genre et le résumé
+        SearchIndex.Query q = new SearchIndex.Query(query, anyGenre ? null : List.of(genre), onlyAvailable, anyReading ? null : rs);
+        if (pagedView != null) {
+            pagedView.setQuery(q, debounce);
+            return;
+        }
 
-        Predicate<Book> p = b -> {
-            boolean matchesTitle = query.isEmpty() || (b.getTitle() != null && b.getTitle().toLowerCase().contains(query));
-            boolean matchesGenre = (genre == null || genre.isBlank()) || (genre.equals(b.getGenre()));
-            boolean matchesAvail = !onlyAvailable || b.isAvailable();
-            boolean matchesReading = (rs == null || rs.isBlank() || "Tous".equals(rs)) || (b.getReadingStatus() != null && rs.equalsIgnoreCase(b.getReadingStatus()));
-            return matchesTitle && matchesGenre && matchesAvail && matchesReading;
-        };
-        filtered.setPredicate(p);
+        // Le prédicat est construit au moment de l'évaluation, avec l'index à jour (après
+        // chaque modification de la liste aussi: les nombres des options suivent)
+        filter.setFilter(() -> {
+            showFacetCounts(searchIndex.counts(q));
+            return searchIndex.filter(q);
+        }, debounce);
     }
 
     /** Ouvre la boîte de dialogue d'ajout et ajoute le livre si validé. */
     @FXML
     private void onAdd() {
+        if (readOnlyBooks != null) return;
         Book created = openAddEditDialog(null, "addBook.fxml", "Ajouter un livre");
-        if (created != null) {
-            master.add(created);
-            refreshGenreFilterItems();
-            repository.save(master);
-            saveSer();
+        if (created == null) return;
+        if (repository.addBook(currentLibrary, created) == 0) {
+            Alert warn = new Alert(Alert.AlertType.WARNING, "Impossible d'ajouter ce livre à la bibliothèque '" + currentLibrary + "'");
+            if (table.getScene() != null) warn.initOwner(table.getScene().getWindow());
+            warn.showAndWait();
+            return;
         }
+        master.add(created);
+        persist();
     }
 
     /** Ouvre la boîte de dialogue d'édition pour le livre sélectionné et applique les modifications. */
     @FXML
     private void onEdit() {
+        if (readOnlyBooks != null) return;
         Book selected = table.getSelectionModel().getSelectedItem();
         if (selected == null) return;
         Book updated = openAddEditDialog(selected, "editBook.fxml", "Modifier le livre");
         if (updated != null) {
-            selected.setTitle(updated.getTitle());
-            selected.setAuthor(updated.getAuthor());
-            selected.setYear(updated.getYear());
-            selected.setGenre(updated.getGenre());
-            selected.setSummary(updated.getSummary());
-            selected.setCoverUrl(updated.getCoverUrl());
-            selected.setReadingStatus(updated.getReadingStatus());
             boolean wasAvailable = selected.isAvailable();
             boolean nowAvailable = updated.isAvailable();
-            selected.setAvailable(nowAvailable);
+            long borrowedAt;
             if (wasAvailable && !nowAvailable) {
-                selected.setBorrowedAt(System.currentTimeMillis());
+                borrowedAt = System.currentTimeMillis();
             } else if (!wasAvailable && nowAvailable) {
-                selected.setBorrowedAt(null);
+                borrowedAt = Book.NO_DATE;
+            } else {
+                borrowedAt = selected.getBorrowedAt();
             }
-            table.refresh();
-            if (bookDetailController != null) bookDetailController.setBook(selected);
-            refreshGenreFilterItems();
-            repository.save(master);
-            saveSer();
+            // Seuls les champs du formulaire sont modifiés (la date d'ajout est conservée)
+            Book stored = repository.updateBook(currentLibrary, selected.getId(), b -> {
+                b.setTitle(updated.getTitle());
+                b.setAuthor(updated.getAuthor());
+                b.setYear(updated.getYear());
+                b.setGenre(updated.getGenre());
+                b.setAvailable(updated.isAvailable());
+                b.setReadingStatus(updated.getReadingStatus());
+                b.setSummaryText(updated.getSummaryText());
+                b.setCoverUrl(updated.getCoverUrl());
+                b.setBorrowedAt(borrowedAt);
+            });
+            if (stored == null) return; // supprimé entre-temps
+            // Le livre est remplacé et non modifié en place: une sauvegarde en cours
+            // peut encore lire l'ancienne instance (égale à la nouvelle: même identifiant)
+            int i = master.indexOf(selected);
+            if (i >= 0) master.set(i, stored);
+            table.getSelectionModel().select(stored);
+            if (bookDetailController != null) bookDetailController.setBook(stored);
+            persist();
         }
     }
 
     /** Supprime le livre sélectionné après confirmation. */
     @FXML
     private void onDelete() {
+        if (readOnlyBooks != null) return;
         Book selected = table.getSelectionModel().getSelectedItem();
         if (selected == null) return;
+        repository.removeBook(currentLibrary, selected.getId());
         master.remove(selected);
         if (bookDetailController != null) bookDetailController.setBook(null);
-        refreshGenreFilterItems();
-        repository.save(master);
-        saveSer();
+        persist();
     }
 
     /** Force une sauvegarde immédiate de la bibliothèque courante. */
     @FXML
     private void onSave() {
-        repository.save(master);
-        saveSer();
+        persist();
     }
 
     /** Recharge les données de la bibliothèque courante depuis le stockage. */
     @FXML
     private void onLoad() {
-        List<Book> fromSer = loadSer();
-        if (fromSer != null && !fromSer.isEmpty()) {
-            master.setAll(fromSer);
-        } else {
-            master.setAll(repository.load());
+        if (readOnlyBooks != null) {
+            showLibrary(currentLibrary);
+            return;
         }
-        refreshGenreFilterItems();
+        master.setAll(repository.load(currentLibrary));
         applyFilters();
     }
 
+    /** Lance l'enrichissement des métadonnées de la bibliothèque courante (reprise s'il avait été interrompu). */
+    @FXML
+    private void onEnrich() {
+        if (readOnlyBooks != null || enrichment != null) return;
+        String library = currentLibrary;
+        EnrichmentJob job = new EnrichmentJob(repository, lookup, library, new EnrichmentJob.Listener() {
+            @Override
+            public void onProgress(EnrichmentJob.Progress progress) {
+                // Avancements regroupés: un seul affichage par passage du thread JavaFX
+                if (enrichProgressPending.getAndSet(progress) == null) {
+                    Platform.runLater(() -> showEnrichProgress(enrichProgressPending.getAndSet(null)));
+                }
+            }
+
+            @Override
+            public void onCommit(List<BookDelta> deltas) {
+                Platform.runLater(() -> applyEnriched(library, deltas));
+            }
+        });
+        enrichment = job;
+        enrichButton.setDisable(true);
+        enrichProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        enrichLabel.setText("Préparation…");
+        enrichBox.setVisible(true);
+        enrichBox.setManaged(true);
+        job.start();
+    }
+
+    /** Interrompt l'enrichissement en cours (les livres déjà complétés le restent). */
+    @FXML
+    private void onCancelEnrich() {
+        if (enrichment == null) return;
+        enrichment.cancel();
+        enrichLabel.setText("Annulation…");
+    }
+
+    private void showEnrichProgress(EnrichmentJob.Progress p) {
+        if (p == null || enrichment == null) return;
+        if (!p.finished()) {
+            enrichProgress.setProgress(p.total() == 0 ? ProgressBar.INDETERMINATE_PROGRESS : (double) p.done() / p.total());
+            enrichLabel.setText(p.done() + " / " + p.total() + " (" + p.enriched() + " complétés)");
+            return;
+        }
+        enrichment = null;
+        enrichBox.setVisible(false);
+        enrichBox.setManaged(false);
+        enrichButton.setDisable(readOnlyBooks != null);
+        String text = (p.cancelled() ? "Enrichissement interrompu (il reprendra au prochain lancement): " : "Enrichissement terminé: ")
+                + p.enriched() + " livre(s) complété(s) sur " + p.done() + " recherché(s)"
+                + (p.failed() > 0 ? ", " + p.failed() + " en échec (à relancer)." : ".");
+        Alert info = new Alert(Alert.AlertType.INFORMATION, text);
+        info.setHeaderText("Compléter les métadonnées");
+        if (table.getScene() != null) info.initOwner(table.getScene().getWindow());
+        info.show();
+    }
+
+    /**
+     * Remplace dans la table les livres complétés par un lot de l'enrichissement (déjà
+     * appliqués au dépôt et écrits).
+     * @param library bibliothèque complétée
+     * @param deltas  livres modifiés
+     */
+    private void applyEnriched(String library, List<BookDelta> deltas) {
+        if (!Objects.equals(library, currentLibrary) || readOnlyBooks != null) return;
+        Map<Long, BookRecord> updated = new HashMap<>();
+        for (BookDelta d : deltas) {
+            if (d.after() != null) updated.put(d.id(), d.after());
+        }
+        Book selected = table.getSelectionModel().getSelectedItem();
+        Book reselect = null;
+        for (int i = 0; i < master.size() && !updated.isEmpty(); i++) {
+            BookRecord r = updated.remove(master.get(i).getId());
+            if (r == null) continue;
+            Book b = r.toBook();
+            if (master.get(i) == selected) reselect = b;
+            master.set(i, b);
+        }
+        if (reselect != null) {
+            table.getSelectionModel().select(reselect);
+            if (bookDetailController != null) bookDetailController.setBook(reselect);
+        }
+    }
+
+    /** Interrompt l'enrichissement de la bibliothèque courante, avant de la renommer ou supprimer. */
+    private void cancelEnrichmentOfCurrent() {
+        if (enrichment != null && Objects.equals(enrichment.getLibrary(), currentLibrary)) enrichment.cancel();
+    }
+
     /**
      * Ouvre un dialogue modal pour créer/éditer un livre.
      * @param initial livre initial (null pour une création)
@@ -316,6 +719,8 @@ public class Controller {
             FXMLLoader loader = new FXMLLoader(Main.class.getResource(fxml));
             Region root = loader.load();
             AddEditBookController ctrl = loader.getController();
+            ctrl.setLookupService(lookup);
+            ctrl.setCatalog(catalog);
             ctrl.setInitial(initial);
 
             Stage dialog = new Stage();
@@ -342,21 +747,11 @@ public class Controller {
      */
     private void onSwitchLibrary(String oldName, String newName) {
         if (newName == null || Objects.equals(newName, currentLibrary)) return;
-        // Save current library before switching
-        repository.save(currentLibrary, master);
+        // Rien à sauvegarder: les modifications sont appliquées au dépôt au fur et à mesure
         // Load new library
-        List<Book> loaded = repository.load(newName);
-        long now = System.currentTimeMillis();
-        for (Book b : loaded) {
-            if (b.getAddedAt() == null || b.getAddedAt() <= 0) b.setAddedAt(now);
-        }
         currentLibrary = newName;
         repository.setCurrentLibrary(newName);
-        master.setAll(loaded);
-        saveSer();
-        if (bookDetailController != null) bookDetailController.setBook(null);
-        refreshGenreFilterItems();
-        resetFilters();
+        showLibrary(newName);
     }
 
     /** Demande un nom et crée une nouvelle bibliothèque, puis y bascule. */
@@ -401,6 +796,7 @@ public class Controller {
         dialog.showAndWait().ifPresent(newName -> {
             String trimmed = newName.trim();
             if (trimmed.isEmpty() || Objects.equals(trimmed, currentLibrary)) return;
+            cancelEnrichmentOfCurrent();
             if (!repository.renameLibrary(currentLibrary, trimmed)) {
                 Alert warn = new Alert(Alert.AlertType.WARNING, "Impossible de renommer (nom déjà utilisé ?)");
                 if (libraryCombo != null && libraryCombo.getScene() != null) {
@@ -426,6 +822,7 @@ public class Controller {
         }
         var res = confirm.showAndWait();
         if (res.isPresent() && res.get() == ButtonType.OK) {
+            cancelEnrichmentOfCurrent();
             if (!repository.deleteLibrary(currentLibrary)) {
                 Alert warn = new Alert(Alert.AlertType.WARNING, "Impossible de supprimer (au moins une bibliothèque doit rester)");
                 if (libraryCombo != null && libraryCombo.getScene() != null) {
@@ -438,37 +835,7 @@ public class Controller {
             currentLibrary = repository.getCurrentLibrary();
             libraryCombo.setItems(FXCollections.observableArrayList(repository.listLibraries()));
             libraryCombo.getSelectionModel().select(currentLibrary);
-            master.setAll(repository.load(currentLibrary));
-            saveSer();
-            if (bookDetailController != null) bookDetailController.setBook(null);
-            refreshGenreFilterItems();
-            resetFilters();
-        }
-    }
-
-    // --- Sérialisation binaire simple sur books.ser ---
-    private List<Book> loadSer() {
-        try (java.io.ObjectInputStream ois = new java.io.ObjectInputStream(new java.io.FileInputStream(DATA_FILE))) {
-            Object obj = ois.readObject();
-            if (obj instanceof java.util.List<?> list) {
-                @SuppressWarnings("unchecked")
-                List<Book> casted = (List<Book>) list;
-                return casted;
-            }
-        } catch (java.io.FileNotFoundException e) {
-            // No serialized file yet -> ignore
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    private void saveSer() {
-        try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(new java.io.FileOutputStream(DATA_FILE))) {
-            oos.writeObject(new java.util.ArrayList<>(master));
-            oos.flush();
-        } catch (Exception e) {
-            e.printStackTrace();
+            showLibrary(currentLibrary);
         }
     }
 }
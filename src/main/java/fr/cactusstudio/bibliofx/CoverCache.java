@@ -0,0 +1,394 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.storage.AtomicFiles;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Cache des images de couverture, par URL ({@link fr.cactusstudio.bibliofx.model.Book#getCoverUrl()}).
+ * <p>
+ * Deux niveaux: les images décodées les plus récemment affichées restent en mémoire (LRU
+ * borné en octets, {@code -Dbibliofx.coverCacheMb}, 64 Mo par défaut), et les couvertures
+ * téléchargées sont gardées sur disque ({@code ~/.bibliofx/cache/covers}) avec leurs
+ * en-têtes {@code ETag}/{@code Last-Modified}. Une couverture en mémoire est rendue
+ * immédiatement, sans accès réseau; une copie disque vérifiée depuis moins d'un jour est
+ * utilisée telle quelle, sinon revalidée par une requête conditionnelle (réponse 304: la
+ * copie est conservée; réseau indisponible: la copie est utilisée quand même). Les
+ * chemins locaux et URL {@code file:} sont seulement décodés.
+ * <p>
+ * Les chargements ont lieu sur un petit pool de threads, les préchargements
+ * ({@link #prefetch(String)}) sur un pool de fond plus restreint; plusieurs demandes de la
+ * même couverture partagent un seul chargement, annulé quand plus personne ne l'attend (la
+ * sélection a changé). Les images sont décodées à la taille d'affichage du panneau de
+ * détails. Méthodes publiques et rappels sur le thread JavaFX.
+ */
+public class CoverCache {
+    /** Taille de décodage (deux fois le cadre du panneau de détails, pour les écrans haute densité). */
+    private static final double DECODE_WIDTH = 240;
+    private static final double DECODE_HEIGHT = 360;
+    /** Délai après lequel une copie disque est revalidée auprès du serveur. */
+    private static final long REVALIDATE_AFTER_MS = 24 * 3600_000L;
+    /** Taille maximale du cache disque, réduite au démarrage en supprimant les plus anciennes. */
+    private static final long DISK_MAX_BYTES = 256L << 20;
+    private static final int THREADS = 4;
+    /** Nombre maximal de préchargements simultanés. */
+    private static final int PREFETCH_THREADS = 2;
+
+    private final File dir;
+    private final long memoryMaxBytes;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(r, "bibliofx-covers");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Préchargements: un thread virtuel par couverture, en attente d'une place tant que le pool est plein. */
+    private final ExecutorService prefetchPool = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("bibliofx-cover-prefetch-", 0).factory());
+    private final Semaphore prefetchSlots = new Semaphore(PREFETCH_THREADS, true);
+
+    // Etat modifié sur le thread JavaFX uniquement
+    /** Images décodées, de la moins récemment utilisée à la plus récente. */
+    private final LinkedHashMap<String, Image> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    /** Chargements en cours, par URL. */
+    private final Map<String, Load> loads = new HashMap<>();
+
+    /**
+     * Cache dans {@code ~/.bibliofx/cache/covers}.
+     */
+    public CoverCache() {
+        this(new File(System.getProperty("user.home"), ".bibliofx/cache/covers"),
+                Math.max(1, Integer.getInteger("bibliofx.coverCacheMb", 64)) * (1L << 20));
+    }
+
+    /**
+     * @param dir            répertoire du cache disque
+     * @param memoryMaxBytes taille maximale des images gardées en mémoire
+     */
+    public CoverCache(File dir, long memoryMaxBytes) {
+        this.dir = dir;
+        this.memoryMaxBytes = memoryMaxBytes;
+        pool.execute(this::trimDisk);
+    }
+
+    /** Demande de couverture, à annuler quand l'image n'est plus attendue. */
+    public final class Request {
+        private final String url;
+        private final Consumer<Image> callback;
+
+        private Request(String url, Consumer<Image> callback) {
+            this.url = url;
+            this.callback = callback;
+        }
+
+        /** Renonce à l'image: le rappel ne sera pas appelé (thread JavaFX). */
+        public void cancel() {
+            Load load = url != null ? loads.get(url) : null;
+            if (load == null || !load.requests.remove(this) || !load.requests.isEmpty()) return;
+            // Plus personne n'attend cette couverture: le chargement est interrompu
+            load.task.cancel(true);
+            loads.remove(url);
+        }
+    }
+
+    /** Chargement d'une couverture et demandes qui l'attendent. */
+    private static final class Load {
+        final List<Request> requests = new ArrayList<>();
+        Future<?> task;
+        /** Préchargement (pool de fond), tant qu'aucun affichage ne l'attend. */
+        boolean background;
+        /** Numéro de la tâche courante: une tâche remplacée ne publie pas son résultat. */
+        int attempt;
+        /** La tâche de fond a obtenu sa place et charge la couverture. */
+        volatile boolean started;
+    }
+
+    /**
+     * @param url URL ou chemin de la couverture
+     * @return l'image si elle est en mémoire, sinon null (aucun chargement n'est lancé)
+     */
+    public Image getIfPresent(String url) {
+        return memory.get(url);
+    }
+
+    /**
+     * Obtient une couverture. Si elle est en mémoire, le rappel est appelé immédiatement;
+     * sinon il l'est à la fin du chargement, sur le thread JavaFX. Un préchargement de la
+     * même couverture encore en file d'attente est repris en priorité.
+     * @param url      URL ou chemin de la couverture
+     * @param callback reçoit l'image, ou null si elle n'a pas pu être chargée
+     * @return la demande, à annuler si l'image n'est plus attendue
+     */
+    public Request load(String url, Consumer<Image> callback) {
+        Image cached = memory.get(url);
+        if (cached != null) {
+            callback.accept(cached);
+            return new Request(null, callback);
+        }
+        Load load = loads.get(url);
+        if (load == null) {
+            load = new Load();
+            loads.put(url, load);
+            submit(url, load);
+        } else if (load.background) {
+            load.background = false;
+            if (!load.started) {
+                load.task.cancel(true);
+                submit(url, load);
+            }
+        }
+        Request r = new Request(url, callback);
+        load.requests.add(r);
+        return r;
+    }
+
+    /**
+     * Charge une couverture à l'avance, sans l'afficher, sur le pool de fond: au plus
+     * {@link #PREFETCH_THREADS} préchargements simultanés, dans l'ordre des demandes, sans
+     * retarder les chargements pour affichage.
+     * @param url URL ou chemin de la couverture
+     * @return la demande, à annuler si la couverture n'est plus utile
+     */
+    public Request prefetch(String url) {
+        if (memory.containsKey(url)) return new Request(null, img -> { });
+        Load load = loads.get(url);
+        if (load == null) {
+            load = new Load();
+            load.background = true;
+            loads.put(url, load);
+            submit(url, load);
+        }
+        Request r = new Request(url, img -> { });
+        load.requests.add(r);
+        return r;
+    }
+
+    /** Lance (ou relance sur le pool principal) la tâche de chargement (thread JavaFX). */
+    private void submit(String url, Load load) {
+        int attempt = ++load.attempt;
+        if (!load.background) {
+            load.task = pool.submit(() -> {
+                Image img = fetch(url);
+                Platform.runLater(() -> finish(url, load, attempt, img));
+            });
+            return;
+        }
+        load.task = prefetchPool.submit(() -> {
+            try {
+                prefetchSlots.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                load.started = true;
+                Image img = fetch(url);
+                Platform.runLater(() -> finish(url, load, attempt, img));
+            } finally {
+                prefetchSlots.release();
+            }
+        });
+    }
+
+    /** Arrête les chargements en cours. */
+    public void close() {
+        pool.shutdownNow();
+        prefetchPool.shutdownNow();
+    }
+
+    /** Fin d'un chargement (thread JavaFX): mise en cache et rappels. */
+    private void finish(String url, Load load, int attempt, Image img) {
+        // Image obtenue malgré une annulation: gardée quand même pour la prochaine demande
+        if (img != null) remember(url, img);
+        if (loads.get(url) != load || load.attempt != attempt) return;
+        loads.remove(url);
+        for (Request r : load.requests) r.callback.accept(img);
+    }
+
+    private void remember(String url, Image img) {
+        Image old = memory.put(url, img);
+        if (old != null) memoryBytes -= bytes(old);
+        memoryBytes += bytes(img);
+        var it = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && memory.size() > 1 && it.hasNext()) {
+            Image evicted = it.next().getValue();
+            it.remove();
+            memoryBytes -= bytes(evicted);
+        }
+    }
+
+    /** @return la taille estimée de l'image décodée (4 octets par pixel) */
+    private static long bytes(Image img) {
+        return (long) img.getWidth() * (long) img.getHeight() * 4;
+    }
+
+    // --- Chargement (threads du pool) ---
+
+    /** @return l'image décodée, ou null en cas d'échec ou d'interruption */
+    private Image fetch(String url) {
+        try {
+            if (url.startsWith("http://") || url.startsWith("https://")) {
+                byte[] data = fetchHttp(url);
+                return data == null ? null : decode(new ByteArrayInputStream(data));
+            }
+            String uri = url;
+            if (!url.startsWith("file:")) {
+                File f = new File(url);
+                if (f.exists()) uri = f.toURI().toString();
+            }
+            Image img = new Image(uri, DECODE_WIDTH, DECODE_HEIGHT, true, true, false);
+            return img.isError() ? null : img;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Image decode(InputStream in) {
+        Image img = new Image(in, DECODE_WIDTH, DECODE_HEIGHT, true, true);
+        return img.isError() ? null : img;
+    }
+
+    /**
+     * @return le contenu de la couverture, depuis le disque s'il est à jour, sinon
+     * téléchargé (et enregistré); null si elle n'est disponible nulle part
+     */
+    private byte[] fetchHttp(String url) throws InterruptedException {
+        String key = key(url);
+        File data = new File(dir, key + ".img");
+        File metaFile = new File(dir, key + ".meta");
+        Properties meta = readMeta(metaFile);
+        byte[] cached = meta != null && url.equals(meta.getProperty("url")) ? readBytes(data) : null;
+        long checked = cached != null ? parseLong(meta.getProperty("checked")) : 0;
+        if (cached != null && System.currentTimeMillis() - checked < REVALIDATE_AFTER_MS) {
+            // Date d'utilisation: les copies les moins utilisées sont supprimées en premier
+            //noinspection ResultOfMethodCallIgnored
+            data.setLastModified(System.currentTimeMillis());
+            return cached;
+        }
+
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(15)).GET();
+        if (cached != null) {
+            String etag = meta.getProperty("etag");
+            String lastModified = meta.getProperty("lastModified");
+            if (etag != null) req.header("If-None-Match", etag);
+            if (lastModified != null) req.header("If-Modified-Since", lastModified);
+        }
+        HttpResponse<byte[]> resp;
+        try {
+            resp = http.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            // Hors ligne: la copie disque, même ancienne, vaut mieux que rien
+            return cached;
+        }
+        if (resp.statusCode() == 304 && cached != null) {
+            meta.setProperty("checked", Long.toString(System.currentTimeMillis()));
+            writeMeta(metaFile, meta);
+            return cached;
+        }
+        if (resp.statusCode() != 200) return cached;
+        byte[] body = resp.body();
+        Properties fresh = new Properties();
+        fresh.setProperty("url", url);
+        fresh.setProperty("checked", Long.toString(System.currentTimeMillis()));
+        resp.headers().firstValue("ETag").ifPresent(v -> fresh.setProperty("etag", v));
+        resp.headers().firstValue("Last-Modified").ifPresent(v -> fresh.setProperty("lastModified", v));
+        // Données d'abord: des métadonnées présentes désignent toujours une copie complète
+        if (AtomicFiles.write(data, out -> out.write(body))) writeMeta(metaFile, fresh);
+        return body;
+    }
+
+    private static Properties readMeta(File f) {
+        if (!f.isFile()) return null;
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(f)) {
+            p.load(in);
+            return p;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeMeta(File f, Properties meta) {
+        AtomicFiles.write(f, out -> meta.store(out, null));
+    }
+
+    private static byte[] readBytes(File f) {
+        try {
+            return f.isFile() ? Files.readAllBytes(f.toPath()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return s == null ? 0 : Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** @return le nom de fichier d'une URL (empreinte SHA-256) */
+    private static String key(String url) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Ramène le cache disque sous sa taille maximale, en supprimant les copies les moins récemment utilisées. */
+    private void trimDisk() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".img"));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= DISK_MAX_BYTES) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= DISK_MAX_BYTES) break;
+            total -= f.length();
+            String name = f.getName();
+            //noinspection ResultOfMethodCallIgnored
+            new File(dir, name.substring(0, name.length() - 4) + ".meta").delete();
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import javafx.application.Platform;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.TableView;
+import javafx.scene.control.skin.VirtualFlow;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Préchargement des couvertures autour de la sélection de la table: les {@code N} livres
+ * suivants et précédents ({@code -Dbibliofx.coverPrefetch=N}, 5 par défaut, 0 pour
+ * désactiver), puis les lignes visibles, sont chargés dans le {@link CoverCache} avant
+ * d'être sélectionnés.
+ * <p>
+ * Les lignes les plus proches passent d'abord, en commençant dans le sens du dernier
+ * déplacement. A chaque déplacement ou défilement, les préchargements des lignes sorties
+ * de la zone sont annulés. Les changements successifs d'un même passage du thread JavaFX
+ * (défilement) sont regroupés. Thread JavaFX uniquement.
+ */
+public class CoverPrefetcher {
+    private static final int RADIUS = Math.max(0, Integer.getInteger("bibliofx.coverPrefetch", 5));
+
+    private final TableView<Book> table;
+    private final CoverCache cache;
+    /** Préchargements en cours, par URL. */
+    private Map<String, CoverCache.Request> active = new HashMap<>();
+    private int lastSelected = -1;
+    /** Sens du dernier déplacement de la sélection (1 vers le bas, -1 vers le haut). */
+    private int direction = 1;
+    private boolean updateScheduled;
+    private VirtualFlow<?> flow;
+
+    /**
+     * @param table table dont la sélection et les lignes visibles sont suivies
+     * @param cache cache à alimenter
+     */
+    public CoverPrefetcher(TableView<Book> table, CoverCache cache) {
+        this.table = table;
+        this.cache = cache;
+        if (RADIUS == 0) return;
+        table.getSelectionModel().selectedIndexProperty().addListener((obs, o, n) -> {
+            int i = n.intValue();
+            if (i >= 0 && lastSelected >= 0 && i != lastSelected) direction = i > lastSelected ? 1 : -1;
+            if (i >= 0) lastSelected = i;
+            scheduleUpdate();
+        });
+        // Le défilement est suivi par la zone virtuelle de la table, créée avec son habillage
+        table.skinProperty().addListener((obs, o, n) -> watchFlow());
+        watchFlow();
+    }
+
+    private void watchFlow() {
+        if (!(table.lookup(".virtual-flow") instanceof VirtualFlow<?> f) || f == flow) return;
+        flow = f;
+        f.positionProperty().addListener((obs, o, n) -> scheduleUpdate());
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled) return;
+        updateScheduled = true;
+        Platform.runLater(() -> {
+            updateScheduled = false;
+            update();
+        });
+    }
+
+    /** Aligne les préchargements sur la zone courante. */
+    private void update() {
+        if (flow == null) watchFlow();
+        List<Book> items = table.getItems();
+        Set<String> wanted = new LinkedHashSet<>();
+        int selected = table.getSelectionModel().getSelectedIndex();
+        if (selected >= 0) {
+            for (int d = 1; d <= RADIUS; d++) {
+                addCover(items, selected + d * direction, wanted);
+                addCover(items, selected - d * direction, wanted);
+            }
+        }
+        IndexedCell<?> first = flow != null ? flow.getFirstVisibleCell() : null;
+        IndexedCell<?> last = flow != null ? flow.getLastVisibleCell() : null;
+        if (first != null && last != null) {
+            for (int i = first.getIndex(); i <= last.getIndex(); i++) addCover(items, i, wanted);
+        }
+        Map<String, CoverCache.Request> next = new HashMap<>();
+        for (Map.Entry<String, CoverCache.Request> e : active.entrySet()) {
+            if (wanted.contains(e.getKey())) next.put(e.getKey(), e.getValue());
+            else e.getValue().cancel();
+        }
+        for (String url : wanted) {
+            if (!next.containsKey(url)) next.put(url, cache.prefetch(url));
+        }
+        active = next;
+    }
+
+    private static void addCover(List<Book> items, int index, Set<String> wanted) {
+        if (index < 0 || index >= items.size()) return;
+        Book b = items.get(index);
+        String url = b != null ? b.getCoverUrl() : null;
+        if (url != null && !url.isBlank()) wanted.add(url);
+    }
+}
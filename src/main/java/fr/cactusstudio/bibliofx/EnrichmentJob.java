@@ -0,0 +1,363 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.BookLookupService.Suggestion;
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookDelta;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+import fr.cactusstudio.bibliofx.model.Change;
+import fr.cactusstudio.bibliofx.search.TextFolding;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Complète en lot les métadonnées d'une bibliothèque (résumé, couverture, genre, année)
+ * à partir du {@link BookLookupService}.
+ * <p>
+ * Seuls les livres auxquels il manque l'une de ces informations sont recherchés, par
+ * titre et auteur; une suggestion n'est retenue que si son titre et son auteur
+ * correspondent, et seuls les champs vides sont remplis (les saisies de l'utilisateur,
+ * même faites pendant le travail, sont conservées). Chaque livre est recherché sur un
+ * thread virtuel, au plus {@code -Dbibliofx.enrich.concurrency} à la fois (4 par défaut);
+ * le débit vers l'API reste limité par le service. Une recherche en échec (réseau, délai,
+ * erreur HTTP) est retentée avec un délai croissant.
+ * <p>
+ * Les résultats sont appliqués au dépôt par lots ({@link LibraryRepository#apply}),
+ * écrits, puis notés dans un point de reprise ({@code ~/.bibliofx/enrich/<id>.done}):
+ * un travail interrompu (annulation, fermeture) reprend là où il s'était arrêté. Le
+ * point de reprise est supprimé quand tous les livres ont été traités. Les livres dont
+ * la recherche a échoué malgré les nouvelles tentatives ne sont pas notés et seront
+ * recherchés à nouveau.
+ * <p>
+ * Les rappels du {@link Listener} ont lieu sur les threads du travail.
+ */
+public class EnrichmentJob {
+    private static final int CONCURRENCY = Math.max(1, Integer.getInteger("bibliofx.enrich.concurrency", 4));
+    /** Nombre maximal de recherches pour un livre (la première comprise). */
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BACKOFF_BASE_MS = 1000;
+    private static final long BACKOFF_MAX_MS = 30_000;
+    /** Nombre de livres traités par lot appliqué au dépôt. */
+    private static final int BATCH_SIZE = 50;
+    /** Délai maximal avant l'application d'un lot incomplet. */
+    private static final long BATCH_DELAY_MS = 2000;
+
+    /**
+     * Avancement du travail.
+     * @param total     nombre de livres à traiter (hors livres déjà traités avant une reprise)
+     * @param done      livres traités (complétés, sans correspondance ou en échec)
+     * @param enriched  livres complétés
+     * @param failed    livres dont la recherche a échoué
+     * @param finished  le travail est terminé (ou annulé)
+     * @param cancelled le travail a été annulé
+     */
+    public record Progress(int total, int done, int enriched, int failed, boolean finished, boolean cancelled) {
+    }
+
+    /** Suivi du travail. */
+    public interface Listener {
+        /** @param progress avancement, après chaque livre traité et à la fin */
+        void onProgress(Progress progress);
+
+        /**
+         * Un lot vient d'être appliqué au dépôt et écrit.
+         * @param deltas livres modifiés
+         */
+        void onCommit(List<BookDelta> deltas);
+    }
+
+    /** Recherche terminée: suggestion retenue (null sans correspondance), ou échec. */
+    private record Result(long id, Suggestion match, boolean failed) {
+    }
+
+    private final LibraryRepository repository;
+    private final BookLookupService lookup;
+    private final String library;
+    private final File checkpoint;
+    private final Listener listener;
+
+    private volatile boolean cancelled;
+    private volatile Thread coordinator;
+    private int total;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger enriched = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /** Application des lots, un à la fois. */
+    private final Object commitLock = new Object();
+    // Lot en attente, protégé par le verrou de la liste
+    private final List<Result> pending = new ArrayList<>();
+    private long pendingSince;
+
+    /**
+     * @param repository dépôt à compléter
+     * @param lookup     service de recherche
+     * @param library    nom de la bibliothèque
+     * @param listener   suivi du travail
+     */
+    public EnrichmentJob(LibraryRepository repository, BookLookupService lookup, String library, Listener listener) {
+        this(repository, lookup, library, new File(System.getProperty("user.home"), ".bibliofx/enrich"), listener);
+    }
+
+    /**
+     * @param repository    dépôt à compléter
+     * @param lookup        service de recherche
+     * @param library       nom de la bibliothèque
+     * @param checkpointDir répertoire des points de reprise
+     * @param listener      suivi du travail
+     */
+    public EnrichmentJob(LibraryRepository repository, BookLookupService lookup, String library, File checkpointDir,
+                         Listener listener) {
+        this.repository = repository;
+        this.lookup = lookup;
+        this.library = library;
+        String id = repository.libraryId(library);
+        this.checkpoint = new File(checkpointDir, (id != null ? id : "unknown") + ".done");
+        this.listener = listener;
+    }
+
+    /** @return le nom de la bibliothèque complétée */
+    public String getLibrary() {
+        return library;
+    }
+
+    /** Lance le travail (une seule fois). */
+    public synchronized void start() {
+        if (coordinator != null) return;
+        coordinator = Thread.ofVirtual().name("bibliofx-enrich").start(this::run);
+    }
+
+    /**
+     * Interrompt le travail: les recherches en cours sont abandonnées, les résultats déjà
+     * obtenus sont appliqués et notés dans le point de reprise.
+     */
+    public void cancel() {
+        cancelled = true;
+        Thread t = coordinator;
+        if (t != null) t.interrupt();
+    }
+
+    /**
+     * Attend la fin du travail.
+     * @param timeoutMs délai maximal d'attente
+     * @return true si le travail est terminé (ou n'a pas été lancé)
+     */
+    public boolean await(long timeoutMs) throws InterruptedException {
+        Thread t = coordinator;
+        return t == null || t.join(Duration.ofMillis(timeoutMs));
+    }
+
+    /**
+     * @param r enregistrement
+     * @return true s'il manque au livre une information que la recherche peut apporter
+     */
+    static boolean needsEnrichment(BookRecord r) {
+        return isBlank(r.summary()) || isBlank(r.coverUrl()) || isBlank(r.genre()) || r.year() <= 0;
+    }
+
+    private void run() {
+        Set<Long> resumed = readCheckpoint();
+        List<BookRecord> todo = new ArrayList<>();
+        for (BookRecord r : repository.snapshot(library)) {
+            if (needsEnrichment(r) && !isBlank(r.title()) && !resumed.contains(r.id())) todo.add(r);
+        }
+        total = todo.size();
+        report(false);
+        Semaphore slots = new Semaphore(CONCURRENCY);
+        ExecutorService workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bibliofx-enrich-", 0).factory());
+        try {
+            for (BookRecord r : todo) {
+                if (cancelled) break;
+                // Une place libre avant de créer le thread: au plus CONCURRENCY recherches vivantes
+                slots.acquire();
+                workers.execute(() -> {
+                    try {
+                        Result res = enrich(r);
+                        if (res != null) completed(res);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.isTerminated()) {
+                if (cancelled) throw new InterruptedException();
+                // Lot incomplet appliqué au bout du délai, même sans nouveau résultat
+                if (workers.awaitTermination(BATCH_DELAY_MS, TimeUnit.MILLISECONDS)) break;
+                commitIfDue(false);
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+        } finally {
+            workers.shutdownNow();
+            workers.close();
+        }
+        commitIfDue(true);
+        if (!cancelled && failed.get() == 0) {
+            //noinspection ResultOfMethodCallIgnored
+            checkpoint.delete();
+        }
+        report(true);
+    }
+
+    /** @return le résultat de la recherche, ou null si elle a été interrompue */
+    private Result enrich(BookRecord r) {
+        String query = "intitle:" + r.title() + (isBlank(r.author()) ? "" : " inauthor:" + r.author());
+        for (int attempt = 1; ; attempt++) {
+            Future<List<Suggestion>> f = lookup.search(query);
+            try {
+                return new Result(r.id(), bestMatch(r, f.get()), false);
+            } catch (InterruptedException e) {
+                f.cancel(true);
+                return null;
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IOException) || attempt == MAX_ATTEMPTS) {
+                    System.err.println("Enrichissement: échec pour \"" + r.title() + "\": " + e.getCause());
+                    return new Result(r.id(), null, true);
+                }
+            }
+            // Nouvelle tentative après un délai croissant, étalé pour ne pas repartir ensemble
+            long delay = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << (attempt - 1));
+            try {
+                Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @param r           livre recherché
+     * @param suggestions réponses de l'API
+     * @return la première suggestion de même titre (au sous-titre près) et de même auteur, ou null
+     */
+    static Suggestion bestMatch(BookRecord r, List<Suggestion> suggestions) {
+        String title = String.join(" ", TextFolding.tokens(r.title()));
+        List<String> author = TextFolding.tokens(r.author());
+        for (Suggestion s : suggestions) {
+            String t = String.join(" ", TextFolding.tokens(s.title()));
+            if (t.isEmpty() || !(t.startsWith(title) || title.startsWith(t))) continue;
+            List<String> a = TextFolding.tokens(s.author());
+            if (!author.isEmpty() && !a.isEmpty() && a.stream().noneMatch(author::contains)) continue;
+            return s;
+        }
+        return null;
+    }
+
+    private void completed(Result res) {
+        if (res.failed) failed.incrementAndGet();
+        done.incrementAndGet();
+        synchronized (pending) {
+            if (pending.isEmpty()) pendingSince = System.currentTimeMillis();
+            pending.add(res);
+        }
+        commitIfDue(false);
+        report(false);
+    }
+
+    /**
+     * Applique le lot en attente s'il est complet ou ancien (ou dans tous les cas si
+     * {@code force}), l'écrit, puis le note dans le point de reprise. Les lots sont
+     * appliqués un par un, dans l'ordre.
+     */
+    private void commitIfDue(boolean force) {
+        synchronized (commitLock) {
+            List<Result> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) return;
+                if (!force && pending.size() < BATCH_SIZE
+                        && System.currentTimeMillis() - pendingSince < BATCH_DELAY_MS) return;
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            List<Change> changes = new ArrayList<>();
+            for (Result res : batch) {
+                if (res.match != null) changes.add(new Change.Update(res.id, b -> fillMissing(b, res.match)));
+            }
+            List<BookDelta> deltas = changes.isEmpty() ? List.of() : repository.apply(library, changes);
+            enriched.addAndGet(deltas.size());
+            // Noté comme traité seulement une fois écrit: une reprise ne perd aucun résultat
+            boolean written = true;
+            if (!deltas.isEmpty()) {
+                try {
+                    written = repository.flushAsync().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    written = false;
+                } catch (ExecutionException e) {
+                    written = false;
+                }
+            }
+            if (written) appendCheckpoint(batch);
+            if (!deltas.isEmpty()) listener.onCommit(deltas);
+        }
+    }
+
+    /** Remplit les champs vides du livre avec ceux de la suggestion. */
+    private static void fillMissing(Book b, Suggestion s) {
+        if (isBlank(b.getSummary()) && s.summary() != null) b.setSummary(s.summary());
+        if (isBlank(b.getCoverUrl()) && s.coverUrl() != null) b.setCoverUrl(s.coverUrl());
+        if (isBlank(b.getGenre()) && s.genre() != null) b.setGenre(s.genre());
+        if (b.getYear() <= 0 && s.year() != null) b.setYear(s.year());
+    }
+
+    private void report(boolean finished) {
+        listener.onProgress(new Progress(total, done.get(), enriched.get(), failed.get(), finished, finished && cancelled));
+    }
+
+    // --- Point de reprise: identifiants des livres traités, un par ligne ---
+
+    private Set<Long> readCheckpoint() {
+        Set<Long> ids = new HashSet<>();
+        if (!checkpoint.isFile()) return ids;
+        try {
+            for (String line : Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8)) {
+                try {
+                    ids.add(Long.parseLong(line.trim()));
+                } catch (NumberFormatException e) {
+                    // Dernière ligne tronquée par un arrêt brutal: le livre sera recherché à nouveau
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Enrichissement: point de reprise illisible " + checkpoint + ": " + e.getMessage());
+        }
+        return ids;
+    }
+
+    /** Ajoute les livres traités du lot (sauf les échecs) au point de reprise. */
+    private void appendCheckpoint(List<Result> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (Result res : batch) {
+            if (!res.failed) sb.append(res.id).append('\n');
+        }
+        if (sb.isEmpty()) return;
+        try {
+            File dir = checkpoint.getParentFile();
+            if (dir != null) Files.createDirectories(dir.toPath());
+            Files.writeString(checkpoint.toPath(), sb, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Enrichissement: écriture du point de reprise impossible: " + e.getMessage());
+        }
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+}
@@ -0,0 +1,249 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Filtrage des livres hors du thread JavaFX, pour les grandes bibliothèques.
+ * <p>
+ * Chaque changement de filtre fournit la fabrique du prédicat, appelée sur le thread
+ * JavaFX au moment de l'évaluation (le prédicat obtenu ne doit dépendre que d'un état
+ * immuable). Les changements de saisie sont regroupés (délai d'inactivité); les
+ * livres sont alors évalués par un pool fork-join, en tranches réparties sur les
+ * cœurs, et le résultat remplace la liste filtrée en une seule modification. Une
+ * évaluation en cours est abandonnée dès qu'un nouveau filtre est demandé, et
+ * recommencée si la liste source a changé entre-temps.
+ * <p>
+ * Les petites modifications de la liste source (ajout, édition, suppression) sont
+ * reportées directement, sans nouvelle évaluation complète: les livres concernés sont
+ * retrouvés par identifiant, en une seule passe sur la liste filtrée. Sans filtre, la liste
+ * filtrée est une copie de la source.
+ */
+public class FilterService {
+    /** Délai d'inactivité avant d'évaluer un filtre saisi. */
+    private static final long DEBOUNCE_MS = 150;
+    /** En dessous de cette taille, l'évaluation se fait directement sur le thread JavaFX. */
+    private static final int PARALLEL_THRESHOLD = 20_000;
+    /** Taille des tranches évaluées par une tâche fork-join. */
+    private static final int CHUNK_SIZE = 8192;
+    /** Au-delà de ce nombre de livres modifiés, la source est réévaluée entièrement. */
+    private static final int INCREMENTAL_MAX = 256;
+
+    private final ObservableList<Book> source;
+    private final ObservableList<Book> result = FXCollections.observableArrayList();
+    private final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private final ScheduledExecutorService scheduler = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "bibliofx-filter-debounce");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Etat modifié sur le thread JavaFX uniquement
+    private Supplier<Predicate<Book>> filter = () -> null;
+    /** Version de la liste source, incrémentée à chaque modification. */
+    private long sourceVersion;
+    private ScheduledFuture<?> pendingStart;
+    /** Évaluation courante; les évaluations plus anciennes s'arrêtent d'elles-mêmes. */
+    private volatile long generation;
+
+    /**
+     * @param source livres à filtrer (modifiés uniquement sur le thread JavaFX)
+     */
+    public FilterService(ObservableList<Book> source) {
+        this.source = source;
+        result.setAll(source);
+        source.addListener(this::onSourceChanged);
+    }
+
+    /** @return les livres retenus par le filtre courant (à ne pas modifier) */
+    public ObservableList<Book> getResult() {
+        return result;
+    }
+
+    /**
+     * Change le filtre.
+     * @param filter   fabrique du prédicat (null pour tout afficher), appelée sur le thread JavaFX
+     * @param debounce true pour attendre la fin de la saisie (champ de recherche)
+     */
+    public void setFilter(Supplier<Predicate<Book>> filter, boolean debounce) {
+        this.filter = filter;
+        generation++;
+        if (pendingStart != null) pendingStart.cancel(false);
+        pendingStart = null;
+        if (!debounce) {
+            start();
+            return;
+        }
+        long scheduled = generation;
+        pendingStart = scheduler.schedule(() -> Platform.runLater(() -> {
+            if (generation == scheduled) start();
+        }), DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Arrête le pool d'évaluation. */
+    public void close() {
+        generation++;
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /** Lance l'évaluation du filtre courant sur la source entière (thread JavaFX). */
+    private void start() {
+        long gen = ++generation;
+        Predicate<Book> p = filter.get();
+        if (p == null) {
+            result.setAll(source);
+            return;
+        }
+        Book[] items = source.toArray(new Book[0]);
+        if (items.length < PARALLEL_THRESHOLD) {
+            List<Book> selected = new ArrayList<>();
+            for (Book b : items) {
+                if (p.test(b)) selected.add(b);
+            }
+            result.setAll(selected);
+            return;
+        }
+        long version = sourceVersion;
+        pool.execute(() -> {
+            boolean[] keep = new boolean[items.length];
+            new Chunk(items, keep, p, gen, 0, items.length).invoke();
+            if (generation != gen) return;
+            List<Book> selected = select(items, keep);
+            Platform.runLater(() -> {
+                if (generation != gen) return;
+                if (sourceVersion != version) {
+                    // Source modifiée pendant l'évaluation: recommencer sur la version courante
+                    start();
+                    return;
+                }
+                result.setAll(selected);
+            });
+        });
+    }
+
+    private static List<Book> select(Book[] items, boolean[] keep) {
+        List<Book> selected = new ArrayList<>();
+        for (int i = 0; i < items.length; i++) {
+            if (keep[i]) selected.add(items[i]);
+        }
+        return selected;
+    }
+
+    /** Évaluation d'une tranche, divisée tant qu'elle dépasse {@link #CHUNK_SIZE}. */
+    private final class Chunk extends RecursiveAction {
+        private final Book[] items;
+        private final boolean[] keep;
+        private final Predicate<Book> predicate;
+        private final long gen;
+        private final int from;
+        private final int to;
+
+        Chunk(Book[] items, boolean[] keep, Predicate<Book> predicate, long gen, int from, int to) {
+            this.items = items;
+            this.keep = keep;
+            this.predicate = predicate;
+            this.gen = gen;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (generation != gen) return;
+            if (to - from > CHUNK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Chunk(items, keep, predicate, gen, from, mid),
+                        new Chunk(items, keep, predicate, gen, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) keep[i] = predicate.test(items[i]);
+        }
+    }
+
+    /** Reporte une modification de la source dans le résultat (thread JavaFX). */
+    private void onSourceChanged(ListChangeListener.Change<? extends Book> c) {
+        sourceVersion++;
+        int changed = 0;
+        while (c.next()) {
+            if (!c.wasPermutated()) changed += c.getRemovedSize() + c.getAddedSize();
+        }
+        if (changed == 0) return;
+        if (changed > INCREMENTAL_MAX) {
+            // Remplacement de la liste (chargement d'une bibliothèque): évaluation complète
+            if (pendingStart != null) pendingStart.cancel(false);
+            pendingStart = null;
+            start();
+            return;
+        }
+        Predicate<Book> p = filter.get();
+        // Livres du résultat à remplacer (ou retirer: null), désignés par identifiant
+        Map<Long, Book> updates = new LinkedHashMap<>();
+        List<Book> appended = new ArrayList<>();
+        c.reset();
+        while (c.next()) {
+            if (c.wasPermutated()) continue;
+            List<? extends Book> removed = c.getRemoved();
+            List<? extends Book> added = c.getAddedSubList();
+            for (int i = 0; i < Math.max(removed.size(), added.size()); i++) {
+                Book out = i < removed.size() ? removed.get(i) : null;
+                Book in = i < added.size() ? added.get(i) : null;
+                boolean keep = in != null && (p == null || p.test(in));
+                if (out != null && keep && out.getId() == in.getId()) {
+                    // Édition: le livre garde sa place (ajouté en fin s'il n'était pas retenu)
+                    updates.put(out.getId(), in);
+                    continue;
+                }
+                if (out != null) updates.put(out.getId(), null);
+                if (keep) appended.add(in);
+            }
+        }
+        if (!updates.isEmpty()) applyUpdates(updates);
+        result.addAll(appended);
+    }
+
+    /**
+     * Remplace ou retire les livres désignés, en une seule passe sur le résultat (sans
+     * recherche linéaire par livre modifié); les remplaçants absents du résultat y sont ajoutés.
+     * @param updates identifiant → nouveau livre, ou null pour le retirer
+     */
+    private void applyUpdates(Map<Long, Book> updates) {
+        int n = updates.size();
+        long[] ids = new long[n];
+        int k = 0;
+        for (long id : updates.keySet()) ids[k++] = id;
+        Arrays.sort(ids);
+        Book[] values = new Book[n];
+        for (int i = 0; i < n; i++) values[i] = updates.get(ids[i]);
+        boolean[] found = new boolean[n];
+        int remaining = n;
+        // En partant de la fin: un retrait ne décale pas les positions restant à parcourir
+        for (int i = result.size() - 1; i >= 0 && remaining > 0; i--) {
+            int j = Arrays.binarySearch(ids, result.get(i).getId());
+            if (j < 0 || found[j]) continue;
+            found[j] = true;
+            remaining--;
+            if (values[j] == null) result.remove(i);
+            else result.set(i, values[j]);
+        }
+        for (Book in : updates.values()) {
+            if (in != null && !found[Arrays.binarySearch(ids, in.getId())]) result.add(in);
+        }
+    }
+}
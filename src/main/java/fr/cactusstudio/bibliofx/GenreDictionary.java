@@ -0,0 +1,105 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Genres présents dans une liste de livres, tenus à jour à partir de ses modifications.
+ * <p>
+ * Chaque genre compte les livres qui le portent; il apparaît dans la liste triée
+ * ({@link #getItems()}) avec son premier livre et en disparaît avec le dernier. Une
+ * modification ne coûte que la mise à jour des genres concernés (O(log g) pour g genres)
+ * et ne transmet à la liste que les genres apparus ou disparus. Au-delà de quelques-uns
+ * (chargement d'une bibliothèque), la liste est remplacée en une seule fois.
+ * <p>
+ * A enregistrer comme écouteur de la liste des livres tant qu'elle est vide (thread JavaFX).
+ */
+public class GenreDictionary implements ListChangeListener<Book> {
+    /** Au-delà de ce nombre de genres apparus ou disparus, la liste est remplacée. */
+    private static final int INCREMENTAL_MAX = 16;
+
+    /** Genre → nombre de livres (au moins 1), trié. */
+    private final TreeMap<String, Integer> counts = new TreeMap<>();
+    private final ObservableList<String> items = FXCollections.observableArrayList();
+    private final ObservableList<String> readOnlyItems = FXCollections.unmodifiableObservableList(items);
+    /** Nombre de livres de la liste écoutée. */
+    private int size;
+
+    /** @return les genres présents, triés (non modifiable) */
+    public ObservableList<String> getItems() {
+        return readOnlyItems;
+    }
+
+    /**
+     * @param genre genre
+     * @return le nombre de livres de ce genre
+     */
+    public int count(String genre) {
+        return counts.getOrDefault(genre, 0);
+    }
+
+    @Override
+    public void onChanged(Change<? extends Book> c) {
+        Set<String> appeared = new LinkedHashSet<>();
+        Set<String> disappeared = new LinkedHashSet<>();
+        while (c.next()) {
+            if (c.wasPermutated()) continue;
+            boolean replacedAll = c.getRemovedSize() > 0 && c.getRemovedSize() == size;
+            if (replacedAll) {
+                // Liste entière remplacée: inutile de décompter livre par livre
+                disappeared.addAll(counts.keySet());
+                counts.clear();
+            }
+            // Ajouts d'abord: un livre édité sans changer de genre ne fait pas disparaître le sien
+            for (Book b : c.getAddedSubList()) add(b.getGenre(), appeared);
+            if (!replacedAll) {
+                for (Book b : c.getRemoved()) remove(b.getGenre(), disappeared);
+            }
+            size += c.getAddedSize() - c.getRemovedSize();
+        }
+        publish(appeared, disappeared);
+    }
+
+    private void add(String genre, Set<String> appeared) {
+        if (genre == null || genre.isBlank()) return;
+        if (counts.merge(genre, 1, Integer::sum) == 1) appeared.add(genre);
+    }
+
+    private void remove(String genre, Set<String> disappeared) {
+        if (genre == null || genre.isBlank()) return;
+        Integer n = counts.get(genre);
+        if (n == null) return;
+        if (n == 1) {
+            counts.remove(genre);
+            disappeared.add(genre);
+        } else {
+            counts.put(genre, n - 1);
+        }
+    }
+
+    /** Reporte les genres apparus ou disparus dans la liste triée. */
+    private void publish(Set<String> appeared, Set<String> disappeared) {
+        if (appeared.size() + disappeared.size() > INCREMENTAL_MAX) {
+            items.setAll(counts.keySet());
+            return;
+        }
+        for (String g : disappeared) {
+            // Genre revenu dans la même modification: déjà en place
+            if (counts.containsKey(g)) continue;
+            int i = Collections.binarySearch(items, g);
+            if (i >= 0) items.remove(i);
+        }
+        for (String g : appeared) {
+            if (!counts.containsKey(g)) continue;
+            int i = Collections.binarySearch(items, g);
+            if (i < 0) items.add(-i - 1, g);
+        }
+    }
+}
@@ -8,11 +8,13 @@ import javafx.application.Application;
  */
 public class Launcher {
     /**
-     * Méthode main qui délègue au runtime JavaFX.
+     * Méthode main qui délègue au runtime JavaFX. La préparation des données commence
+     * avant, pour se faire pendant le démarrage du runtime.
      *
      * @param args arguments de ligne de commande
      */
     public static void main(String[] args) {
+        Startup.begin();
         Application.launch(Main.class, args);
     }
 }
@@ -0,0 +1,90 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.Change;
+import fr.cactusstudio.bibliofx.storage.BookColumns;
+import fr.cactusstudio.bibliofx.storage.BookStore;
+import fr.cactusstudio.bibliofx.storage.MappedBookList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prépare l'affichage d'une bibliothèque: vue projetée en lecture seule si elle atteint
+ * {@code -Dbibliofx.readOnlyThreshold} livres (500 000 par défaut, 0 pour désactiver),
+ * livres chargés depuis le {@link LibraryRepository} sinon. Avec {@code -Dbibliofx.columnarStore=true},
+ * la vue en lecture seule est une copie de l'index en tableaux ({@link BookStore}), construite
+ * ici plutôt que sur le thread JavaFX. Le dépôt est la seule source:
+ * aucun autre fichier n'est relu. Sans accès à l'interface: utilisable depuis n'importe
+ * quel thread (au démarrage, hors du thread JavaFX).
+ */
+final class LibraryLoader {
+    /** Nombre de livres à partir duquel une bibliothèque est ouverte en lecture seule. */
+    private static final int READ_ONLY_THRESHOLD = Integer.getInteger("bibliofx.readOnlyThreshold", 500_000);
+    /** Copie les bibliothèques en lecture seule en tableaux plutôt que de lire l'index projeté. */
+    private static final boolean COLUMNAR_STORE = Boolean.getBoolean("bibliofx.columnarStore");
+
+    private LibraryLoader() {
+    }
+
+    /**
+     * Bibliothèque prête à afficher.
+     * @param name     nom de la bibliothèque
+     * @param readOnly livres en lecture seule (index projeté ou sa copie en tableaux), ou null
+     * @param books    livres à afficher (vide en lecture seule; propres à l'appelant)
+     * @param changed  true si des dates d'ajout manquantes ont été complétées dans le dépôt
+     */
+    record Loaded(String name, BookColumns readOnly, List<Book> books, boolean changed) {
+    }
+
+    /**
+     * @param repository dépôt des bibliothèques
+     * @param name       nom de la bibliothèque
+     * @return la bibliothèque prête à afficher
+     */
+    static Loaded load(LibraryRepository repository, String name) {
+        // Très grande bibliothèque déjà indexée: ouverture immédiate, sans chargement
+        MappedBookList mapped = openReadOnlyIfLarge(repository, name, -1);
+        if (mapped != null) return new Loaded(name, columns(mapped), List.of(), false);
+        List<Book> books = repository.load(name);
+        boolean changed = fillMissingAddedAt(repository, name, books);
+        mapped = openReadOnlyIfLarge(repository, name, books.size());
+        return mapped != null ? new Loaded(name, columns(mapped), List.of(), changed) : new Loaded(name, null, books, changed);
+    }
+
+    /** @return l'index projeté, ou sa copie en tableaux avec {@code -Dbibliofx.columnarStore=true} */
+    private static BookColumns columns(MappedBookList mapped) {
+        return COLUMNAR_STORE ? BookStore.copyOf(mapped) : mapped;
+    }
+
+    /**
+     * Ouvre une bibliothèque en lecture seule si elle atteint le seuil de taille.
+     * @param name      nom de la bibliothèque
+     * @param knownSize nombre de livres s'il est déjà connu (l'index est alors construit au besoin),
+     *                  ou -1 pour se contenter d'un index existant et à jour
+     * @return la vue projetée, ou null si la bibliothèque doit être chargée normalement
+     */
+    private static MappedBookList openReadOnlyIfLarge(LibraryRepository repository, String name, int knownSize) {
+        if (READ_ONLY_THRESHOLD <= 0) return null;
+        if (knownSize >= 0 && knownSize < READ_ONLY_THRESHOLD) return null;
+        MappedBookList books = repository.openReadOnly(name, knownSize >= 0);
+        return (books != null && books.size() >= READ_ONLY_THRESHOLD) ? books : null;
+    }
+
+    /**
+     * Complète la date d'ajout des livres qui n'en ont pas (données anciennes), dans la
+     * liste chargée et dans le dépôt.
+     * @return true si le dépôt a été modifié
+     */
+    private static boolean fillMissingAddedAt(LibraryRepository repository, String library, List<Book> books) {
+        long now = System.currentTimeMillis();
+        List<Change> changes = new ArrayList<>();
+        for (Book b : books) {
+            if (b.getAddedAt() == Book.NO_DATE) {
+                b.setAddedAt(now);
+                changes.add(new Change.Update(b.getId(), c -> c.setAddedAt(now)));
+            }
+        }
+        return !changes.isEmpty() && !repository.apply(library, changes).isEmpty();
+    }
+}
@@ -1,35 +1,69 @@
 package fr.cactusstudio.bibliofx;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookDelta;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+import fr.cactusstudio.bibliofx.model.Change;
+import fr.cactusstudio.bibliofx.storage.AtomicFiles;
+import fr.cactusstudio.bibliofx.storage.BookJsonCodec;
+import fr.cactusstudio.bibliofx.storage.LibraryJournal;
+import fr.cactusstudio.bibliofx.storage.LibraryShard;
+import fr.cactusstudio.bibliofx.storage.MappedBookList;
+import fr.cactusstudio.bibliofx.storage.PersistentHashMap;
+import fr.cactusstudio.bibliofx.storage.PersistentVector;
 
 import java.io.*;
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * Dépôt de persistance des bibliothèques et des livres.
  * <p>
- * Les données sont stockées dans un fichier JSON dans le répertoire utilisateur (~/.bibliofx.json).
- * Cette classe gère la migration depuis un ancien format (liste simple) vers un format
- * multi-bibliothèques, ainsi que les opérations CRUD de base.
+ * Les données sont stockées dans le répertoire {@code ~/.bibliofx/}: un petit manifeste
+ * ({@code manifest.json}) contient la bibliothèque courante et la liste des bibliothèques,
+ * et chaque bibliothèque a son propre fichier ({@code shards/<id>.json}) accompagné d'un
+ * journal d'écriture. Les bibliothèques sont chargées à la demande et celles inactives
+ * peuvent être évincées de la mémoire.
+ * <p>
+ * L'état en mémoire est immuable: le manifeste est remplacé à chaque modification et
+ * chaque bibliothèque est un vecteur persistant d'enregistrements ({@link BookRecord}).
+ * Les lectures (liste des bibliothèques, instantané d'une bibliothèque) ne prennent
+ * aucun verrou et ne voient jamais d'état partiel; seules les modifications sont
+ * sérialisées.
+ * <p>
+ * Cette classe gère la migration depuis l'ancien fichier unique (~/.bibliofx.json, liste
+ * simple ou format multi-bibliothèques), ainsi que les opérations CRUD de base.
+ * Le journal est activé par défaut (désactivable avec {@code -Dbibliofx.journal=false}).
  */
 public class LibraryRepository {
-    /** Fichier de données JSON dans le répertoire utilisateur. */
-    private final File dataFile;
-    /** Instance Gson configurée (compact pour de meilleures perfs). */
-    private final Gson gson;
+    /** Répertoire de données dans le répertoire utilisateur. */
+    private final File baseDir;
+    /** Manifeste: bibliothèque courante et correspondance nom → shard. */
+    private final File manifestFile;
+    /** Répertoire des fichiers de bibliothèques. */
+    private final File shardDir;
+    /** Ancien fichier unique (migré au premier démarrage). */
+    private final File legacyFile;
+    private final boolean journalEnabled;
 
     private static final String DEFAULT_LIBRARY = "Bibliothèque";
+    /** Version du format des données (2: identifiants de livres attribués à la création). */
+    private static final int DATA_VERSION = 2;
 
-    // Cache mémoire des données pour éviter les relectures disque à chaque appel
-    private volatile Data cached;
+    // Etat mémoire: modifications sous lock, lectures du manifeste sans verrou
     private final Object lock = new Object();
+    private volatile Manifest manifest;
+    private boolean manifestDirty;
+    /** Shards des bibliothèques supprimées, dont les fichiers sont effacés après l'écriture du manifeste. */
+    private final List<String> deletedShards = new ArrayList<>();
+    private final List<ChangeListener> listeners = new java.util.concurrent.CopyOnWriteArrayList<>();
+    /** Shards chargés, par identifiant, dans l'ordre d'accès (le plus ancien en premier). */
+    private final LinkedHashMap<String, LibraryShard> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    /** Nombre maximal de bibliothèques gardées en mémoire (la courante n'est jamais évincée). */
+    private final int maxLoadedLibraries;
 
     // Ecriture différée (debounce)
     private final java.util.concurrent.ScheduledExecutorService scheduler = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
@@ -40,163 +74,418 @@ public class LibraryRepository {
     private java.util.concurrent.ScheduledFuture<?> pendingWrite;
     private static final long DEBOUNCE_MS = 300;
 
-    private static final Type BOOK_LIST_TYPE = new TypeToken<List<Book>>(){}.getType();
-
     /**
-     * Construit le dépôt et initialise le fichier de données si nécessaire.
+     * Construit le dépôt et initialise les fichiers de données si nécessaire.
      */
     public LibraryRepository() {
         String home = System.getProperty("user.home");
-        // Sur Windows, le répertoire utilisateur est valide, mais le fichier peut ne pas exister.
-        // Utiliser un nom de fichier distinct pour éviter les problèmes de nom réservé et s'assurer de la création.
-        this.dataFile = new File(home, ".bibliofx.json");
-        this.gson = new GsonBuilder().create();
+        this.baseDir = new File(home, ".bibliofx");
+        this.manifestFile = new File(baseDir, "manifest.json");
+        this.shardDir = new File(baseDir, "shards");
+        this.legacyFile = new File(home, ".bibliofx.json");
+        this.journalEnabled = !"false".equalsIgnoreCase(System.getProperty("bibliofx.journal"));
+        this.maxLoadedLibraries = Math.max(1, Integer.getInteger("bibliofx.maxLoadedLibraries", 4));
         ensureInitialized();
-        // Charger une fois en cache
-        this.cached = readDataFromDisk();
     }
 
-    // Modèle persistant en JSON
-    private static class Data {
+    /**
+     * Manifeste immuable: bibliothèque courante, bibliothèques dans l'ordre, index par nom
+     * et par shard, version du format des données. Chaque modification retourne une
+     * nouvelle version.
+     */
+    private record Manifest(String current, PersistentVector<ManifestEntry> libraries,
+                            PersistentHashMap<String, ManifestEntry> byName,
+                            PersistentHashMap<String, ManifestEntry> byShard, int nextShard, int version) {
+
+        static Manifest of(String current, List<ManifestEntry> libraries, int nextShard, int version) {
+            PersistentHashMap<String, ManifestEntry> byName = PersistentHashMap.empty();
+            PersistentHashMap<String, ManifestEntry> byShard = PersistentHashMap.empty();
+            List<ManifestEntry> unique = new ArrayList<>();
+            for (ManifestEntry e : libraries) {
+                if (byName.get(e.name()) != null || byShard.get(e.shard()) != null) continue;
+                byName = byName.plus(e.name(), e);
+                byShard = byShard.plus(e.shard(), e);
+                unique.add(e);
+            }
+            return new Manifest(current, PersistentVector.of(unique), byName, byShard, nextShard, version);
+        }
+
+        ManifestEntry entry(String name) {
+            return name == null ? null : byName.get(name);
+        }
+
+        Manifest withCurrent(String name) {
+            return new Manifest(name, libraries, byName, byShard, nextShard, version);
+        }
+
+        Manifest withVersion(int v) {
+            return new Manifest(current, libraries, byName, byShard, nextShard, v);
+        }
+
+        /** Ajoute une bibliothèque avec un nouveau shard. */
+        Manifest plus(String name) {
+            ManifestEntry e = new ManifestEntry(name, "lib-" + nextShard);
+            return new Manifest(current, libraries.plus(e), byName.plus(name, e), byShard.plus(e.shard(), e), nextShard + 1, version);
+        }
+
+        Manifest minus(ManifestEntry e) {
+            List<ManifestEntry> rest = new ArrayList<>(libraries);
+            rest.remove(e);
+            return new Manifest(current, PersistentVector.of(rest), byName.minus(e.name()), byShard.minus(e.shard()), nextShard, version);
+        }
+
+        Manifest renamed(ManifestEntry e, String newName) {
+            ManifestEntry ne = new ManifestEntry(newName, e.shard());
+            return new Manifest(current, libraries.with(libraries.indexOf(e), ne),
+                    byName.minus(e.name()).plus(newName, ne), byShard.plus(e.shard(), ne), nextShard, version);
+        }
+    }
+
+    private record ManifestEntry(String name, String shard) {
+    }
+
+    // Ancien format (fichier unique ~/.bibliofx.json)
+    private static class LegacyData {
         String current;
         Map<String, List<Book>> libraries;
+        long seq;
     }
 
     /**
-     * S'assure que le fichier de données existe et est au bon format, sinon le crée
-     * ou migre depuis l'ancien format (liste de livres seule).
+     * S'assure que le manifeste existe, sinon le crée ou migre depuis l'ancien fichier unique.
+     * Les données d'une version antérieure sont migrées une fois (identifiants de livres).
      */
     private void ensureInitialized() {
-        if (!dataFile.exists()) {
-            // S'assurer que le dossier parent existe (utile si user.home pointe vers un chemin non créé)
-            File parent = dataFile.getParentFile();
-            if (parent != null && !parent.exists()) {
-                parent.mkdirs();
+        if (manifestFile.exists()) {
+            try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8)))) {
+                Manifest m = readManifest(in);
+                if (!m.libraries().isEmpty()) {
+                    if (m.entry(m.current()) == null) m = m.withCurrent(m.libraries().get(0).name());
+                    if (m.version() < DATA_VERSION) m = migrateShards(m);
+                    manifest = m;
+                    return;
+                }
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                e.printStackTrace();
             }
-            // Créer un fichier initial valide quel que soit l'OS (Windows/Linux/macOS)
-            Data d = new Data();
-            d.current = DEFAULT_LIBRARY;
-            d.libraries = new LinkedHashMap<>();
-            d.libraries.put(DEFAULT_LIBRARY, new ArrayList<>());
-            writeData(d);
-            return;
-        }
-        // Si le fichier existe mais est un tableau (ancien format), migrer
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), StandardCharsets.UTF_8))) {
-            JsonElement root = com.google.gson.JsonParser.parseReader(br);
-            if (root.isJsonArray()) {
-                List<Book> old = gson.fromJson(root, BOOK_LIST_TYPE);
-                Data d = new Data();
-                d.current = DEFAULT_LIBRARY;
-                d.libraries = new LinkedHashMap<>();
-                d.libraries.put(DEFAULT_LIBRARY, old != null ? old : new ArrayList<>());
-                writeData(d);
-            } else if (root.isJsonObject()) {
-                // ok
-            } else {
-                // Inattendu -> réinitialisation
-                Data d = new Data();
-                d.current = DEFAULT_LIBRARY;
-                d.libraries = new LinkedHashMap<>();
-                d.libraries.put(DEFAULT_LIBRARY, new ArrayList<>());
-                writeData(d);
+        }
+        // S'assurer que le dossier existe (utile si user.home pointe vers un chemin non créé)
+        shardDir.mkdirs();
+        Manifest m = Manifest.of(null, List.of(), 0, DATA_VERSION);
+        LegacyData legacy = readLegacyData();
+        if (legacy != null) {
+            // Migration: une bibliothèque → un shard
+            for (Map.Entry<String, List<Book>> e : legacy.libraries.entrySet()) {
+                m = m.plus(e.getKey());
+                LibraryShard.create(m.entry(e.getKey()).shard(), shardDir, journalEnabled, e.getValue());
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            m = m.withCurrent(legacy.current);
+        }
+        if (m.libraries().isEmpty()) {
+            m = m.plus(DEFAULT_LIBRARY);
+        }
+        if (m.entry(m.current()) == null) m = m.withCurrent(m.libraries().get(0).name());
+        manifest = m;
+        if (writeManifest(m) && legacy != null) {
+            // Conserver l'ancien fichier par sécurité, mais ne plus le relire
+            //noinspection ResultOfMethodCallIgnored
+            legacyFile.renameTo(new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated"));
+            //noinspection ResultOfMethodCallIgnored
+            new File(legacyFile.getParentFile(), ".bibliofx.journal").delete();
         }
     }
 
     /**
-     * Lit l'ensemble des données du fichier JSON.
-     * @return l'objet Data désérialisé
+     * Ouvre chaque shard une fois: l'ouverture attribue un identifiant aux livres qui
+     * n'en ont pas et l'écrit aussitôt dans l'instantané.
+     * @return le manifeste à la version courante (écrit sur disque)
      */
-    // Lecture brute depuis le disque (utilisée pour l'init/recache)
-    private Data readDataFromDisk() {
-        ensureInitialized();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), StandardCharsets.UTF_8))) {
-            Data d = gson.fromJson(br, Data.class);
-            if (d == null) {
-                d = new Data();
+    private Manifest migrateShards(Manifest m) {
+        for (ManifestEntry e : m.libraries()) {
+            LibraryShard.open(e.shard(), shardDir, journalEnabled);
+        }
+        m = m.withVersion(DATA_VERSION);
+        writeManifest(m);
+        return m;
+    }
+
+    // --- Migration depuis l'ancien fichier unique ---
+
+    /**
+     * Lit l'ancien fichier unique (liste simple ou multi-bibliothèques) et rejoue son journal.
+     * @return les données, ou null s'il n'y a rien à migrer
+     */
+    private LegacyData readLegacyData() {
+        if (!legacyFile.exists()) return null;
+        LegacyData d = null;
+        // Une seule passe: le premier jeton suffit à distinguer l'ancien format (tableau)
+        try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(legacyFile), StandardCharsets.UTF_8)))) {
+            JsonToken first = in.peek();
+            if (first == JsonToken.BEGIN_ARRAY) {
+                d = new LegacyData();
                 d.current = DEFAULT_LIBRARY;
                 d.libraries = new LinkedHashMap<>();
-                d.libraries.put(DEFAULT_LIBRARY, new ArrayList<>());
+                d.libraries.put(DEFAULT_LIBRARY, BookJsonCodec.readBookArray(in));
+                return d;
+            } else if (first == JsonToken.BEGIN_OBJECT) {
+                d = readLegacyObject(in);
             }
-            return d;
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
             e.printStackTrace();
-            Data d = new Data();
-            d.current = DEFAULT_LIBRARY;
-            d.libraries = new LinkedHashMap<>();
-            d.libraries.put(DEFAULT_LIBRARY, new ArrayList<>());
-            return d;
         }
+        if (d == null || d.libraries == null) return null;
+        LegacyData data = d;
+        new LibraryJournal(new File(legacyFile.getParentFile(), ".bibliofx.journal")).replay(record -> {
+            if (record.seq > data.seq) applyLegacyRecord(data, record);
+        });
+        return data;
     }
 
-    // Accès au modèle en cache
-    private Data readData() {
-        Data d = cached;
-        if (d == null) {
-            synchronized (lock) {
-                if (cached == null) cached = readDataFromDisk();
-                d = cached;
+    /** Lit l'objet {@code { current, libraries: { name -> [Book] }, seq }} de l'ancien fichier. */
+    private static LegacyData readLegacyObject(JsonReader in) throws IOException {
+        LegacyData d = new LegacyData();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "current" -> d.current = in.nextString();
+                case "seq" -> d.seq = in.nextLong();
+                case "libraries" -> {
+                    d.libraries = new LinkedHashMap<>();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String lib = in.nextName();
+                        d.libraries.put(lib, BookJsonCodec.readBookArray(in));
+                    }
+                    in.endObject();
+                }
+                default -> in.skipValue();
             }
         }
+        in.endObject();
         return d;
     }
 
+    /** Applique un enregistrement de l'ancien journal global au modèle. */
+    private static void applyLegacyRecord(LegacyData d, BookJsonCodec.JournalRecord r) {
+        String lib = r.lib;
+        if (lib == null) return;
+        switch (r.op) {
+            case "splice" -> {
+                List<Book> books = d.libraries.computeIfAbsent(lib, k -> new ArrayList<>());
+                if (r.at < 0 || r.del < 0 || r.at + r.del > books.size()) return;
+                books.subList(r.at, r.at + r.del).clear();
+                books.addAll(r.at, r.ins);
+            }
+            case "create" -> {
+                d.libraries.putIfAbsent(lib, new ArrayList<>());
+                d.current = lib;
+            }
+            case "rename" -> {
+                String to = r.to;
+                if (to == null) return;
+                List<Book> books = d.libraries.remove(lib);
+                if (books != null) d.libraries.put(to, books);
+                if (Objects.equals(d.current, lib)) d.current = to;
+            }
+            case "delete" -> {
+                d.libraries.remove(lib);
+                if (!d.libraries.isEmpty() && !d.libraries.containsKey(d.current)) d.current = d.libraries.keySet().iterator().next();
+            }
+            case "current" -> {
+                if (d.libraries.containsKey(lib)) d.current = lib;
+            }
+            default -> { }
+        }
+    }
+
+    // --- Manifeste et shards ---
+
+    /** Lit le manifeste {@code { current, libraries: [{name, shard}], nextShard, version }}. */
+    private static Manifest readManifest(JsonReader in) throws IOException {
+        String current = null;
+        int nextShard = 0;
+        int version = 1;
+        List<ManifestEntry> libraries = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "current" -> current = in.nextString();
+                case "nextShard" -> nextShard = in.nextInt();
+                case "version" -> version = in.nextInt();
+                case "libraries" -> {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        String libName = null;
+                        String shard = null;
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            switch (in.nextName()) {
+                                case "name" -> libName = in.nextString();
+                                case "shard" -> shard = in.nextString();
+                                default -> in.skipValue();
+                            }
+                        }
+                        in.endObject();
+                        if (libName != null && shard != null) libraries.add(new ManifestEntry(libName, shard));
+                    }
+                    in.endArray();
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return Manifest.of(current, libraries, nextShard, version);
+    }
+
+    /** @return la forme JSON du manifeste */
+    private static String manifestToJson(Manifest m) {
+        StringWriter sw = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(sw);
+            out.beginObject();
+            out.name("current").value(m.current());
+            out.name("libraries").beginArray();
+            for (ManifestEntry e : m.libraries()) {
+                out.beginObject().name("name").value(e.name()).name("shard").value(e.shard()).endObject();
+            }
+            out.endArray();
+            out.name("nextShard").value(m.nextShard());
+            out.name("version").value(m.version());
+            out.endObject();
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sw.toString();
+    }
+
+    private boolean writeManifest(Manifest m) {
+        String json = manifestToJson(m);
+        return AtomicFiles.writeUtf8(manifestFile, w -> w.write(json));
+    }
+
     /**
-     * Écrit l'objet Data dans le fichier JSON.
-     * @param d données à persister
+     * Retourne le shard d'une bibliothèque, en le chargeant si nécessaire.
+     * Doit être appelé sous lock.
      */
-    private void writeData(Data d) {
-        // Met à jour le cache et programme une écriture différée
+    private LibraryShard shard(ManifestEntry e) {
+        LibraryShard s = loaded.get(e.shard());
+        if (s == null) {
+            s = LibraryShard.open(e.shard(), shardDir, journalEnabled);
+            loaded.put(e.shard(), s);
+            // Identifiants attribués à d'anciennes données, non encore écrits
+            if (s.isDirty()) scheduleFlush();
+            evictIfNeeded();
+        }
+        return s;
+    }
+
+    /** Évince les bibliothèques les moins récemment utilisées au-delà de la limite. Sous lock. */
+    private void evictIfNeeded() {
+        if (loaded.size() <= maxLoadedLibraries) return;
+        ManifestEntry current = manifest.entry(manifest.current());
+        Iterator<Map.Entry<String, LibraryShard>> it = loaded.entrySet().iterator();
+        while (loaded.size() > maxLoadedLibraries && it.hasNext()) {
+            Map.Entry<String, LibraryShard> e = it.next();
+            if (current != null && e.getKey().equals(current.shard())) continue;
+            // Un shard avec des écritures en attente ou en cours reste chargé jusqu'au prochain flush
+            if (e.getValue().isDirty()) continue;
+            it.remove();
+        }
+    }
+
+    /** (Re)programme l'écriture différée. Doit être appelé sous lock. */
+    private void scheduleFlush() {
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+        }
+        pendingWrite = scheduler.schedule(this::flushToDiskSafely, DEBOUNCE_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Écrit le manifeste (si modifié) et le journal des shards modifiés.
+     * @return false si une écriture a échoué (elle sera retentée au prochain flush)
+     */
+    private boolean flushToDiskSafely() {
+        boolean ok = true;
+        Manifest toWrite = null;
+        List<String> toDelete = List.of();
+        List<LibraryShard> dirty;
         synchronized (lock) {
-            this.cached = d;
-            if (pendingWrite != null) {
-                pendingWrite.cancel(false);
+            if (manifestDirty) {
+                // Version immuable: sérialisée hors verrou. Elle ne référence plus les shards supprimés
+                toWrite = manifest;
+                manifestDirty = false;
+                toDelete = new ArrayList<>(deletedShards);
+                deletedShards.clear();
+            }
+            dirty = new ArrayList<>();
+            for (LibraryShard s : loaded.values()) {
+                if (s.isDirty()) dirty.add(s);
+            }
+        }
+        if (toWrite != null && !writeManifest(toWrite)) {
+            synchronized (lock) {
+                manifestDirty = true;
+                deletedShards.addAll(toDelete);
             }
-            pendingWrite = scheduler.schedule(this::flushToDiskSafely, DEBOUNCE_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+            ok = false;
+        } else {
+            // Le manifeste écrit ne pointe plus vers ces fichiers: leur effacement est sans risque
+            for (String shardId : toDelete) LibraryShard.deleteFiles(shardId, shardDir);
+        }
+        for (LibraryShard s : dirty) {
+            ok &= s.flush();
         }
+        synchronized (lock) {
+            evictIfNeeded();
+        }
+        return ok;
     }
 
-    /** Force l'écriture immédiate sur disque (utilisé rarement). */
-    private void flushToDiskSafely() {
-        Data snapshot;
+    /**
+     * Écrit immédiatement les modifications en attente, sur le thread d'écriture
+     * (les écritures restent ainsi sérialisées avec l'écriture différée).
+     * @return le résultat de l'écriture: false si une écriture a échoué
+     */
+    public java.util.concurrent.Future<Boolean> flushAsync() {
         synchronized (lock) {
-            snapshot = this.cached;
-        }
-        if (snapshot == null) return;
-        // Ecriture atomique via fichier temporaire
-        File tmp = new File(dataFile.getParentFile() != null ? dataFile.getParentFile() : new File("."), dataFile.getName() + ".tmp");
-        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp, false), StandardCharsets.UTF_8))) {
-            gson.toJson(snapshot, bw);
-            bw.flush();
-            // sur certains OS, renameTo est atomique quand même volume
-            if (!tmp.renameTo(dataFile)) {
-                // fallback: copie par flux
-                try (InputStream in = new FileInputStream(tmp); OutputStream out = new FileOutputStream(dataFile, false)) {
-                    in.transferTo(out);
-                    out.flush();
-                }
-                // supprimer tmp
-                //noinspection ResultOfMethodCallIgnored
-                tmp.delete();
+            if (pendingWrite != null) {
+                pendingWrite.cancel(false);
+                pendingWrite = null;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        return scheduler.submit(this::flushToDiskSafely);
+    }
+
+    /** Marque le manifeste comme modifié et programme son écriture. Sous lock. */
+    private void manifestChanged() {
+        manifestDirty = true;
+        scheduleFlush();
     }
 
     // API publique
     /** @return la liste des bibliothèques disponibles */
     public List<String> listLibraries() {
-        Data d = readData();
-        return new ArrayList<>(d.libraries.keySet());
+        Manifest m = manifest;
+        List<String> names = new ArrayList<>(m.libraries().size());
+        for (ManifestEntry e : m.libraries()) names.add(e.name());
+        return names;
     }
 
     /** @return le nom de la bibliothèque courante */
     public String getCurrentLibrary() {
-        return readData().current;
+        return manifest.current();
     }
 
     /**
@@ -204,10 +493,11 @@ public class LibraryRepository {
      * @param name nom de la bibliothèque
      */
     public void setCurrentLibrary(String name) {
-        Data d = readData();
-        if (!d.libraries.containsKey(name)) return;
-        d.current = name;
-        writeData(d);
+        synchronized (lock) {
+            if (manifest.entry(name) == null || Objects.equals(manifest.current(), name)) return;
+            manifest = manifest.withCurrent(name);
+            manifestChanged();
+        }
     }
 
     /**
@@ -216,22 +506,224 @@ public class LibraryRepository {
      * @return une copie de la liste des livres
      */
     public List<Book> load(String name) {
-        Data d = readData();
-        return new ArrayList<>(d.libraries.getOrDefault(name, new ArrayList<>()));
+        List<BookRecord> records = snapshot(name);
+        List<Book> books = new ArrayList<>(records.size());
+        for (BookRecord r : records) books.add(r.toBook());
+        return books;
     }
 
     /**
-     * Sauvegarde la liste de livres d'une bibliothèque donnée.
+     * Instantané immuable d'une bibliothèque, obtenu en O(1): il ne change plus, même si
+     * la bibliothèque est modifiée ensuite, et peut être lu depuis n'importe quel thread.
+     * @param name nom de la bibliothèque
+     * @return les enregistrements de la bibliothèque (vide si elle n'existe pas)
+     */
+    public List<BookRecord> snapshot(String name) {
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            if (e == null) return PersistentVector.empty();
+            return shard(e).snapshot();
+        }
+    }
+
+    /**
+     * Parcourt les livres d'une bibliothèque sans la charger: depuis son contenu si elle
+     * est déjà chargée, sinon en flux depuis ses fichiers ({@link LibraryShard#scan}), sans
+     * garder plus d'un livre à la fois en mémoire. Dans ce second cas, un livre modifié peut
+     * être vu dans plusieurs versions, et un livre supprimé depuis la dernière compaction
+     * être vu quand même.
+     * @param name    nom de la bibliothèque
+     * @param visitor traitement de chaque livre, appelé hors du verrou du dépôt
+     */
+    public void scan(String name, java.util.function.Consumer<Book> visitor) {
+        List<BookRecord> records;
+        String shardId;
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            if (e == null) return;
+            LibraryShard s = loaded.get(e.shard());
+            records = s != null ? s.snapshot() : null;
+            shardId = e.shard();
+        }
+        if (records != null) {
+            for (BookRecord r : records) visitor.accept(r.toBook());
+        } else {
+            LibraryShard.scan(shardId, shardDir, visitor);
+        }
+    }
+
+    /**
+     * Ouvre une bibliothèque en lecture seule via son index projeté en mémoire.
+     * <p>
+     * Si l'index sur disque est à jour, ni l'instantané JSON ni les livres ne sont lus:
+     * le coût est indépendant de la taille de la bibliothèque. Sinon l'index est
+     * (re)construit une fois à partir du shard.
+     * @param name  nom de la bibliothèque
+     * @param build si false, retourne null plutôt que de charger la bibliothèque pour construire l'index
+     * @return la vue en lecture seule, ou null si la bibliothèque n'existe pas ou si l'index est inutilisable
+     */
+    public MappedBookList openReadOnly(String name, boolean build) {
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            if (e == null) return null;
+            LibraryShard s = loaded.get(e.shard());
+            if (s == null) {
+                MappedBookList mapped = LibraryShard.openMappedIfCurrent(e.shard(), shardDir);
+                if (mapped != null || !build) return mapped;
+                s = shard(e);
+            }
+            try {
+                MappedBookList mapped = s.openMapped(build);
+                if (s.isDirty()) scheduleFlush();
+                return mapped;
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Identifiant stable d'une bibliothèque: inchangé par un renommage, jamais réattribué.
+     * @param name nom de la bibliothèque
+     * @return l'identifiant, ou null si la bibliothèque n'existe pas
+     */
+    public String libraryId(String name) {
+        ManifestEntry e = manifest.entry(name);
+        return e != null ? e.shard() : null;
+    }
+
+    /**
+     * @param libraryId identifiant stable d'une bibliothèque (voir {@link #libraryId(String)})
+     * @return son nom actuel, ou null si elle n'existe plus
+     */
+    public String libraryName(String libraryId) {
+        ManifestEntry e = libraryId == null ? null : manifest.byShard().get(libraryId);
+        return e != null ? e.name() : null;
+    }
+
+    /**
+     * Sauvegarde la liste de livres d'une bibliothèque donnée. La différence avec le
+     * contenu actuel est calculée par identifiant; préférer {@link #apply(String, List)}
+     * lorsque les modifications sont connues.
      * @param name nom de la bibliothèque
      * @param books livres à sauvegarder
      */
     public void save(String name, List<Book> books) {
-        Data d = readData();
-        if (!d.libraries.containsKey(name)) {
-            d.libraries.put(name, new ArrayList<>());
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            if (e == null) {
+                manifest = manifest.plus(name);
+                e = manifest.entry(name);
+                manifestDirty = true;
+            }
+            changed(e, shard(e).replaceBooks(books));
+            if (manifestDirty) scheduleFlush();
+        }
+    }
+
+    /**
+     * Applique des modifications à une bibliothèque: seules les différences sont
+     * journalisées et transmises aux écouteurs.
+     * @param name    nom de la bibliothèque
+     * @param changes modifications, appliquées dans l'ordre
+     * @return l'effet de chaque modification retenue (vide si la bibliothèque n'existe pas)
+     */
+    public List<BookDelta> apply(String name, List<Change> changes) {
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            if (e == null) return List.of();
+            List<BookDelta> deltas = shard(e).apply(changes);
+            changed(e, deltas);
+            return deltas;
+        }
+    }
+
+    /**
+     * Ajoute un livre.
+     * @param name nom de la bibliothèque
+     * @param book livre à ajouter
+     * @return l'identifiant du livre, ou 0 si le livre n'a pas été ajouté: bibliothèque
+     *         inexistante, livre sans identifiant ou identifiant déjà présent
+     */
+    public long addBook(String name, Book book) {
+        List<BookDelta> deltas = apply(name, List.of(new Change.Add(book)));
+        return deltas.isEmpty() ? 0 : deltas.get(0).id();
+    }
+
+    /**
+     * Modifie un livre.
+     * @param name  nom de la bibliothèque
+     * @param id    identifiant du livre
+     * @param patch modifications, appliquées à une copie du livre
+     * @return le livre à jour (nouvelle instance), ou null s'il n'existe pas
+     */
+    public Book updateBook(String name, long id, java.util.function.Consumer<Book> patch) {
+        synchronized (lock) {
+            List<BookDelta> deltas = apply(name, List.of(new Change.Update(id, patch)));
+            if (!deltas.isEmpty()) return deltas.get(0).after().toBook();
+            return findBook(name, id);
+        }
+    }
+
+    /**
+     * Recherche un livre par identifiant (index par identifiant, sans parcours).
+     * @param name nom de la bibliothèque
+     * @param id   identifiant du livre
+     * @return le livre (nouvelle instance), ou null s'il n'existe pas
+     */
+    public Book findBook(String name, long id) {
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            BookRecord r = e != null ? shard(e).find(id) : null;
+            return r != null ? r.toBook() : null;
+        }
+    }
+
+    /**
+     * Supprime un livre.
+     * @param name nom de la bibliothèque
+     * @param id   identifiant du livre
+     * @return true si le livre a été supprimé
+     */
+    public boolean removeBook(String name, long id) {
+        return !apply(name, List.of(new Change.Remove(id))).isEmpty();
+    }
+
+    /**
+     * Écouteur des modifications de livres, appelé sur le thread qui les applique et
+     * sous le verrou du dépôt (les notifications sont donc ordonnées); il doit être rapide.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        /**
+         * @param libraryId identifiant de la bibliothèque modifiée (voir {@link #libraryId(String)})
+         * @param deltas    effet de chaque modification, dans l'ordre
+         */
+        void onChange(String libraryId, List<BookDelta> deltas);
+    }
+
+    /** @param listener écouteur à ajouter */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /** @param listener écouteur à retirer */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Programme l'écriture et notifie les écouteurs. Sous lock. */
+    private void changed(ManifestEntry e, List<BookDelta> deltas) {
+        if (deltas.isEmpty()) return;
+        scheduleFlush();
+        for (ChangeListener l : listeners) {
+            try {
+                l.onChange(e.shard(), deltas);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
         }
-        d.libraries.put(name, new ArrayList<>(books));
-        writeData(d);
     }
 
     // Méthodes rétro‑compatibles (opèrent sur la bibliothèque courante)
@@ -255,16 +747,17 @@ public class LibraryRepository {
      */
     public boolean createLibrary(String name) {
         if (name == null || name.isBlank()) return false;
-        Data d = readData();
-        if (d.libraries.containsKey(name)) return false;
-        d.libraries.put(name, new ArrayList<>());
-        d.current = name;
-        writeData(d);
-        return true;
+        synchronized (lock) {
+            if (manifest.entry(name) != null) return false;
+            // Pas de fichier à créer: un shard absent est une bibliothèque vide
+            manifest = manifest.plus(name).withCurrent(name);
+            manifestChanged();
+            return true;
+        }
     }
 
     /**
-     * Renomme une bibliothèque existante.
+     * Renomme une bibliothèque existante (seul le manifeste est réécrit).
      * @param oldName ancien nom
      * @param newName nouveau nom
      * @return true si renommée, false sinon
@@ -272,31 +765,41 @@ public class LibraryRepository {
     public boolean renameLibrary(String oldName, String newName) {
         if (oldName == null || newName == null) return false;
         if (newName.isBlank()) return false;
-        Data d = readData();
-        if (!d.libraries.containsKey(oldName) || d.libraries.containsKey(newName)) return false;
-        List<Book> data = d.libraries.remove(oldName);
-        d.libraries.put(newName, data);
-        if (Objects.equals(d.current, oldName)) d.current = newName;
-        writeData(d);
-        return true;
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(oldName);
+            if (e == null || manifest.entry(newName) != null) return false;
+            Manifest m = manifest.renamed(e, newName);
+            if (Objects.equals(m.current(), oldName)) m = m.withCurrent(newName);
+            manifest = m;
+            manifestChanged();
+            return true;
+        }
     }
 
     /**
      * Supprime une bibliothèque (au moins une bibliothèque doit rester).
+     * Seuls le manifeste et le shard concerné sont touchés.
      * @param name nom de la bibliothèque à supprimer
      * @return true si supprimée, false sinon
      */
     public boolean deleteLibrary(String name) {
-        Data d = readData();
-        if (!d.libraries.containsKey(name)) return false;
-        if (d.libraries.size() <= 1) return false; // conserver au moins une
-        d.libraries.remove(name);
-        if (Objects.equals(d.current, name)) {
-            // basculer sur la première restante
-            String next = d.libraries.keySet().iterator().next();
-            d.current = next;
-        }
-        writeData(d);
-        return true;
-    }
-}
\ No newline at end of file
+        synchronized (lock) {
+            ManifestEntry e = manifest.entry(name);
+            if (e == null) return false;
+            if (manifest.libraries().size() <= 1) return false; // conserver au moins une
+            Manifest m = manifest.minus(e);
+            if (Objects.equals(m.current(), name)) {
+                // basculer sur la première restante
+                m = m.withCurrent(m.libraries().get(0).name());
+            }
+            manifest = m;
+            LibraryShard removed = loaded.remove(e.shard());
+            if (removed != null) removed.discardPending();
+            // Fichiers effacés une fois écrit le manifeste qui ne les référence plus: un arrêt
+            // brutal entre les deux laisse au pire des fichiers orphelins, jamais une bibliothèque vide
+            deletedShards.add(e.shard());
+            manifestChanged();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package fr.cactusstudio.bibliofx;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fr.cactusstudio.bibliofx.BookLookupService.Suggestion;
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookDelta;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+import fr.cactusstudio.bibliofx.search.TextFolding;
+import fr.cactusstudio.bibliofx.search.TrigramIndex;
+import fr.cactusstudio.bibliofx.storage.BookColumns;
+import fr.cactusstudio.bibliofx.storage.BookJsonCodec;
+import fr.cactusstudio.bibliofx.storage.MappedBookList;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Catalogue local des livres déjà connus, consulté avant l'API Google Books pour les
+ * suggestions du formulaire, sans accès réseau.
+ * <p>
+ * Il rassemble les livres de toutes les bibliothèques du {@link LibraryRepository}
+ * (une fois par couple titre/auteur) et ceux des fichiers de métadonnées déposés dans
+ * {@code ~/.bibliofx/catalog/} ({@code *.json} ou {@code *.jsonl}: objets au format des
+ * livres de l'application, en tableau ou les uns à la suite des autres). Les titres sont
+ * indexés par trigrammes ({@link TrigramIndex}): une saisie approximative ou incomplète
+ * retrouve le livre. Les livres ajoutés ou modifiés ensuite dans le dépôt y entrent
+ * aussitôt; un livre supprimé reste suggéré.
+ * <p>
+ * Seuls le titre, l'auteur et l'année sont gardés en mémoire, avec l'emplacement du livre
+ * ({@link Entry}); le genre, le résumé et la couverture sont relus à la demande, lorsqu'une
+ * suggestion est choisie ({@link #details(Entry)}).
+ * <p>
+ * Le catalogue est construit en arrière-plan au démarrage ({@link #loadAsync()}), les
+ * grandes bibliothèques en lecture seule étant lues depuis leur index projeté et les autres
+ * en flux depuis leurs fichiers ({@link LibraryRepository#scan}), sans être chargées. Il est
+ * limité à {@code -Dbibliofx.catalogMax} livres (250 000 par défaut). Méthodes utilisables
+ * depuis n'importe quel thread.
+ */
+public class LocalCatalog implements LibraryRepository.ChangeListener {
+    private static final int MAX_ENTRIES = Math.max(0, Integer.getInteger("bibliofx.catalogMax", 250_000));
+
+    /**
+     * Livre du catalogue: de quoi le suggérer, et où relire le reste.
+     * @param title   titre
+     * @param author  auteur (null si inconnu)
+     * @param year    année de publication (0 si inconnue)
+     * @param library bibliothèque du livre (voir {@link LibraryRepository#libraryId(String)}), ou null
+     * @param dump    fichier de métadonnées du livre, ou null
+     * @param ref     identifiant du livre dans sa bibliothèque, ou sa position dans le fichier
+     */
+    public record Entry(String title, String author, int year, String library, File dump, long ref) {
+        @Override
+        public String toString() {
+            return title + (author != null ? " — " + author : "");
+        }
+    }
+
+    private final LibraryRepository repository;
+    private final File dumpDir;
+
+    // Etat protégé par le verrou de l'instance
+    private final TrigramIndex index = new TrigramIndex();
+    /** Numéro de document → livre. */
+    private final List<Entry> entries = new ArrayList<>();
+    /** Titre et auteur normalisés → numéro de document. */
+    private final Map<String, Integer> byKey = new HashMap<>();
+
+    private LocalCatalog(LibraryRepository repository, File dumpDir) {
+        this.repository = repository;
+        this.dumpDir = dumpDir;
+    }
+
+    /**
+     * Crée le catalogue (vide, voir {@link #loadAsync()}) et l'abonne aux modifications du dépôt.
+     * @param repository dépôt dont les bibliothèques sont cataloguées
+     * @return le catalogue
+     */
+    public static LocalCatalog create(LibraryRepository repository) {
+        return create(repository, new File(System.getProperty("user.home"), ".bibliofx/catalog"));
+    }
+
+    /**
+     * Crée le catalogue (vide, voir {@link #loadAsync()}) et l'abonne aux modifications du dépôt.
+     * @param repository dépôt dont les bibliothèques sont cataloguées
+     * @param dumpDir    répertoire des fichiers de métadonnées à importer
+     * @return le catalogue
+     */
+    public static LocalCatalog create(LibraryRepository repository, File dumpDir) {
+        LocalCatalog catalog = new LocalCatalog(repository, dumpDir);
+        // Abonnement une fois l'objet construit: l'écouteur peut être appelé depuis un autre thread
+        repository.addChangeListener(catalog);
+        return catalog;
+    }
+
+    /** Construit le catalogue sur un thread de fond. */
+    public void loadAsync() {
+        Thread t = new Thread(this::load, "bibliofx-catalog");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /** Construit le catalogue: bibliothèques du dépôt, puis fichiers de métadonnées. */
+    void load() {
+        for (String name : repository.listLibraries()) {
+            String library = repository.libraryId(name);
+            MappedBookList mapped = repository.openReadOnly(name, false);
+            if (mapped != null) {
+                for (int i = 0; i < mapped.size() && !isFull(); i++) {
+                    add(mapped.getString(i, BookColumns.Field.TITLE), mapped.getString(i, BookColumns.Field.AUTHOR),
+                            mapped.getYear(i), library, null, mapped.getId(i));
+                }
+            } else if (!isFull()) {
+                // Sans charger la bibliothèque: un livre à la fois depuis ses fichiers
+                repository.scan(name, b -> add(b.getTitle(), b.getAuthor(), b.getYear(), library, null, b.getId()));
+            }
+        }
+        File[] dumps = dumpDir.listFiles((d, n) -> n.endsWith(".json") || n.endsWith(".jsonl"));
+        if (dumps == null) return;
+        Arrays.sort(dumps);
+        for (File f : dumps) {
+            if (isFull()) break;
+            importDump(f);
+        }
+    }
+
+    /**
+     * Importe un fichier de métadonnées: un tableau JSON de livres ou des objets livres
+     * les uns à la suite des autres (JSON Lines). Une erreur arrête la lecture du fichier
+     * sans perdre les livres déjà lus.
+     * @param file fichier à importer
+     */
+    public void importDump(File file) {
+        long[] position = {0};
+        readDump(file, b -> {
+            add(b.getTitle(), b.getAuthor(), b.getYear(), null, file, position[0]++);
+            return !isFull();
+        });
+    }
+
+    /**
+     * Lit les livres d'un fichier de métadonnées, dans l'ordre.
+     * @param visitor traitement de chaque livre; la lecture s'arrête s'il retourne false
+     */
+    private static void readDump(File file, Predicate<Book> visitor) {
+        try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            in.setStrictness(Strictness.LENIENT);
+            while (in.peek() != JsonToken.END_DOCUMENT) {
+                if (in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (!visitor.test(BookJsonCodec.readBook(in))) return;
+                    }
+                    in.endArray();
+                } else if (!visitor.test(BookJsonCodec.readBook(in))) {
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Catalogue: lecture interrompue de " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param query texte saisi (typiquement un titre, éventuellement incomplet ou approximatif)
+     * @param limit nombre maximal de suggestions
+     * @return les livres du catalogue les plus proches, du plus pertinent au moins pertinent
+     */
+    public synchronized List<Entry> suggest(String query, int limit) {
+        List<Entry> out = new ArrayList<>();
+        for (TrigramIndex.Hit h : index.search(query, limit)) out.add(entries.get(h.doc()));
+        return out;
+    }
+
+    /**
+     * Relit sur un thread de fond le livre d'une suggestion choisie: dans sa bibliothèque
+     * (index projeté s'il est à jour, bibliothèque chargée sinon) ou dans son fichier de
+     * métadonnées. Un livre introuvable (supprimé depuis) donne une suggestion réduite au
+     * titre, à l'auteur et à l'année.
+     * @param entry livre retourné par {@link #suggest(String, int)}
+     * @return la suggestion complète
+     */
+    public CompletableFuture<Suggestion> details(Entry entry) {
+        return CompletableFuture.supplyAsync(() -> {
+            Book b = entry.library() != null ? findInLibrary(entry.library(), entry.ref())
+                    : entry.dump() != null ? findInDump(entry.dump(), entry.ref()) : null;
+            Integer year = entry.year() > 0 ? entry.year() : null;
+            if (b == null) return new Suggestion(entry.title(), entry.author(), year, null, null, null);
+            return new Suggestion(entry.title(), entry.author(), year, blankToNull(b.getGenre()),
+                    blankToNull(b.getSummary()), blankToNull(b.getCoverUrl()));
+        });
+    }
+
+    private Book findInLibrary(String library, long id) {
+        String name = repository.libraryName(library);
+        if (name == null) return null;
+        MappedBookList mapped = repository.openReadOnly(name, false);
+        if (mapped == null) return repository.findBook(name, id);
+        for (int i = 0; i < mapped.size(); i++) {
+            if (mapped.getId(i) == id) return mapped.get(i);
+        }
+        return null;
+    }
+
+    private static Book findInDump(File dump, long position) {
+        Book[] found = new Book[1];
+        long[] at = {0};
+        readDump(dump, b -> {
+            if (at[0]++ < position) return true;
+            found[0] = b;
+            return false;
+        });
+        return found[0];
+    }
+
+    /** @return le nombre de livres catalogués */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void onChange(String libraryId, List<BookDelta> deltas) {
+        for (BookDelta d : deltas) {
+            BookRecord r = d.after();
+            if (r != null) add(r.title(), r.author(), r.year(), libraryId, null, r.id());
+        }
+    }
+
+    private synchronized boolean isFull() {
+        return entries.size() >= MAX_ENTRIES;
+    }
+
+    private synchronized void add(String title, String author, int year, String library, File dump, long ref) {
+        if (title == null || title.isBlank()) return;
+        String key = String.join(" ", TextFolding.tokens(title)) + '\0' + String.join(" ", TextFolding.tokens(author));
+        Entry e = new Entry(title, blankToNull(author), Math.max(year, 0), library, dump, ref);
+        Integer doc = byKey.get(key);
+        if (doc != null) {
+            // Livre déjà connu: la version la plus récente l'emporte
+            entries.set(doc, e);
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES) return;
+        byKey.put(key, index.add(title));
+        entries.add(e);
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+}
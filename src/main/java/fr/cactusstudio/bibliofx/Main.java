@@ -12,9 +12,20 @@ import java.util.Objects;
  * Application JavaFX principale de BiblioFX.
  * <p>
  * Cette classe charge l'interface initiale (hello-view.fxml), attache la feuille de style
- * globale et affiche la fenêtre principale.
+ * globale et affiche la fenêtre principale. Les données sont préparées en parallèle sur un
+ * thread de fond ({@link Startup}).
  */
 public class Main extends Application {
+    private Controller controller;
+
+    /**
+     * Commence la préparation des données, si le lanceur ne l'a pas déjà fait.
+     */
+    @Override
+    public void init() {
+        Startup.begin();
+    }
+
     /**
      * Point d'entrée JavaFX. Configure et affiche la scène principale.
      *
@@ -25,11 +36,22 @@ public class Main extends Application {
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(Main.class.getResource("hello-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load());
+        controller = fxmlLoader.getController();
         // Applique la feuille de style globale
         scene.getStylesheets().add(Objects.requireNonNull(Main.class.getResource("styles.css")).toExternalForm());
+        Startup.mark("interface construite");
         stage.setMaximized(true);
         stage.setTitle("BiblioFX - Gestion de Bibliothèque");
         stage.setScene(scene);
+        Startup.markNextFrame(scene, "première image");
         stage.show();
     }
+
+    /**
+     * Appelé à la fermeture: attend l'écriture des sauvegardes encore en attente.
+     */
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+    }
 }
@@ -0,0 +1,492 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.SortKeys;
+import fr.cactusstudio.bibliofx.search.SearchIndex;
+import fr.cactusstudio.bibliofx.search.TextFolding;
+import fr.cactusstudio.bibliofx.storage.BookColumns;
+import fr.cactusstudio.bibliofx.storage.BookColumns.Field;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Vue paginée d'une très grande bibliothèque, lue par colonnes ({@link BookColumns}:
+ * index projeté en mémoire ou sa copie en tableaux), pour la table.
+ * <p>
+ * La table reçoit une liste d'indirection: l'ordre affiché est un tableau de numéros de
+ * lignes de l'index, et seuls les livres des pages consultées sont décodés (pages de
+ * {@value #PAGE_SIZE} lignes, les {@value #MAX_PAGES} plus récentes conservées). La
+ * mémoire occupée ne dépend donc de la taille de la bibliothèque que par ce tableau
+ * (4 octets par livre retenu).
+ * <p>
+ * Filtre et tri sont évalués hors du thread JavaFX, directement sur les champs de
+ * l'index: les valeurs dédupliquées (auteur, genre, état de lecture) ne sont décodées et
+ * comparées qu'une fois chacune. La recherche porte sur le titre, l'auteur et le genre
+ * (le résumé n'est lu que pour les livres affichés); le tri suit la première colonne de
+ * tri. Un nouveau filtre ou tri abandonne l'évaluation en cours; le résultat remplace la
+ * liste affichée sur le thread JavaFX, avec le nombre de livres de chaque option des
+ * filtres.
+ */
+public class PagedBookView {
+    /** Nombre de lignes décodées ensemble. */
+    private static final int PAGE_SIZE = 64;
+    /** Nombre de pages conservées (fenêtre visible et marge de défilement). */
+    private static final int MAX_PAGES = 32;
+    /** Délai d'inactivité avant d'évaluer un filtre saisi. */
+    private static final long DEBOUNCE_MS = 150;
+    /** Lignes évaluées par tâche (et entre deux vérifications d'abandon). */
+    private static final int CHUNK_SIZE = 16_384;
+    /** Nombre maximal de mots de recherche pris en compte. */
+    private static final int MAX_WORDS = 64;
+
+    /** Colonnes de tri, associées aux comparateurs de la table ({@link SortKeys}). */
+    public enum SortColumn {
+        TITLE(SortKeys.BY_TITLE),
+        AUTHOR(SortKeys.BY_AUTHOR),
+        GENRE(SortKeys.BY_GENRE),
+        YEAR(SortKeys.BY_YEAR),
+        AVAILABLE(SortKeys.BY_AVAILABLE),
+        READING_STATUS(SortKeys.BY_READING_STATUS),
+        ADDED_AT(SortKeys.BY_ADDED_AT);
+
+        private final Comparator<Book> comparator;
+
+        SortColumn(Comparator<Book> comparator) {
+            this.comparator = comparator;
+        }
+
+        /**
+         * @param comparator comparateur d'une colonne de la table
+         * @return la colonne de tri correspondante, ou null
+         */
+        public static SortColumn of(Comparator<Book> comparator) {
+            for (SortColumn c : values()) {
+                if (c.comparator == comparator) return c;
+            }
+            return null;
+        }
+    }
+
+    private final BookColumns books;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "bibliofx-paged-view");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ReadOnlyObjectWrapper<ObservableList<Book>> items = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlyObjectWrapper<SearchIndex.Counts> counts = new ReadOnlyObjectWrapper<>();
+    private final ObservableList<String> genres = FXCollections.observableArrayList();
+
+    // Etat modifié sur le thread JavaFX uniquement
+    private SearchIndex.Query query = new SearchIndex.Query(null, null, false, null);
+    private SortColumn sortColumn;
+    private boolean descending;
+    private ScheduledFuture<?> pending;
+    /** Évaluation courante; les évaluations plus anciennes s'arrêtent d'elles-mêmes. */
+    private volatile long generation;
+    // Dernier filtre évalué (thread d'arrière-plan): un changement de tri seul ne le refait pas
+    private SearchIndex.Query selectedQuery;
+    private Selection selection;
+
+    /**
+     * @param books bibliothèque lue par colonnes
+     */
+    public PagedBookView(BookColumns books) {
+        this.books = books;
+        items.set(window(null, books.size()));
+        refresh(false);
+    }
+
+    /** @return la liste à afficher, remplacée après chaque filtre ou tri */
+    public ReadOnlyObjectProperty<ObservableList<Book>> itemsProperty() {
+        return items.getReadOnlyProperty();
+    }
+
+    /** @return le nombre de livres de chaque option des filtres (null avant la première évaluation) */
+    public ReadOnlyObjectProperty<SearchIndex.Counts> countsProperty() {
+        return counts.getReadOnlyProperty();
+    }
+
+    /** @return les genres présents, triés (remplis après la première évaluation) */
+    public ObservableList<String> getGenres() {
+        return genres;
+    }
+
+    /**
+     * Change le filtre.
+     * @param q        filtre
+     * @param debounce true pour attendre la fin de la saisie (champ de recherche)
+     */
+    public void setQuery(SearchIndex.Query q, boolean debounce) {
+        query = q;
+        refresh(debounce);
+    }
+
+    /**
+     * Change l'ordre d'affichage.
+     * @param column     colonne de tri (null: ordre de l'index)
+     * @param descending true pour l'ordre décroissant
+     */
+    public void setSort(SortColumn column, boolean descending) {
+        if (column == sortColumn && descending == this.descending) return;
+        sortColumn = column;
+        this.descending = descending;
+        refresh(false);
+    }
+
+    /** Arrête l'évaluation en cours et le thread d'arrière-plan. */
+    public void close() {
+        generation++;
+        worker.shutdownNow();
+    }
+
+    /** Programme l'évaluation du filtre et du tri courants (thread JavaFX). */
+    private void refresh(boolean debounce) {
+        long gen = ++generation;
+        if (pending != null) pending.cancel(false);
+        SearchIndex.Query q = query;
+        SortColumn column = sortColumn;
+        boolean desc = descending;
+        pending = worker.schedule(() -> {
+            try {
+                Selection s = q.equals(selectedQuery) ? selection : select(q, gen);
+                if (s == null) return;
+                selectedQuery = q;
+                selection = s;
+                int[] sorted = sort(s.rows, s.size, column, desc, gen);
+                if (sorted == null) return;
+                // Toutes les lignes dans l'ordre de l'index: pas besoin d'indirection
+                int[] order = sorted == s.rows && s.size == books.size() ? null : sorted;
+                Platform.runLater(() -> {
+                    if (generation != gen) return;
+                    items.set(window(order, s.size));
+                    counts.set(s.counts);
+                    if (genres.isEmpty()) genres.setAll(s.genres);
+                });
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, debounce ? DEBOUNCE_MS : 0, TimeUnit.MILLISECONDS);
+    }
+
+    private ObservableList<Book> window(int[] order, int size) {
+        return FXCollections.unmodifiableObservableList(FXCollections.observableList(new Window(order, size)));
+    }
+
+    /**
+     * Livres affichés, dans l'ordre donné; décodés par page à la première lecture
+     * (thread JavaFX).
+     */
+    private final class Window extends AbstractList<Book> implements RandomAccess {
+        /** Numéro de ligne de chaque position (null: ordre de l'index). */
+        private final int[] order;
+        private final int size;
+        private final Map<Integer, Book[]> pages = new LinkedHashMap<>(MAX_PAGES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Book[]> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+
+        Window(int[] order, int size) {
+            this.order = order;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Book get(int index) {
+            Objects.checkIndex(index, size);
+            int p = index / PAGE_SIZE;
+            Book[] page = pages.get(p);
+            if (page == null) {
+                page = new Book[Math.min(PAGE_SIZE, size - p * PAGE_SIZE)];
+                for (int i = 0; i < page.length; i++) {
+                    int pos = p * PAGE_SIZE + i;
+                    page[i] = books.get(order != null ? order[pos] : pos);
+                }
+                pages.put(p, page);
+            }
+            return page[index % PAGE_SIZE];
+        }
+    }
+
+    // --- Filtre ---
+
+    /** Lignes retenues (ordre de l'index) et nombres par option. */
+    private record Selection(int[] rows, int size, SearchIndex.Counts counts, List<String> genres) {
+    }
+
+    /** Valeur distincte d'un champ dédupliqué, décodée et évaluée une fois. */
+    private static final class Value {
+        final String text;
+        /** Valeur acceptée par le critère du filtre. */
+        final boolean accepted;
+        /** Mots de la recherche présents dans la valeur. */
+        final long words;
+
+        Value(String text, boolean accepted, long words) {
+            this.text = text;
+            this.accepted = accepted;
+            this.words = words;
+        }
+    }
+
+    /** Résultat d'une tranche de lignes. */
+    private static final class Part {
+        int[] rows = new int[64];
+        int size;
+        final Map<Value, int[]> genreCounts = new HashMap<>();
+        final Map<Value, int[]> statusCounts = new HashMap<>();
+        int available;
+    }
+
+    /** @return les lignes retenues par le filtre, ou null si l'évaluation a été abandonnée */
+    private Selection select(SearchIndex.Query q, long gen) {
+        String[] words = TextFolding.tokens(q.text()).stream().distinct().limit(MAX_WORDS).toArray(String[]::new);
+        long allWords = words.length == MAX_WORDS ? -1L : (1L << words.length) - 1;
+        Map<Integer, Value> authors = new ConcurrentHashMap<>();
+        Map<Integer, Value> genreValues = new ConcurrentHashMap<>();
+        Map<Integer, Value> statuses = new ConcurrentHashMap<>();
+        int n = books.size();
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Part[] parts = new Part[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            if (generation != gen) return;
+            Part part = new Part();
+            for (int i = c * CHUNK_SIZE, end = Math.min(n, i + CHUNK_SIZE); i < end; i++) {
+                int row = i;
+                Value genre = genreValues.computeIfAbsent(books.ref(row, Field.GENRE), ref -> {
+                    String g = books.getString(row, Field.GENRE);
+                    boolean ok = q.genres() == null || q.genres().isEmpty() || (g != null && q.genres().contains(g));
+                    return new Value(g == null || g.isBlank() ? null : g, ok, mask(g, words));
+                });
+                Value status = statuses.computeIfAbsent(books.ref(row, Field.READING_STATUS), ref -> {
+                    String rs = books.getString(row, Field.READING_STATUS);
+                    if (rs == null || rs.isBlank()) rs = "Non lu"; // comme Book.getReadingStatus()
+                    return new Value(rs.toLowerCase(Locale.ROOT), q.readingStatus() == null || q.readingStatus().equalsIgnoreCase(rs), 0);
+                });
+                boolean text = true;
+                if (words.length > 0) {
+                    long found = genre.words;
+                    if (found != allWords) {
+                        found |= authors.computeIfAbsent(books.ref(row, Field.AUTHOR),
+                                ref -> new Value(null, true, mask(books.getString(row, Field.AUTHOR), words))).words;
+                    }
+                    if (found != allWords) found |= mask(books.getString(row, Field.TITLE), words);
+                    text = found == allWords;
+                }
+                boolean isAvailable = books.isAvailable(row);
+                boolean available = !q.onlyAvailable() || isAvailable;
+                if (text && genre.accepted && available && status.accepted) {
+                    if (part.size == part.rows.length) part.rows = Arrays.copyOf(part.rows, part.size * 2);
+                    part.rows[part.size++] = row;
+                }
+                // Nombre de chaque option: les autres critères du filtre s'appliquent, pas le sien
+                if (text && available && status.accepted && genre.text != null) {
+                    part.genreCounts.computeIfAbsent(genre, v -> new int[1])[0]++;
+                }
+                if (text && genre.accepted && available) {
+                    part.statusCounts.computeIfAbsent(status, v -> new int[1])[0]++;
+                }
+                if (text && genre.accepted && status.accepted && isAvailable) part.available++;
+            }
+            parts[c] = part;
+        });
+        if (generation != gen) return null;
+
+        int size = 0;
+        for (Part p : parts) size += p.size;
+        int[] rows = new int[size];
+        int at = 0;
+        Map<String, Integer> genreCounts = new HashMap<>();
+        Map<String, Integer> statusCounts = new HashMap<>();
+        int available = 0;
+        for (Part p : parts) {
+            System.arraycopy(p.rows, 0, rows, at, p.size);
+            at += p.size;
+            p.genreCounts.forEach((v, c) -> genreCounts.merge(v.text, c[0], Integer::sum));
+            p.statusCounts.forEach((v, c) -> statusCounts.merge(v.text, c[0], Integer::sum));
+            available += p.available;
+        }
+        // Tous les genres présents, même sans livre retenu
+        TreeSet<String> genreNames = new TreeSet<>();
+        for (Value v : genreValues.values()) {
+            if (v.text != null) genreNames.add(v.text);
+        }
+        for (String g : genreNames) genreCounts.putIfAbsent(g, 0);
+        return new Selection(rows, size, new SearchIndex.Counts(genreCounts, statusCounts, available, size), List.copyOf(genreNames));
+    }
+
+    /** @return les mots de la recherche (bits) dont un mot du texte commence par l'un d'eux */
+    private static long mask(String text, String[] words) {
+        if (words.length == 0 || text == null) return 0;
+        long found = 0;
+        for (String t : TextFolding.tokens(text)) {
+            for (int j = 0; j < words.length; j++) {
+                if (t.startsWith(words[j])) found |= 1L << j;
+            }
+        }
+        return found;
+    }
+
+    // --- Tri ---
+
+    /**
+     * Trie les lignes retenues. Chaque ligne reçoit une clé entière (rang de la valeur
+     * pour les champs dédupliqués, début de la clé de tri pour le titre) placée au-dessus
+     * de sa position: un tri de {@code long} ordonne tout, puis les titres de même début
+     * sont départagés par leur clé complète.
+     * @return les numéros de lignes dans l'ordre d'affichage (le tableau reçu s'il n'y a
+     * pas de tri), ou null si l'évaluation a été abandonnée
+     */
+    private int[] sort(int[] rows, int size, SortColumn column, boolean desc, long gen) {
+        if (column == null || size < 2) return rows;
+        int posBits = 32 - Integer.numberOfLeadingZeros(size - 1);
+        int keyBits = 63 - posBits;
+        long maxKey = (1L << keyBits) - 1;
+        long posMask = (1L << posBits) - 1;
+        Map<Integer, Long> ranks = switch (column) {
+            case AUTHOR -> textRanks(rows, size, Field.AUTHOR);
+            case GENRE -> textRanks(rows, size, Field.GENRE);
+            case READING_STATUS -> statusRanks(rows, size);
+            default -> null;
+        };
+        long[] keyed = new long[size];
+        for (int i = 0; i < size; i++) {
+            if ((i & (CHUNK_SIZE - 1)) == 0 && generation != gen) return null;
+            int row = rows[i];
+            long key = switch (column) {
+                case TITLE -> titlePrefix(SortKeys.textKey(books.getString(row, Field.TITLE)), keyBits / 8);
+                case AUTHOR -> ranks.get(books.ref(row, Field.AUTHOR));
+                case GENRE -> ranks.get(books.ref(row, Field.GENRE));
+                case READING_STATUS -> ranks.get(books.ref(row, Field.READING_STATUS));
+                case YEAR -> books.getYear(row) - (long) Integer.MIN_VALUE;
+                case AVAILABLE -> books.isAvailable(row) ? 1 : 0;
+                case ADDED_AT -> books.getAddedAt(row) / 1000;
+            };
+            if (desc) key = maxKey - key;
+            keyed[i] = (key << posBits) | i;
+        }
+        Arrays.parallelSort(keyed);
+        if (generation != gen) return null;
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = rows[(int) (keyed[i] & posMask)];
+        if (column == SortColumn.TITLE) {
+            // Titres de même début: ordre exact sur la clé complète (positions croissantes à égalité),
+            // chaque groupe trié indépendamment
+            List<int[]> runs = new ArrayList<>();
+            for (int from = 0; from < size; ) {
+                int to = from + 1;
+                while (to < size && (keyed[to] >>> posBits) == (keyed[from] >>> posBits)) to++;
+                if (to - from > 1) runs.add(new int[]{from, to});
+                from = to;
+            }
+            runs.parallelStream().forEach(r -> sortTitles(order, r[0], r[1], desc));
+            if (generation != gen) return null;
+        }
+        return order;
+    }
+
+    /**
+     * @return la clé d'un titre réduite à ses {@code chars} premiers caractères (un octet
+     * chacun: 0 pour la fin du texte), la plus grande pour un titre absent
+     */
+    private static long titlePrefix(String key, int chars) {
+        long out = 0;
+        for (int j = 0; j < chars; j++) {
+            int c = key == null ? 0xFF : j < key.length() ? Math.min(key.charAt(j), 0xFE) + 1 : 0;
+            out = (out << 8) | c;
+        }
+        return out;
+    }
+
+    private void sortTitles(int[] order, int from, int to, boolean desc) {
+        TitleRow[] run = new TitleRow[to - from];
+        for (int i = from; i < to; i++) {
+            run[i - from] = new TitleRow(SortKeys.textKey(books.getString(order[i], Field.TITLE)), order[i]);
+        }
+        Arrays.sort(run, desc ? (a, b) -> compareTitles(b.key, a.key) : (a, b) -> compareTitles(a.key, b.key));
+        for (int i = from; i < to; i++) order[i] = run[i - from].row();
+    }
+
+    /** @return l'ordre de deux clés de titre, titres absents en dernier */
+    private static int compareTitles(String a, String b) {
+        if (a == null || b == null) return a == b ? 0 : (a == null ? 1 : -1);
+        return a.compareTo(b);
+    }
+
+    private record TitleRow(String key, int row) {
+    }
+
+    /** @return le rang de chaque valeur distincte du champ (ordre de tri du texte, absentes en dernier) */
+    private Map<Integer, Long> textRanks(int[] rows, int size, Field field) {
+        Map<Integer, String> keys = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            int ref = books.ref(row, field);
+            // put plutôt que computeIfAbsent: la clé d'une valeur absente est null
+            if (!keys.containsKey(ref)) keys.put(ref, SortKeys.textKey(books.getString(row, field)));
+        }
+        List<Map.Entry<Integer, String>> sorted = new ArrayList<>(keys.entrySet());
+        sorted.sort(Map.Entry.comparingByValue(Comparator.nullsLast(Comparator.naturalOrder())));
+        Map<Integer, Long> ranks = new HashMap<>();
+        long rank = 0;
+        String previous = null;
+        for (int i = 0; i < sorted.size(); i++) {
+            String k = sorted.get(i).getValue();
+            if (i > 0 && !Objects.equals(k, previous)) rank++;
+            ranks.put(sorted.get(i).getKey(), rank);
+            previous = k;
+        }
+        return ranks;
+    }
+
+    /** @return le rang de chaque état de lecture distinct, dans l'ordre de la table */
+    private Map<Integer, Long> statusRanks(int[] rows, int size) {
+        Map<Integer, Book> values = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            values.computeIfAbsent(books.ref(row, Field.READING_STATUS), ref -> {
+                Book b = new Book(0);
+                b.setReadingStatus(books.getString(row, Field.READING_STATUS));
+                return b;
+            });
+        }
+        List<Map.Entry<Integer, Book>> sorted = new ArrayList<>(values.entrySet());
+        sorted.sort(Map.Entry.comparingByValue(SortKeys.BY_READING_STATUS));
+        Map<Integer, Long> ranks = new HashMap<>();
+        long rank = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i > 0 && SortKeys.BY_READING_STATUS.compare(sorted.get(i - 1).getValue(), sorted.get(i).getValue()) != 0) rank++;
+            ranks.put(sorted.get(i).getKey(), rank);
+        }
+        return ranks;
+    }
+}
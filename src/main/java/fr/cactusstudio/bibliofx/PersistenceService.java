@@ -0,0 +1,204 @@
+package fr.cactusstudio.bibliofx;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Service de sauvegarde asynchrone: aucune écriture disque n'a lieu sur le thread JavaFX.
+ * <p>
+ * Les modifications de livres sont appliquées au {@link LibraryRepository} par l'appelant
+ * (opérations par identifiant, en mémoire et peu coûteuses): le dépôt est donc toujours
+ * à jour et le service ne se charge que de déclencher leur écriture. Les demandes
+ * successives sont regroupées: le thread du service attend un court délai d'inactivité
+ * (sans dépasser un délai maximal), puis force l'écriture du dépôt
+ * ({@link LibraryRepository#flushAsync()}, qui remplace l'écriture différée du dépôt
+ * lui-même) et en attend le résultat. L'état ({@link Status}) et la dernière erreur sont
+ * publiés sur le thread JavaFX via {@link Platform#runLater(Runnable)}.
+ */
+public class PersistenceService {
+    /** État du pipeline de sauvegarde. */
+    public enum Status {
+        /** Tout est écrit sur disque. */
+        IDLE,
+        /** Une écriture est demandée, pas encore commencée. */
+        PENDING,
+        /** Écriture en cours. */
+        SAVING,
+        /** La dernière écriture a échoué (elle sera retentée à la prochaine sauvegarde). */
+        FAILED
+    }
+
+    /** Délai d'inactivité avant écriture. */
+    private static final long DEBOUNCE_MS = 300;
+    /** Délai maximal entre une demande et son écriture, même si les demandes continuent. */
+    private static final long MAX_DELAY_MS = 2000;
+
+    private final LibraryRepository repository;
+
+    private final ReadOnlyObjectWrapper<Status> status = new ReadOnlyObjectWrapper<>(Status.IDLE);
+    private final ReadOnlyStringWrapper lastError = new ReadOnlyStringWrapper();
+
+    // Demande en attente (protégée par lock)
+    private final Object lock = new Object();
+    private boolean requested;
+    private long firstPendingAt;
+    private long lastSubmitAt;
+    private boolean running;
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final Thread worker;
+
+    /**
+     * @param repository dépôt des bibliothèques
+     */
+    public PersistenceService(LibraryRepository repository) {
+        this.repository = repository;
+        this.worker = new Thread(this::runLoop, "bibliofx-persistence");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** @return l'état courant du pipeline (mis à jour sur le thread JavaFX) */
+    public ReadOnlyObjectProperty<Status> statusProperty() { return status.getReadOnlyProperty(); }
+
+    /** @return le message de la dernière erreur, ou null (mis à jour sur le thread JavaFX) */
+    public ReadOnlyStringProperty lastErrorProperty() { return lastError.getReadOnlyProperty(); }
+
+    /**
+     * Programme l'écriture des modifications déjà appliquées au dépôt.
+     * @return false si le service est arrêté
+     */
+    public boolean saveChanges() {
+        synchronized (lock) {
+            if (closed) return false;
+            long now = System.currentTimeMillis();
+            boolean wasIdle = !requested && !running;
+            if (!requested) firstPendingAt = now;
+            lastSubmitAt = now;
+            requested = true;
+            lock.notifyAll();
+            if (!wasIdle) return true;
+        }
+        publish(Status.PENDING, null);
+        return true;
+    }
+
+    /**
+     * Écrit immédiatement tout ce qui est en attente et attend la fin de l'écriture
+     * (utilisé à la fermeture de l'application).
+     * @param timeoutMs délai maximal d'attente
+     * @return true si tout a été écrit dans le délai
+     */
+    public boolean flush(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            flushRequested = true;
+            lock.notifyAll();
+            try {
+                while (requested || running) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) return false;
+                    lock.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                flushRequested = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Écrit ce qui est en attente puis arrête le service.
+     * @param timeoutMs délai maximal d'attente
+     */
+    public void close(long timeoutMs) {
+        long start = System.currentTimeMillis();
+        flush(timeoutMs);
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        // Écritures différées du dépôt lui-même (création, renommage de bibliothèque...)
+        try {
+            repository.flushAsync().get(Math.max(1, timeoutMs - (System.currentTimeMillis() - start)), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (!requested && !closed) lock.wait();
+                    if (!requested) return;
+                    // Attente d'inactivité, bornée par le délai maximal
+                    while (!flushRequested && !closed) {
+                        long now = System.currentTimeMillis();
+                        long wait = Math.min(lastSubmitAt + DEBOUNCE_MS, firstPendingAt + MAX_DELAY_MS) - now;
+                        if (wait <= 0) break;
+                        lock.wait(wait);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                requested = false;
+                running = true;
+            }
+            publish(Status.SAVING, null);
+            String error = write();
+            boolean more;
+            synchronized (lock) {
+                running = false;
+                more = requested;
+                lock.notifyAll();
+            }
+            if (error != null) publish(Status.FAILED, error);
+            else publish(more ? Status.PENDING : Status.IDLE, null);
+        }
+    }
+
+    /** @return null si tout a été écrit, sinon un message d'erreur */
+    private String write() {
+        try {
+            return repository.flushAsync().get(30, TimeUnit.SECONDS) ? null : "Échec de l'écriture des bibliothèques";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Sauvegarde interrompue";
+        } catch (ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+            return "Échec de l'écriture des bibliothèques";
+        }
+    }
+
+    /** Publie l'état sur le thread JavaFX. */
+    private void publish(Status s, String error) {
+        Runnable update = () -> {
+            status.set(s);
+            if (s == Status.FAILED) lastError.set(error);
+            else if (s == Status.IDLE) lastError.set(null);
+        };
+        if (Platform.isFxApplicationThread()) {
+            update.run();
+            return;
+        }
+        try {
+            Platform.runLater(update);
+        } catch (IllegalStateException e) {
+            // Plate-forme JavaFX arrêtée (fermeture de l'application)
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package fr.cactusstudio.bibliofx;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Démarrage de l'application: le dépôt et la bibliothèque courante sont préparés sur un
+ * thread de fond dès le lancement ({@link #begin()}), pendant que le runtime JavaFX
+ * démarre et que l'interface est construite. La fenêtre s'affiche aussitôt avec une
+ * table vide, remplie dès que la bibliothèque est prête.
+ * <p>
+ * Avec {@code -Dbibliofx.startupTrace=true}, les étapes sont affichées sur la sortie
+ * d'erreur avec le temps écoulé depuis le lancement du processus, dont la première image
+ * et le moment où la bibliothèque est affichée et utilisable.
+ */
+final class Startup {
+    private static final boolean TRACE = Boolean.getBoolean("bibliofx.startupTrace");
+    /** Lancement du processus (à défaut, chargement de cette classe). */
+    private static final Instant ORIGIN = ProcessHandle.current().info().startInstant().orElseGet(Instant::now);
+
+    private static CompletableFuture<LibraryRepository> repository;
+    private static CompletableFuture<LibraryLoader.Loaded> library;
+
+    private Startup() {
+    }
+
+    /** Commence la préparation du dépôt et de la bibliothèque courante (sans effet si c'est déjà fait). */
+    static synchronized void begin() {
+        if (repository != null) return;
+        mark("lancement");
+        repository = new CompletableFuture<>();
+        library = new CompletableFuture<>();
+        Thread t = new Thread(() -> {
+            try {
+                LibraryRepository repo = new LibraryRepository();
+                mark("dépôt ouvert");
+                repository.complete(repo);
+                LibraryLoader.Loaded loaded = LibraryLoader.load(repo, repo.getCurrentLibrary());
+                mark("bibliothèque chargée (" + (loaded.readOnly() != null ? loaded.readOnly().size() : loaded.books().size()) + " livres)");
+                library.complete(loaded);
+            } catch (RuntimeException | Error e) {
+                repository.completeExceptionally(e);
+                library.completeExceptionally(e);
+            }
+        }, "bibliofx-startup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** @return le dépôt, en attendant qu'il soit ouvert */
+    static LibraryRepository repository() {
+        CompletableFuture<LibraryRepository> f;
+        synchronized (Startup.class) {
+            begin();
+            f = repository;
+        }
+        return f.join();
+    }
+
+    /**
+     * @param name bibliothèque à afficher
+     * @return la bibliothèque préparée au lancement si c'est bien celle-ci, sinon son chargement sur un thread de fond
+     */
+    static CompletableFuture<LibraryLoader.Loaded> library(LibraryRepository repo, String name) {
+        CompletableFuture<LibraryLoader.Loaded> f;
+        synchronized (Startup.class) {
+            begin();
+            f = library;
+        }
+        return f.thenCompose(l -> l.name().equals(name) ? CompletableFuture.completedFuture(l)
+                : CompletableFuture.supplyAsync(() -> LibraryLoader.load(repo, name)));
+    }
+
+    /**
+     * Note une étape du démarrage (si la trace est activée).
+     * @param event description de l'étape
+     */
+    static void mark(String event) {
+        if (!TRACE) return;
+        System.err.printf("[démarrage] %6d ms  %s (%s)%n", Duration.between(ORIGIN, Instant.now()).toMillis(),
+                event, Thread.currentThread().getName());
+    }
+
+    /**
+     * Note une étape à la prochaine image de la scène (si la trace est activée).
+     * @param scene scène observée
+     * @param event description de l'étape
+     */
+    static void markNextFrame(Scene scene, String event) {
+        if (!TRACE || scene == null) return;
+        Runnable[] once = new Runnable[1];
+        once[0] = () -> {
+            if (once[0] == null) return;
+            Runnable self = once[0];
+            once[0] = null;
+            mark(event);
+            // Pas de retrait pendant le parcours des écouteurs de la scène
+            Platform.runLater(() -> scene.removePostLayoutPulseListener(self));
+        };
+        scene.addPostLayoutPulseListener(once[0]);
+    }
+}
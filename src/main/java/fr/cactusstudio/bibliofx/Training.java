@@ -0,0 +1,113 @@
+package fr.cactusstudio.bibliofx;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.Change;
+import fr.cactusstudio.bibliofx.model.ReadingStatus;
+import javafx.animation.PauseTransition;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Parcours d'entraînement de l'archive de classes partagées (AppCDS) de l'image jlink:
+ * point d'entrée distinct de {@link Launcher}, lancé par la tâche Gradle {@code cdsArchive}.
+ * <p>
+ * Une bibliothèque vide est d'abord remplie de livres d'exemple et écrite, puis
+ * l'application démarre normalement et le parcours est joué sur l'interface (recherche,
+ * sélection, dialogue d'ajout ouvert puis refermé) avant la fermeture. Les classes
+ * chargées pendant ce parcours sont celles que la JVM archive. L'entraînement doit tourner
+ * dans un répertoire personnel jetable ({@code -Duser.home}).
+ */
+public final class Training extends Main {
+    /** Nombre de livres d'exemple. */
+    private static final int SAMPLE_SIZE = 2_000;
+
+    private static final String[] AUTHORS = {
+            "Victor Hugo", "Émile Zola", "Gustave Flaubert", "Honoré de Balzac", "Alexandre Dumas",
+            "George Sand", "Jules Verne", "Marcel Proust", "Albert Camus", "Marguerite Duras"
+    };
+    private static final String[] GENRES = {"Roman", "Poésie", "Théâtre", "Essai", "Science-fiction", "Policier"};
+    private static final String[] WORDS = {
+            "nuit", "mer", "château", "voyage", "jardin", "guerre", "mémoire", "ville", "hiver", "lettre"
+    };
+
+    /**
+     * Écrit la bibliothèque d'exemple si la bibliothèque courante est vide, puis lance
+     * l'application sur le parcours d'entraînement.
+     *
+     * @param args arguments de ligne de commande
+     * @throws ExecutionException   si la bibliothèque d'exemple n'a pas pu être écrite
+     * @throws InterruptedException si l'écriture est interrompue
+     */
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        LibraryRepository seed = new LibraryRepository();
+        String library = seed.getCurrentLibrary();
+        if (seed.snapshot(library).isEmpty()) {
+            seed.apply(library, sampleBooks().stream().<Change>map(Change.Add::new).toList());
+            if (!seed.flushAsync().get()) throw new IllegalStateException("Bibliothèque d'exemple non écrite");
+        }
+        // L'application relit la bibliothèque depuis le disque, comme à un démarrage normal
+        Startup.begin();
+        Application.launch(Training.class, args);
+    }
+
+    /**
+     * Affiche l'application, puis joue le parcours une fois la bibliothèque affichée.
+     *
+     * @param stage la fenêtre principale fournie par le runtime JavaFX
+     * @throws IOException si le chargement du FXML échoue
+     */
+    @Override
+    public void start(Stage stage) throws IOException {
+        super.start(stage);
+        Scene scene = stage.getScene();
+        LibraryRepository repository = Startup.repository();
+        Startup.library(repository, repository.getCurrentLibrary()).whenComplete((loaded, error) -> Platform.runLater(() -> {
+            // Laisse le contrôleur afficher la bibliothèque et la table se dessiner
+            PauseTransition pause = new PauseTransition(Duration.seconds(1));
+            pause.setOnFinished(e -> play(scene));
+            pause.play();
+        }));
+    }
+
+    /** Recherche, sélection, dialogue d'ajout ouvert puis refermé, fermeture. */
+    private static void play(Scene scene) {
+        ((TextField) scene.lookup("#searchField")).setText("château");
+        ((TableView<?>) scene.lookup("#table")).getSelectionModel().selectFirst();
+        // Le dialogue modal est refermé peu après son affichage: le bouton rend alors la main
+        Window main = scene.getWindow();
+        PauseTransition close = new PauseTransition(Duration.seconds(1));
+        close.setOnFinished(e -> List.copyOf(Window.getWindows()).stream().filter(w -> w != main).forEach(Window::hide));
+        close.play();
+        ((Button) scene.lookup("#addButton")).fire();
+        Platform.exit();
+    }
+
+    /** @return des livres d'exemple variés (toujours les mêmes titres, auteurs et genres) */
+    static List<Book> sampleBooks() {
+        long now = System.currentTimeMillis();
+        List<Book> books = new ArrayList<>(SAMPLE_SIZE);
+        ReadingStatus[] statuses = ReadingStatus.values();
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            String title = "La " + WORDS[i % WORDS.length] + " et le " + WORDS[(i / WORDS.length) % WORDS.length] + " " + (i + 1);
+            Book b = new Book(title, AUTHORS[i % AUTHORS.length], 1830 + i % 190, GENRES[i % GENRES.length], i % 7 != 0);
+            b.setStatus(statuses[i % statuses.length]);
+            b.setAddedAt(now - i * 86_400_000L);
+            if (!b.isAvailable()) b.setBorrowedAt(now - i * 3_600_000L);
+            if (i % 5 == 0) b.setSummary("Résumé de « " + title + " ».");
+            books.add(b);
+        }
+        return books;
+    }
+}
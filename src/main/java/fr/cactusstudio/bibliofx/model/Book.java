@@ -6,7 +6,6 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Objects;
 
 /**
  * Modèle représentant un livre dans BiblioFX.
@@ -14,8 +13,26 @@ import java.util.Objects;
  * Contient les informations principales (titre, auteur, année, genre, disponibilité),
  * ainsi que des métadonnées facultatives (résumé, couverture) et des horodatages
  * d'ajout et d'emprunt.
+ * <p>
+ * Chaque livre porte un identifiant immuable, attribué à la création ({@link BookIds}):
+ * l'égalité et le hachage ne dépendent que de lui, et ne changent donc pas lorsque le
+ * livre est modifié (emprunt, édition) pendant qu'il se trouve dans une collection.
+ * <p>
+ * Représentation compacte, pour les grandes bibliothèques: auteur et genre sont des
+ * instances partagées ({@link StringPool}), le statut de lecture une constante
+ * ({@link ReadingStatus}), les horodatages des {@code long} ({@link #NO_DATE} si absents)
+ * et le résumé est gardé compressé hors de l'objet ({@link SummaryText}), reconstitué à
+ * chaque {@link #getSummary()}.
  */
 public class Book implements Serializable {
+    /** Horodatage absent (jamais ajouté, pas emprunté). */
+    public static final long NO_DATE = 0L;
+    // Formats d'affichage, partagés (une cellule de table les utilise à chaque mise à jour)
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+    private static final DateTimeFormatter DATE_ONLY = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    /** Identifiant stable; 0 pour une donnée ancienne pas encore migrée. */
+    private final long id;
     /** Titre du livre. */
     private String title;
     /** Auteur du livre. */
@@ -27,26 +44,39 @@ public class Book implements Serializable {
     /** Indique si le livre est disponible (non emprunté). */
     private boolean available;
 
-    /** Statut de lecture: "non lu", "en cours de lecture", ou "lu". */
-    private String readingStatus;
+    /** Statut de lecture. */
+    private ReadingStatus readingStatus = ReadingStatus.NOT_READ;
 
     // Métadonnées
-    /** Résumé du livre. */
-    private String summary;   // résumé du livre
+    /** Résumé du livre (compressé), ou null. */
+    private SummaryText summary;
     /** URL ou chemin de la couverture. */
     private String coverUrl;  // URL ou chemin de la couverture
 
     // Horodatages
-    /** Date d'ajout en millisecondes epoch. */
-    private Long addedAt;     // epoch millis
-    /** Date d'emprunt en millisecondes epoch, null si non emprunté. */
-    private Long borrowedAt;  // epoch millis, null when not borrowed
+    /** Date d'ajout en millisecondes epoch, {@link #NO_DATE} si inconnue. */
+    private long addedAt;
+    /** Date d'emprunt en millisecondes epoch, {@link #NO_DATE} si non emprunté. */
+    private long borrowedAt;
+
+    /** Clés de tri, calculées au premier tri (null: à calculer, notamment après une modification). */
+    private transient SortKeys sortKeys;
 
     @Serial
     private static final long serialVersionUID = 1L;
 
-    /** Constructeur sans argument (requis pour la sérialisation). */
+    /** Constructeur sans argument: nouveau livre, avec un nouvel identifiant. */
     public Book() {
+        this.id = BookIds.next();
+    }
+
+    /**
+     * Livre existant (lecture depuis le stockage).
+     * @param id identifiant enregistré (0 pour une donnée ancienne sans identifiant)
+     */
+    public Book(long id) {
+        this.id = id;
+        BookIds.observe(id);
     }
 
     /**
@@ -59,22 +89,26 @@ public class Book implements Serializable {
      * @param available  disponibilité initiale
      */
     public Book(String title, String author, int year, String genre, boolean available) {
+        this();
         this.title = title;
-        this.author = author;
+        this.author = StringPool.AUTHORS.intern(author);
         this.year = year;
-        this.genre = genre;
+        this.genre = StringPool.GENRES.intern(genre);
         this.available = available;
     }
 
+    /** @return l'identifiant du livre */
+    public long getId() { return id; }
+
     /** @return le titre */
     public String getTitle() { return title; }
     /** @param title le titre à définir */
-    public void setTitle(String title) { this.title = title; }
+    public void setTitle(String title) { this.title = title; sortKeys = null; }
 
     /** @return l'auteur */
     public String getAuthor() { return author; }
     /** @param author l'auteur à définir */
-    public void setAuthor(String author) { this.author = author; }
+    public void setAuthor(String author) { this.author = StringPool.AUTHORS.intern(author); sortKeys = null; }
 
     /** @return l'année de publication */
     public int getYear() { return year; }
@@ -84,37 +118,52 @@ public class Book implements Serializable {
     /** @return le genre */
     public String getGenre() { return genre; }
     /** @param genre le genre à définir */
-    public void setGenre(String genre) { this.genre = genre; }
+    public void setGenre(String genre) { this.genre = StringPool.GENRES.intern(genre); sortKeys = null; }
 
     /** @return true si disponible */
     public boolean isAvailable() { return available; }
     /** @param available disponibilité à définir */
     public void setAvailable(boolean available) { this.available = available; }
 
-    /** @return le résumé */
-    public String getSummary() { return summary; }
+    /** @return le résumé (décompressé à chaque appel), ou null */
+    public String getSummary() { return SummaryText.text(summary); }
     /** @param summary le résumé à définir */
-    public void setSummary(String summary) { this.summary = summary; }
-
-    /** Statut de lecture: retourne une valeur par défaut "Non lu" si non défini. */
-    public String getReadingStatus() { return (readingStatus == null || readingStatus.isBlank()) ? "Non lu" : readingStatus; }
-    /** Définit le statut de lecture. Valeurs suggérées: "Non lu", "En cours de lecture", "Lu". */
-    public void setReadingStatus(String readingStatus) { this.readingStatus = readingStatus; }
+    public void setSummary(String summary) { this.summary = SummaryText.of(summary); }
+    /** @return le résumé sous forme compacte, ou null */
+    public SummaryText getSummaryText() { return summary; }
+    /** @param summary le résumé sous forme compacte (partagé, immuable) */
+    public void setSummaryText(SummaryText summary) { this.summary = summary; }
+
+    /** @return le libellé du statut de lecture ("Non lu" par défaut) */
+    public String getReadingStatus() { return readingStatus.label(); }
+    /** @param readingStatus libellé du statut ("Non lu", "En cours de lecture", "Lu"); vide ou inconnu: "Non lu" */
+    public void setReadingStatus(String readingStatus) { setStatus(ReadingStatus.parse(readingStatus)); }
+    /** @return le statut de lecture */
+    public ReadingStatus getStatus() { return readingStatus; }
+    /** @param status le statut de lecture (null: non lu) */
+    public void setStatus(ReadingStatus status) { this.readingStatus = status != null ? status : ReadingStatus.NOT_READ; sortKeys = null; }
 
     /** @return l'URL/chemin de la couverture */
     public String getCoverUrl() { return coverUrl; }
     /** @param coverUrl l'URL/chemin de la couverture */
     public void setCoverUrl(String coverUrl) { this.coverUrl = coverUrl; }
 
-    /** @return l'horodatage d'ajout (ms) */
-    public Long getAddedAt() { return addedAt; }
-    /** @param addedAt horodatage d'ajout (ms) */
-    public void setAddedAt(Long addedAt) { this.addedAt = addedAt; }
-
-    /** @return l'horodatage d'emprunt (ms), ou null */
-    public Long getBorrowedAt() { return borrowedAt; }
-    /** @param borrowedAt horodatage d'emprunt (ms), ou null */
-    public void setBorrowedAt(Long borrowedAt) { this.borrowedAt = borrowedAt; }
+    /** @return l'horodatage d'ajout (ms), ou {@link #NO_DATE} */
+    public long getAddedAt() { return addedAt; }
+    /** @param addedAt horodatage d'ajout (ms), ou {@link #NO_DATE} */
+    public void setAddedAt(long addedAt) { this.addedAt = Math.max(addedAt, NO_DATE); sortKeys = null; }
+
+    /** @return l'horodatage d'emprunt (ms), ou {@link #NO_DATE} */
+    public long getBorrowedAt() { return borrowedAt; }
+    /** @param borrowedAt horodatage d'emprunt (ms), ou {@link #NO_DATE} */
+    public void setBorrowedAt(long borrowedAt) { this.borrowedAt = Math.max(borrowedAt, NO_DATE); }
+
+    /** @return les clés de tri du livre dans son état actuel */
+    public SortKeys getSortKeys() {
+        SortKeys k = sortKeys;
+        if (k == null) sortKeys = k = new SortKeys(this);
+        return k;
+    }
 
     // Aides de formatage
     /** @return date/heure formatée de l'ajout ("dd/MM/yyyy HH:mm") ou "—" */
@@ -138,33 +187,30 @@ public class Book implements Serializable {
         return formatEpochMillisDateOnly(addedAt);
     }
 
-    private static String formatEpochMillis(Long epochMillis) {
-        if (epochMillis == null || epochMillis <= 0) return "—";
+    private static String formatEpochMillis(long epochMillis) {
+        if (epochMillis <= NO_DATE) return "—";
         LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-        return ldt.format(fmt);
+        return ldt.format(DATE_TIME);
     }
 
-    private static String formatEpochMillisDateOnly(Long epochMillis) {
-        if (epochMillis == null || epochMillis <= 0) return "—";
+    private static String formatEpochMillisDateOnly(long epochMillis) {
+        if (epochMillis <= NO_DATE) return "—";
         LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        return ldt.format(fmt);
+        return ldt.format(DATE_ONLY);
     }
 
-    /** {@inheritDoc} */
+    /** Deux livres sont égaux s'ils ont le même identifiant (versions d'un même livre). */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        Book book = (Book) o;
-        return year == book.year && available == book.available && Objects.equals(title, book.title) && Objects.equals(author, book.author) && Objects.equals(genre, book.genre) && Objects.equals(readingStatus, book.readingStatus) && Objects.equals(summary, book.summary) && Objects.equals(coverUrl, book.coverUrl) && Objects.equals(addedAt, book.addedAt) && Objects.equals(borrowedAt, book.borrowedAt);
+        return id == ((Book) o).id;
     }
 
     /** {@inheritDoc} */
     @Override
     public int hashCode() {
-        return Objects.hash(title, author, year, genre, available, readingStatus, summary, coverUrl, addedAt, borrowedAt);
+        return Long.hashCode(id);
     }
 
     /**
@@ -0,0 +1,29 @@
+package fr.cactusstudio.bibliofx.model;
+
+/**
+ * Effet d'une modification sur un livre: version avant et après.
+ * <p>
+ * Un ajout n'a pas de version avant, une suppression pas de version après. C'est la
+ * forme transmise aux écouteurs du dépôt, qui peuvent ainsi tenir leurs structures
+ * (index, compteurs) à jour livre par livre.
+ *
+ * @param before enregistrement avant la modification, ou null pour un ajout
+ * @param after  enregistrement après la modification, ou null pour une suppression
+ */
+public record BookDelta(BookRecord before, BookRecord after) {
+
+    /** @return l'identifiant du livre concerné */
+    public long id() {
+        return after != null ? after.id() : before.id();
+    }
+
+    /** @return true pour un ajout */
+    public boolean isAdd() {
+        return before == null;
+    }
+
+    /** @return true pour une suppression */
+    public boolean isRemove() {
+        return after == null;
+    }
+}
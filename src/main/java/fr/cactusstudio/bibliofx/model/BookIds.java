@@ -0,0 +1,32 @@
+package fr.cactusstudio.bibliofx.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Générateur d'identifiants de livres: entiers 64 bits strictement croissants, uniques
+ * sans coordination entre bibliothèques.
+ * <p>
+ * Un identifiant vaut l'heure courante (ms) décalée de {@value #COUNTER_BITS} bits, plus
+ * un compteur pour les créations dans la même milliseconde. Les identifiants lus sur
+ * disque sont signalés via {@link #observe(long)}: les suivants leur sont toujours
+ * supérieurs, même si l'horloge a reculé entre deux lancements.
+ */
+public final class BookIds {
+    /** Bits réservés au compteur (4096 identifiants par milliseconde avant d'anticiper). */
+    private static final int COUNTER_BITS = 12;
+    private static final AtomicLong last = new AtomicLong();
+
+    private BookIds() {
+    }
+
+    /** @return un nouvel identifiant, supérieur à tous ceux déjà attribués ou observés */
+    public static long next() {
+        long floor = System.currentTimeMillis() << COUNTER_BITS;
+        return last.updateAndGet(prev -> Math.max(prev + 1, floor));
+    }
+
+    /** @param id identifiant existant (lu sur disque) */
+    public static void observe(long id) {
+        if (id > last.get()) last.accumulateAndGet(id, Math::max);
+    }
+}
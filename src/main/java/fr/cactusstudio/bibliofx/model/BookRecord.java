@@ -0,0 +1,92 @@
+package fr.cactusstudio.bibliofx.model;
+
+import java.util.Objects;
+
+/**
+ * Forme immuable d'un livre, telle que conservée par le dépôt.
+ * <p>
+ * Contrairement à {@link Book} (modèle éditable de l'interface), un enregistrement ne
+ * change jamais: il peut être partagé entre versions successives d'une bibliothèque et
+ * lu par le thread d'écriture sans copie ni verrou. Comme {@link Book}, il est compact:
+ * auteur et genre partagés ({@link StringPool}), statut de lecture en constante,
+ * horodatages primitifs ({@link Book#NO_DATE} si absents), résumé compressé partagé
+ * avec les livres qui en sont issus.
+ *
+ * @param id          identifiant stable (voir {@link BookIds})
+ * @param title       titre
+ * @param author      auteur
+ * @param year        année de publication
+ * @param genre       genre
+ * @param available   disponibilité
+ * @param status      statut de lecture (jamais null)
+ * @param summaryText résumé compressé, ou null
+ * @param coverUrl    URL ou chemin de la couverture
+ * @param addedAt     date d'ajout (ms), ou {@link Book#NO_DATE}
+ * @param borrowedAt  date d'emprunt (ms), ou {@link Book#NO_DATE}
+ */
+public record BookRecord(long id, String title, String author, int year, String genre, boolean available,
+                         ReadingStatus status, SummaryText summaryText, String coverUrl, long addedAt, long borrowedAt) {
+
+    public BookRecord {
+        author = StringPool.AUTHORS.intern(author);
+        genre = StringPool.GENRES.intern(genre);
+        if (status == null) status = ReadingStatus.NOT_READ;
+    }
+
+    /**
+     * @param b livre
+     * @return l'enregistrement correspondant
+     */
+    public static BookRecord of(Book b) {
+        return new BookRecord(b.getId(), b.getTitle(), b.getAuthor(), b.getYear(), b.getGenre(), b.isAvailable(),
+                b.getStatus(), b.getSummaryText(), b.getCoverUrl(), b.getAddedAt(), b.getBorrowedAt());
+    }
+
+    /** @return le libellé du statut de lecture, tel qu'écrit sur disque */
+    public String readingStatus() {
+        return status.label();
+    }
+
+    /** @return le résumé (décompressé à chaque appel), ou null */
+    public String summary() {
+        return SummaryText.text(summaryText);
+    }
+
+    /** @return un nouveau {@link Book} éditable avec les mêmes valeurs */
+    public Book toBook() {
+        Book b = new Book(id);
+        b.setTitle(title);
+        b.setAuthor(author);
+        b.setYear(year);
+        b.setGenre(genre);
+        b.setAvailable(available);
+        b.setStatus(status);
+        b.setSummaryText(summaryText);
+        b.setCoverUrl(coverUrl);
+        b.setAddedAt(addedAt);
+        b.setBorrowedAt(borrowedAt);
+        return b;
+    }
+
+    /**
+     * @param newId identifiant
+     * @return le même enregistrement avec cet identifiant
+     */
+    public BookRecord withId(long newId) {
+        return newId == id ? this : new BookRecord(newId, title, author, year, genre, available,
+                status, summaryText, coverUrl, addedAt, borrowedAt);
+    }
+
+    /**
+     * Compare sans allouer d'enregistrement intermédiaire (ni décompresser le résumé).
+     * @param b livre
+     * @return true si le livre a exactement les valeurs de cet enregistrement
+     */
+    public boolean matches(Book b) {
+        return b != null && id == b.getId() && year == b.getYear() && available == b.isAvailable()
+                && status == b.getStatus() && addedAt == b.getAddedAt() && borrowedAt == b.getBorrowedAt()
+                && Objects.equals(title, b.getTitle()) && Objects.equals(author, b.getAuthor())
+                && Objects.equals(genre, b.getGenre()) && Objects.equals(summaryText, b.getSummaryText())
+                && Objects.equals(coverUrl, b.getCoverUrl());
+    }
+}
@@ -0,0 +1,46 @@
+package fr.cactusstudio.bibliofx.model;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Modification élémentaire d'une bibliothèque, désignant les livres par leur identifiant.
+ * <p>
+ * Les modifications sont appliquées par lot avec
+ * {@link fr.cactusstudio.bibliofx.LibraryRepository#apply(String, java.util.List)}: seules
+ * les différences sont journalisées et transmises aux écouteurs, sans comparer ni
+ * réécrire la liste complète.
+ */
+public sealed interface Change {
+
+    /**
+     * Ajout d'un livre, sous son identifiant (attribué à la création du {@link Book}).
+     * L'ajout est ignoré, sans erreur, si le livre n'a pas d'identifiant ou si le sien est
+     * déjà présent dans la bibliothèque: il n'apparaît alors pas dans le résultat de
+     * {@code apply}, que l'appelant doit vérifier.
+     * @param book livre à ajouter
+     */
+    record Add(Book book) implements Change {
+        public Add {
+            Objects.requireNonNull(book, "book");
+        }
+    }
+
+    /**
+     * Modification d'un livre existant.
+     * @param id    identifiant du livre
+     * @param patch modifications, appliquées à une copie du livre (l'identifiant est conservé)
+     */
+    record Update(long id, Consumer<Book> patch) implements Change {
+        public Update {
+            Objects.requireNonNull(patch, "patch");
+        }
+    }
+
+    /**
+     * Suppression d'un livre.
+     * @param id identifiant du livre
+     */
+    record Remove(long id) implements Change {
+    }
+}
@@ -0,0 +1,46 @@
+package fr.cactusstudio.bibliofx.model;
+
+import java.util.Locale;
+
+/**
+ * Statut de lecture d'un livre, avec son libellé affiché et enregistré.
+ * <p>
+ * L'ordre des constantes est l'ordre de tri (non lu, en cours de lecture, lu).
+ */
+public enum ReadingStatus {
+    /** Pas encore lu (statut par défaut). */
+    NOT_READ("Non lu"),
+    /** En cours de lecture. */
+    READING("En cours de lecture"),
+    /** Lu. */
+    READ("Lu");
+
+    private final String label;
+
+    ReadingStatus(String label) {
+        this.label = label;
+    }
+
+    /** @return le libellé ("Non lu", "En cours de lecture" ou "Lu") */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @param text libellé, sans tenir compte de la casse ni des espaces autour
+     * @return le statut correspondant; {@link #NOT_READ} si le texte est vide ou inconnu
+     */
+    public static ReadingStatus parse(String text) {
+        if (text == null) return NOT_READ;
+        return switch (text.trim().toLowerCase(Locale.ROOT)) {
+            case "en cours de lecture", "en cours" -> READING;
+            case "lu" -> READ;
+            default -> NOT_READ;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
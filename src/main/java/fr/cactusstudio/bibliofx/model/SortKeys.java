@@ -0,0 +1,96 @@
+package fr.cactusstudio.bibliofx.model;
+
+import fr.cactusstudio.bibliofx.search.TextFolding;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Clés de tri d'un livre, calculées une fois ({@link Book#getSortKeys()}) pour que les
+ * comparaisons du tri de la table se réduisent à des comparaisons d'entiers ou de
+ * chaînes déjà normalisées.
+ * <p>
+ * Un texte est comparé sans tenir compte de la casse ni, d'abord, des accents ("école"
+ * se range entre "ecole" et "ecoles", après "éclat"); à égalité, la forme accentuée vient
+ * après la forme sans accent (normalisation de la recherche, {@link TextFolding#fold(String)}).
+ * La clé est calculée au premier tri par la colonne concernée.
+ * L'état de lecture est remplacé par son rang (non lu, en cours, lu), la date d'ajout par
+ * son horodatage.
+ */
+public final class SortKeys {
+    /** Clé d'un texte absent (reconnue par identité: rangée après toutes les autres). */
+    private static final String ABSENT = new String("");
+
+    /** Titre, valeurs absentes en dernier. */
+    public static final Comparator<Book> BY_TITLE = (a, b) -> compare(a.getSortKeys().title(), b.getSortKeys().title());
+    /** Auteur, valeurs absentes en dernier. */
+    public static final Comparator<Book> BY_AUTHOR = (a, b) -> compare(a.getSortKeys().author(), b.getSortKeys().author());
+    /** Genre, valeurs absentes en dernier. */
+    public static final Comparator<Book> BY_GENRE = (a, b) -> compare(a.getSortKeys().genre(), b.getSortKeys().genre());
+    /** Année de publication. */
+    public static final Comparator<Book> BY_YEAR = (a, b) -> Integer.compare(a.getYear(), b.getYear());
+    /** Disponibilité: empruntés d'abord. */
+    public static final Comparator<Book> BY_AVAILABLE = (a, b) -> Boolean.compare(a.isAvailable(), b.isAvailable());
+    /** Etat de lecture: non lu, en cours de lecture, lu. */
+    public static final Comparator<Book> BY_READING_STATUS =
+            (a, b) -> Integer.compare(a.getSortKeys().readingRank, b.getSortKeys().readingRank);
+    /** Date d'ajout: livres sans date d'abord. */
+    public static final Comparator<Book> BY_ADDED_AT = (a, b) -> Long.compare(a.getSortKeys().addedAt, b.getSortKeys().addedAt);
+
+    private final Book book;
+    private final int readingRank;
+    /** Horodatage d'ajout, 0 si inconnu. */
+    private final long addedAt;
+    // Clés des textes (null: pas encore calculée)
+    private String title;
+    private String author;
+    private String genre;
+
+    SortKeys(Book book) {
+        this.book = book;
+        this.readingRank = book.getStatus().ordinal();
+        this.addedAt = book.getAddedAt();
+    }
+
+    private String title() {
+        if (title == null) title = key(book.getTitle());
+        return title;
+    }
+
+    private String author() {
+        if (author == null) author = key(book.getAuthor());
+        return author;
+    }
+
+    private String genre() {
+        if (genre == null) genre = key(book.getGenre());
+        return genre;
+    }
+
+    /**
+     * Clé de tri d'un texte, pour trier des valeurs qui ne sont pas dans un {@link Book}
+     * (même ordre que les comparateurs de texte de cette classe).
+     * @param text texte
+     * @return la clé, à comparer avec {@link String#compareTo(String)}; null pour un texte absent
+     */
+    public static String textKey(String text) {
+        return text == null ? null : key(text);
+    }
+
+    /**
+     * @return la forme sans accent ni majuscule, suivie (si elle diffère) d'un séparateur
+     * inférieur à tout caractère et de la forme en minuscules, qui départage les accents;
+     * {@link #ABSENT} pour un texte absent
+     */
+    private static String key(String text) {
+        if (text == null) return ABSENT;
+        String primary = TextFolding.fold(text);
+        String lower = text.toLowerCase(Locale.ROOT);
+        return primary.equals(lower) ? primary : primary + '\0' + lower;
+    }
+
+    private static int compare(String a, String b) {
+        if (a == ABSENT || b == ABSENT) return a == b ? 0 : (a == ABSENT ? 1 : -1);
+        return a.compareTo(b);
+    }
+}
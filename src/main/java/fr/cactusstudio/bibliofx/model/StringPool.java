@@ -0,0 +1,37 @@
+package fr.cactusstudio.bibliofx.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionnaire de chaînes canoniques: des valeurs égales lues séparément (un même auteur
+ * sur des milliers de lignes) partagent une seule instance au lieu d'une copie par livre.
+ * <p>
+ * Réservé aux colonnes répétitives (auteur, genre); les valeurs ne sont jamais retirées.
+ * Utilisable depuis n'importe quel thread.
+ */
+public final class StringPool {
+    /** Auteurs. */
+    public static final StringPool AUTHORS = new StringPool();
+    /** Genres. */
+    public static final StringPool GENRES = new StringPool();
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+
+    private StringPool() {
+    }
+
+    /**
+     * @param s chaîne (null accepté)
+     * @return l'instance canonique égale à {@code s}
+     */
+    public String intern(String s) {
+        if (s == null) return null;
+        String canonical = values.putIfAbsent(s, s);
+        return canonical != null ? canonical : s;
+    }
+
+    /** @return le nombre de valeurs distinctes */
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,109 @@
+package fr.cactusstudio.bibliofx.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Résumé d'un livre, gardé hors de l'objet livre sous forme compacte: octets UTF-8,
+ * compressés (Deflate) au-delà de {@value #COMPRESS_FROM} octets quand le gain dépasse
+ * un quart. Le texte n'est reconstitué qu'à la demande ({@link #text()}: panneau de
+ * détails, formulaire, indexation, écriture), sans être gardé.
+ * <p>
+ * Immuable: une même instance est partagée par un {@link Book} et ses
+ * {@link BookRecord}, et deux résumés se comparent sans décompression.
+ */
+public final class SummaryText implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    /** Taille (octets UTF-8) à partir de laquelle la compression est tentée. */
+    private static final int COMPRESS_FROM = 256;
+
+    private final byte[] data;
+    /** Taille du texte décompressé (octets UTF-8), ou -1 si {@link #data} n'est pas compressé. */
+    private final int inflatedLength;
+
+    private SummaryText(byte[] data, int inflatedLength) {
+        this.data = data;
+        this.inflatedLength = inflatedLength;
+    }
+
+    /**
+     * @param text résumé (null accepté)
+     * @return sa forme compacte, ou null
+     */
+    public static SummaryText of(String text) {
+        if (text == null) return null;
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length < COMPRESS_FROM) return new SummaryText(utf8, -1);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            // Sortie limitée aux trois quarts: au-delà, la compression ne vaut pas son coût
+            byte[] out = new byte[utf8.length - utf8.length / 4];
+            int len = deflater.deflate(out);
+            if (!deflater.finished()) return new SummaryText(utf8, -1);
+            return new SummaryText(Arrays.copyOf(out, len), utf8.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param summary résumé compact (null accepté)
+     * @return le texte, ou null
+     */
+    public static String text(SummaryText summary) {
+        return summary == null ? null : summary.text();
+    }
+
+    /** @return le texte du résumé */
+    public String text() {
+        if (inflatedLength < 0) return new String(data, StandardCharsets.UTF_8);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[inflatedLength];
+            int len = 0;
+            while (len < out.length && !inflater.finished()) {
+                int n = inflater.inflate(out, len, out.length - len);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                len += n;
+            }
+            return new String(out, 0, len, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            // Données produites par of(): ne peut arriver que par corruption mémoire
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** @return la place occupée par les données (octets) */
+    public int storedSize() {
+        return data.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SummaryText other)) return false;
+        // Compression déterministe: des textes égaux donnent les mêmes octets
+        return inflatedLength == other.inflatedLength && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(data);
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
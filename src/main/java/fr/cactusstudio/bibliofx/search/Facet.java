@@ -0,0 +1,70 @@
+package fr.cactusstudio.bibliofx.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index d'un critère de filtre (genre, état de lecture, disponibilité): pour chaque
+ * valeur, l'ensemble compressé des documents qui la portent.
+ * <p>
+ * La valeur de chaque document est conservée pour pouvoir le retirer et renuméroter
+ * les ensembles. Une valeur qui ne concerne plus aucun document disparaît.
+ * Non synchronisé (voir {@link SearchIndex}).
+ * @param <K> type des valeurs
+ */
+final class Facet<K> {
+    private final Map<K, RoaringBitmap> docs = new HashMap<>();
+    /** Numéro de document → valeur (null: aucune). */
+    private Object[] valueOf = new Object[1024];
+
+    /** @return les valeurs portées par au moins un document */
+    Set<K> values() {
+        return docs.keySet();
+    }
+
+    /** @return les documents portant la valeur (à ne pas modifier), ou null s'il n'y en a aucun */
+    RoaringBitmap get(K value) {
+        return docs.get(value);
+    }
+
+    /**
+     * @param doc   numéro de document (non indexé dans ce critère)
+     * @param value valeur du document (null: aucune)
+     */
+    void add(int doc, K value) {
+        if (doc >= valueOf.length) valueOf = Arrays.copyOf(valueOf, Math.max(doc + 1, valueOf.length * 2));
+        valueOf[doc] = value;
+        if (value != null) docs.computeIfAbsent(value, k -> new RoaringBitmap()).add(doc);
+    }
+
+    /** @param doc numéro de document à retirer */
+    void remove(int doc) {
+        if (doc >= valueOf.length || valueOf[doc] == null) return;
+        Object value = valueOf[doc];
+        valueOf[doc] = null;
+        RoaringBitmap b = docs.get(value);
+        b.remove(doc);
+        if (b.isEmpty()) docs.remove(value);
+    }
+
+    void clear() {
+        docs.clear();
+        valueOf = new Object[1024];
+    }
+
+    /**
+     * Applique une renumérotation des documents et reconstruit les ensembles.
+     * @param renumber nouveau numéro de chaque document (-1: retiré)
+     */
+    @SuppressWarnings("unchecked")
+    void renumber(int[] renumber) {
+        Object[] old = valueOf;
+        docs.clear();
+        valueOf = new Object[Math.max(1024, old.length)];
+        for (int d = 0; d < renumber.length && d < old.length; d++) {
+            if (renumber[d] >= 0 && old[d] != null) add(renumber[d], (K) old[d]);
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package fr.cactusstudio.bibliofx.search;
+
+import java.util.Arrays;
+
+/**
+ * Ensemble d'entiers positifs compressé, à la manière des « roaring bitmaps ».
+ * <p>
+ * Les valeurs sont regroupées par tranche de 65 536 (16 bits de poids fort). Une tranche
+ * creuse (au plus 4096 valeurs) est un tableau trié; une tranche dense est une carte de
+ * 65 536 bits (8 Kio). Les opérations ensemblistes traitent les tranches deux à deux et
+ * ne parcourent que celles présentes des deux côtés (intersection) ou d'un côté (union).
+ * <p>
+ * Modifiable, non synchronisé. Les résultats des opérations ne partagent rien avec
+ * leurs opérandes.
+ */
+public final class RoaringBitmap {
+    /** Nombre maximal de valeurs d'une tranche stockée en tableau. */
+    private static final int ARRAY_MAX = 4096;
+    /** Nombre de mots de 64 bits d'une tranche dense. */
+    private static final int WORDS = 1 << 10;
+
+    /** Clés (16 bits de poids fort) des tranches présentes, triées. */
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * @param x valeur à ajouter (positive)
+     */
+    public void add(int x) {
+        char key = (char) (x >>> 16);
+        int i = find(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) x);
+        } else {
+            insert(-i - 1, key, new ArrayContainer().add((char) x));
+        }
+    }
+
+    /**
+     * @param x valeur à retirer
+     */
+    public void remove(int x) {
+        int i = find((char) (x >>> 16));
+        if (i < 0) return;
+        Container c = containers[i].remove((char) x);
+        if (c.cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        } else {
+            containers[i] = c;
+        }
+    }
+
+    /** @return true si {@code x} appartient à l'ensemble */
+    public boolean contains(int x) {
+        int i = find((char) (x >>> 16));
+        return i >= 0 && containers[i].contains((char) x);
+    }
+
+    /** @return true si l'ensemble est vide */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return le nombre de valeurs */
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++) n += containers[i].cardinality();
+        return n;
+    }
+
+    /** @return l'intersection des deux ensembles */
+    public RoaringBitmap and(RoaringBitmap o) {
+        RoaringBitmap r = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < o.size) {
+            if (keys[i] < o.keys[j]) {
+                i++;
+            } else if (keys[i] > o.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i].and(o.containers[j]);
+                if (c.cardinality() > 0) r.append(keys[i], c);
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    /** @return l'union des deux ensembles */
+    public RoaringBitmap or(RoaringBitmap o) {
+        RoaringBitmap r = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < o.size) {
+            if (j == o.size || (i < size && keys[i] < o.keys[j])) {
+                r.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > o.keys[j]) {
+                r.append(o.keys[j], o.containers[j].copy());
+                j++;
+            } else {
+                r.append(keys[i], containers[i].or(o.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    /** @return le nombre de valeurs communes aux deux ensembles (sans construire l'intersection) */
+    public int andCardinality(RoaringBitmap o) {
+        int n = 0;
+        int i = 0, j = 0;
+        while (i < size && j < o.size) {
+            if (keys[i] < o.keys[j]) {
+                i++;
+            } else if (keys[i] > o.keys[j]) {
+                j++;
+            } else {
+                n += containers[i].andCardinality(o.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @param words carte de bits (bit {@code x} du mot {@code x >> 6} pour la valeur x)
+     * @return l'ensemble des valeurs présentes dans la carte
+     */
+    public static RoaringBitmap fromBitset(long[] words) {
+        RoaringBitmap r = new RoaringBitmap();
+        for (int from = 0; from < words.length; from += WORDS) {
+            int to = Math.min(words.length, from + WORDS);
+            int card = 0;
+            for (int w = from; w < to; w++) card += Long.bitCount(words[w]);
+            if (card == 0) continue;
+            Container c;
+            if (card <= ARRAY_MAX) {
+                char[] values = new char[card];
+                int n = 0;
+                for (int w = from; w < to; w++) {
+                    for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+                        values[n++] = (char) (((w - from) << 6) + Long.numberOfTrailingZeros(bits));
+                    }
+                }
+                c = new ArrayContainer(values, card);
+            } else {
+                c = new BitmapContainer(Arrays.copyOfRange(words, from, from + WORDS), card);
+            }
+            r.append((char) (from / WORDS), c);
+        }
+        return r;
+    }
+
+    /**
+     * @param limit borne (exclue) des valeurs à reporter
+     * @return la carte de bits des valeurs inférieures à {@code limit}
+     */
+    public long[] toBitset(int limit) {
+        long[] words = new long[(limit + 63) >> 6];
+        for (int i = 0; i < size; i++) containers[i].fill(words, keys[i] * WORDS);
+        // Valeurs au-delà de la borne dans le dernier mot
+        if ((limit & 63) != 0 && words.length > 0) words[words.length - 1] &= (1L << limit) - 1;
+        return words;
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int at, char key, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = c;
+        size++;
+    }
+
+    /** Ajoute une tranche de clé supérieure à toutes les autres. */
+    private void append(char key, Container c) {
+        insert(size, key, c);
+    }
+
+    /** Tranche de 65 536 valeurs possibles. Les modifications retournent la tranche à utiliser. */
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+        abstract int cardinality();
+
+        abstract boolean contains(char x);
+
+        abstract Container add(char x);
+
+        abstract Container remove(char x);
+
+        abstract Container and(Container o);
+
+        abstract Container or(Container o);
+
+        abstract int andCardinality(Container o);
+
+        abstract Container copy();
+
+        /** Reporte les valeurs dans une carte de bits, à partir du mot {@code base}. */
+        abstract void fill(long[] words, int base);
+    }
+
+    /** Tranche creuse: valeurs triées. */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int card;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int card) {
+            this.values = values;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return Arrays.binarySearch(values, 0, card, x) >= 0;
+        }
+
+        @Override
+        Container add(char x) {
+            int i = Arrays.binarySearch(values, 0, card, x);
+            if (i >= 0) return this;
+            if (card == ARRAY_MAX) return toBitmap().add(x);
+            i = -i - 1;
+            if (card == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, card * 2));
+            System.arraycopy(values, i, values, i + 1, card - i);
+            values[i] = x;
+            card++;
+            return this;
+        }
+
+        @Override
+        Container remove(char x) {
+            int i = Arrays.binarySearch(values, 0, card, x);
+            if (i < 0) return this;
+            System.arraycopy(values, i + 1, values, i, card - i - 1);
+            card--;
+            return this;
+        }
+
+        @Override
+        Container and(Container o) {
+            char[] out = new char[card];
+            int n = 0;
+            if (o instanceof ArrayContainer a) {
+                int i = 0, j = 0;
+                while (i < card && j < a.card) {
+                    if (values[i] < a.values[j]) i++;
+                    else if (values[i] > a.values[j]) j++;
+                    else {
+                        out[n++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < card; i++) {
+                    if (o.contains(values[i])) out[n++] = values[i];
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+
+        @Override
+        Container or(Container o) {
+            if (o instanceof BitmapContainer b) return b.or(this);
+            ArrayContainer a = (ArrayContainer) o;
+            if (card + a.card > ARRAY_MAX) return toBitmap().or(a);
+            char[] out = new char[card + a.card];
+            int n = 0, i = 0, j = 0;
+            while (i < card || j < a.card) {
+                if (j == a.card || (i < card && values[i] < a.values[j])) out[n++] = values[i++];
+                else if (i == card || values[i] > a.values[j]) out[n++] = a.values[j++];
+                else {
+                    out[n++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+
+        @Override
+        int andCardinality(Container o) {
+            int n = 0;
+            if (o instanceof ArrayContainer a) {
+                int i = 0, j = 0;
+                while (i < card && j < a.card) {
+                    if (values[i] < a.values[j]) i++;
+                    else if (values[i] > a.values[j]) j++;
+                    else {
+                        n++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < card; i++) {
+                    if (o.contains(values[i])) n++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(card, 1)), card);
+        }
+
+        @Override
+        void fill(long[] words, int base) {
+            for (int i = 0; i < card; i++) {
+                int w = base + (values[i] >> 6);
+                if (w < words.length) words[w] |= 1L << values[i];
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < card; i++) words[values[i] >> 6] |= 1L << values[i];
+            return new BitmapContainer(words, card);
+        }
+    }
+
+    /** Tranche dense: carte de 65 536 bits. */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int card;
+
+        BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return (words[x >> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        Container add(char x) {
+            long before = words[x >> 6];
+            words[x >> 6] = before | (1L << x);
+            if (before != words[x >> 6]) card++;
+            return this;
+        }
+
+        @Override
+        Container remove(char x) {
+            long before = words[x >> 6];
+            words[x >> 6] = before & ~(1L << x);
+            if (before == words[x >> 6]) return this;
+            card--;
+            return card <= ARRAY_MAX ? toArray(words, card) : this;
+        }
+
+        @Override
+        Container and(Container o) {
+            if (o instanceof ArrayContainer a) return a.and(this);
+            long[] other = ((BitmapContainer) o).words;
+            long[] out = new long[WORDS];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                out[w] = words[w] & other[w];
+                n += Long.bitCount(out[w]);
+            }
+            return n <= ARRAY_MAX ? toArray(out, n) : new BitmapContainer(out, n);
+        }
+
+        @Override
+        Container or(Container o) {
+            long[] out = words.clone();
+            if (o instanceof ArrayContainer a) {
+                int n = card;
+                for (int i = 0; i < a.card; i++) {
+                    char x = a.values[i];
+                    if ((out[x >> 6] & (1L << x)) == 0) {
+                        out[x >> 6] |= 1L << x;
+                        n++;
+                    }
+                }
+                return new BitmapContainer(out, n);
+            }
+            long[] other = ((BitmapContainer) o).words;
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                out[w] |= other[w];
+                n += Long.bitCount(out[w]);
+            }
+            return new BitmapContainer(out, n);
+        }
+
+        @Override
+        int andCardinality(Container o) {
+            if (o instanceof ArrayContainer a) return a.andCardinality(this);
+            long[] other = ((BitmapContainer) o).words;
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) n += Long.bitCount(words[w] & other[w]);
+            return n;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), card);
+        }
+
+        @Override
+        void fill(long[] out, int base) {
+            int len = Math.min(WORDS, out.length - base);
+            for (int w = 0; w < len; w++) out[base + w] |= words[w];
+        }
+
+        private static ArrayContainer toArray(long[] words, int card) {
+            char[] values = new char[card];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+                    values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(bits));
+                }
+            }
+            return new ArrayContainer(values, card);
+        }
+    }
+}
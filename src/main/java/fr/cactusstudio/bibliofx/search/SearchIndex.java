@@ -0,0 +1,432 @@
+package fr.cactusstudio.bibliofx.search;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.storage.PersistentHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Index inversé plein texte des livres (titre, auteur, genre, résumé), et index des
+ * critères de filtre (genre, état de lecture, disponibilité).
+ * <p>
+ * Chaque mot normalisé ({@link TextFolding}) renvoie à la liste triée des documents qui
+ * le contiennent. Une requête est découpée de la même façon; chaque mot de la requête
+ * est un préfixe (saisie au fil de la frappe) et les résultats de tous les mots sont
+ * intersectés. Le coût d'une recherche dépend du nombre d'occurrences des mots
+ * concernés, pas du nombre de livres.
+ * <p>
+ * Les mots sont rangés dans une table de hachage; la recherche par préfixe utilise une
+ * copie triée du vocabulaire, refaite au besoin (les mots apparus depuis sont parcourus
+ * tant qu'ils sont peu nombreux).
+ * <p>
+ * Un livre indexé reçoit un numéro de document croissant: les listes restent triées par
+ * simple ajout en fin. Modifier ou retirer un livre retire son numéro (il est ignoré à la
+ * recherche); les listes sont réécrites lorsque les numéros retirés deviennent majoritaires.
+ * <p>
+ * Chaque valeur d'un critère renvoie à l'ensemble compressé ({@link RoaringBitmap}) des
+ * documents qui la portent, sous les mêmes numéros. Un filtre combiné devient une suite
+ * d'unions (valeurs d'un même critère) et d'intersections (critères différents), le
+ * résultat de la recherche plein texte étant intersecté en dernier; les mêmes ensembles
+ * donnent le nombre de livres de chaque valeur.
+ * <p>
+ * Non synchronisé: l'index est modifié depuis le thread JavaFX. Le résultat d'une
+ * recherche ne dépend que d'une version immuable de l'index (correspondance identifiant
+ * → document persistante): il peut être évalué sur d'autres threads.
+ */
+public final class SearchIndex {
+    /** Nombre minimal de documents retirés avant de réécrire les listes. */
+    private static final int COMPACT_MIN_DEAD = 1024;
+    /** Nombre de mots nouveaux au-delà duquel le vocabulaire est trié de nouveau. */
+    private static final int MAX_UNSORTED_TERMS = 1024;
+
+    /** Mot → documents qui le contiennent (numéros croissants). */
+    private final Map<String, Postings> terms = new HashMap<>();
+    /** Vocabulaire trié et listes correspondantes (null: à refaire). */
+    private String[] sortedTerms;
+    private Postings[] sortedPostings;
+    /** Mots apparus depuis le dernier tri. */
+    private final List<String> newTerms = new ArrayList<>();
+    /** Identifiant de livre → numéro de document courant. */
+    private PersistentHashMap<Long, Integer> docOf = PersistentHashMap.empty();
+    /** Numéro de document → identifiant de livre. */
+    private long[] ids = new long[1024];
+    /** Documents retirés (un bit par numéro). */
+    private long[] dead = new long[16];
+    private int docCount;
+    private int deadCount;
+    /** Genre (tel quel) → documents. */
+    private final Facet<String> genres = new Facet<>();
+    /** État de lecture (en minuscules) → documents. */
+    private final Facet<String> readingStatuses = new Facet<>();
+    /** Disponibilité → documents. */
+    private final Facet<Boolean> availability = new Facet<>();
+
+    /**
+     * Filtre combiné.
+     * @param text          texte recherché (null ou sans mot: pas de recherche)
+     * @param genres        genres acceptés (null ou vide: tous)
+     * @param onlyAvailable true pour ne retenir que les livres disponibles
+     * @param readingStatus état de lecture accepté, sans tenir compte de la casse (null: tous)
+     */
+    public record Query(String text, Collection<String> genres, boolean onlyAvailable, String readingStatus) {
+    }
+
+    /**
+     * Nombre de livres de chaque valeur des critères. Le nombre d'une valeur tient compte
+     * de la recherche et des autres critères du filtre, pas du critère dont elle fait partie.
+     * @param genres          genre → nombre de livres
+     * @param readingStatuses état de lecture (en minuscules) → nombre de livres
+     * @param available       nombre de livres disponibles
+     * @param total           nombre de livres retenus par le filtre entier
+     */
+    public record Counts(Map<String, Integer> genres, Map<String, Integer> readingStatuses, int available, int total) {
+    }
+
+    /** @return le nombre de livres indexés */
+    public int size() {
+        return docOf.size();
+    }
+
+    /** Vide l'index. */
+    public void clear() {
+        terms.clear();
+        sortedTerms = null;
+        sortedPostings = null;
+        newTerms.clear();
+        docOf = PersistentHashMap.empty();
+        ids = new long[1024];
+        dead = new long[16];
+        docCount = 0;
+        deadCount = 0;
+        genres.clear();
+        readingStatuses.clear();
+        availability.clear();
+    }
+
+    /**
+     * Indexe un livre (remplace la version précédente de même identifiant).
+     * @param b livre
+     */
+    public void add(Book b) {
+        remove(b.getId());
+        docOf = docOf.plus(b.getId(), index(b));
+    }
+
+    /**
+     * Indexe des livres; plus rapide que des appels successifs à {@link #add(Book)}
+     * lorsque l'index est vide (chargement d'une bibliothèque).
+     * @param books livres
+     */
+    public void addAll(Collection<? extends Book> books) {
+        if (docOf.size() > 0 || books.size() < 2) {
+            for (Book b : books) add(b);
+            return;
+        }
+        int first = docCount;
+        for (Book b : books) index(b);
+        docOf = PersistentHashMap.of(docCount - first, i -> ids[first + i], i -> first + i);
+        if (docOf.size() < docCount - first) {
+            // Identifiants en double: seule la dernière version reste trouvable
+            for (int d = first; d < docCount; d++) {
+                if (docOf.get(ids[d]) != d) retire(d);
+            }
+        }
+    }
+
+    /** Ajoute les mots et les critères d'un livre sous un nouveau numéro de document. */
+    private int index(Book b) {
+        int doc = docCount++;
+        if (doc == ids.length) ids = Arrays.copyOf(ids, doc * 2);
+        if ((doc >> 6) >= dead.length) dead = Arrays.copyOf(dead, dead.length * 2);
+        ids[doc] = b.getId();
+        for (String field : fields(b)) {
+            for (String t : TextFolding.tokens(field)) {
+                Postings p = terms.get(t);
+                if (p == null) {
+                    p = new Postings();
+                    terms.put(t, p);
+                    newTerms.add(t);
+                }
+                p.add(doc);
+            }
+        }
+        String genre = b.getGenre();
+        genres.add(doc, genre == null || genre.isBlank() ? null : genre);
+        readingStatuses.add(doc, statusKey(b.getReadingStatus()));
+        availability.add(doc, b.isAvailable());
+        return doc;
+    }
+
+    /**
+     * Retire un livre de l'index.
+     * @param b livre
+     */
+    public void remove(Book b) {
+        remove(b.getId());
+    }
+
+    private void remove(long id) {
+        Integer doc = docOf.get(id);
+        if (doc == null) return;
+        docOf = docOf.minus(id);
+        retire(doc);
+        if (deadCount >= COMPACT_MIN_DEAD && deadCount > docOf.size()) compact();
+    }
+
+    /** Marque un document retiré et le sort des critères (les listes de mots sont réécrites plus tard). */
+    private void retire(int doc) {
+        dead[doc >> 6] |= 1L << doc;
+        deadCount++;
+        genres.remove(doc);
+        readingStatuses.remove(doc);
+        availability.remove(doc);
+    }
+
+    /**
+     * Recherche les livres contenant tous les mots de la requête (chaque mot pouvant
+     * être le début d'un mot indexé), sans tenir compte des accents ni de la casse.
+     * @param query texte saisi
+     * @return le prédicat des livres trouvés, ou null si la requête ne contient aucun mot
+     */
+    public Predicate<Book> search(String query) {
+        return filter(new Query(query, null, false, null));
+    }
+
+    /**
+     * Évalue un filtre combiné: critères d'abord, recherche plein texte intersectée en dernier.
+     * @param q filtre
+     * @return le prédicat des livres retenus, ou null si le filtre retient tout
+     */
+    public Predicate<Book> filter(Query q) {
+        String[] words = words(q.text());
+        RoaringBitmap selected = and(genreDocs(q), availableDocs(q), statusDocs(q));
+        if (words.length == 0 && selected == null) return null;
+        long[] bits;
+        if (selected == null) {
+            bits = textHits(words);
+        } else {
+            if (words.length > 0) selected = selected.and(RoaringBitmap.fromBitset(textHits(words)));
+            bits = selected.toBitset(docCount);
+        }
+        return new Hits(bits, docOf, q, words);
+    }
+
+    /**
+     * @param q filtre
+     * @return le nombre de livres de chaque valeur des critères, compte tenu du reste du filtre
+     */
+    public Counts counts(Query q) {
+        String[] words = words(q.text());
+        RoaringBitmap text = words.length == 0 ? null : RoaringBitmap.fromBitset(textHits(words));
+        RoaringBitmap genre = genreDocs(q);
+        RoaringBitmap available = availableDocs(q);
+        RoaringBitmap status = statusDocs(q);
+
+        Map<String, Integer> genreCounts = new HashMap<>();
+        RoaringBitmap within = and(text, available, status);
+        for (String g : genres.values()) genreCounts.put(g, count(genres.get(g), within));
+        Map<String, Integer> statusCounts = new HashMap<>();
+        within = and(text, genre, available);
+        for (String rs : readingStatuses.values()) statusCounts.put(rs, count(readingStatuses.get(rs), within));
+        int availableCount = count(availability.get(true), and(text, genre, status));
+        RoaringBitmap all = and(text, genre, available, status);
+        return new Counts(genreCounts, statusCounts, availableCount, all == null ? docOf.size() : all.cardinality());
+    }
+
+    /** @return les mots distincts de la requête, les plus longs d'abord (en général les plus sélectifs) */
+    private static String[] words(String query) {
+        return TextFolding.tokens(query).stream().distinct().sorted((a, b) -> b.length() - a.length()).toArray(String[]::new);
+    }
+
+    /** @return les documents contenant tous les mots (au moins un mot) */
+    private long[] textHits(String[] words) {
+        int words64 = (docCount + 63) >> 6;
+        long[] hits = null;
+        for (String w : words) {
+            long[] matches = new long[words64];
+            boolean any = false;
+            for (Postings p : prefixed(w)) {
+                for (int i = 0; i < p.size; i++) {
+                    int d = p.docs[i];
+                    // Intersection au fil de l'union: inutile de marquer un document déjà écarté
+                    if (hits == null || (hits[d >> 6] & (1L << d)) != 0) {
+                        matches[d >> 6] |= 1L << d;
+                        any = true;
+                    }
+                }
+            }
+            hits = matches;
+            if (!any) break;
+        }
+        for (int i = 0; i < words64; i++) hits[i] &= ~dead[i];
+        return hits;
+    }
+
+    /** @return les documents des genres demandés, ou null si le genre n'est pas filtré */
+    private RoaringBitmap genreDocs(Query q) {
+        if (q.genres() == null || q.genres().isEmpty()) return null;
+        RoaringBitmap out = new RoaringBitmap();
+        for (String g : q.genres()) {
+            RoaringBitmap docs = genres.get(g);
+            if (docs != null) out = out.or(docs);
+        }
+        return out;
+    }
+
+    private RoaringBitmap availableDocs(Query q) {
+        if (!q.onlyAvailable()) return null;
+        RoaringBitmap docs = availability.get(true);
+        return docs != null ? docs : new RoaringBitmap();
+    }
+
+    private RoaringBitmap statusDocs(Query q) {
+        if (q.readingStatus() == null) return null;
+        RoaringBitmap docs = readingStatuses.get(statusKey(q.readingStatus()));
+        return docs != null ? docs : new RoaringBitmap();
+    }
+
+    /** @return l'intersection des ensembles non null (null si tous le sont: aucune restriction) */
+    private static RoaringBitmap and(RoaringBitmap... sets) {
+        RoaringBitmap out = null;
+        for (RoaringBitmap s : sets) {
+            if (s != null) out = out == null ? s : out.and(s);
+        }
+        return out;
+    }
+
+    private static int count(RoaringBitmap docs, RoaringBitmap within) {
+        if (docs == null) return 0;
+        return within == null ? docs.cardinality() : docs.andCardinality(within);
+    }
+
+    private static String statusKey(String readingStatus) {
+        return readingStatus == null ? null : readingStatus.toLowerCase(Locale.ROOT);
+    }
+
+    /** @return les listes des mots commençant par {@code prefix} */
+    private List<Postings> prefixed(String prefix) {
+        if (sortedTerms == null || newTerms.size() > MAX_UNSORTED_TERMS) sortTerms();
+        List<Postings> out = new ArrayList<>();
+        int i = Arrays.binarySearch(sortedTerms, prefix);
+        if (i < 0) i = -i - 1;
+        for (; i < sortedTerms.length && sortedTerms[i].startsWith(prefix); i++) out.add(sortedPostings[i]);
+        for (String t : newTerms) {
+            if (t.startsWith(prefix)) out.add(terms.get(t));
+        }
+        return out;
+    }
+
+    private void sortTerms() {
+        sortedTerms = terms.keySet().toArray(new String[0]);
+        Arrays.sort(sortedTerms);
+        sortedPostings = new Postings[sortedTerms.length];
+        for (int i = 0; i < sortedTerms.length; i++) sortedPostings[i] = terms.get(sortedTerms[i]);
+        newTerms.clear();
+    }
+
+    /** Réécrit les listes sans les documents retirés (numéros compactés, ordre conservé). */
+    private void compact() {
+        int[] renumber = new int[docCount];
+        int n = 0;
+        for (int d = 0; d < docCount; d++) {
+            if ((dead[d >> 6] & (1L << d)) != 0) {
+                renumber[d] = -1;
+            } else {
+                renumber[d] = n;
+                ids[n++] = ids[d];
+            }
+        }
+        docOf = PersistentHashMap.of(n, i -> ids[i], i -> i);
+        genres.renumber(renumber);
+        readingStatuses.renumber(renumber);
+        availability.renumber(renumber);
+        if (terms.values().removeIf(p -> p.renumber(renumber) == 0)) {
+            sortedTerms = null;
+            sortedPostings = null;
+        }
+        docCount = n;
+        deadCount = 0;
+        dead = new long[Math.max(16, dead.length)];
+    }
+
+    private static String[] fields(Book b) {
+        return new String[]{b.getTitle(), b.getAuthor(), b.getGenre(), b.getSummary()};
+    }
+
+    /** Liste de documents, triée et sans doublon. */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int size;
+
+        void add(int doc) {
+            // Un mot répété dans un même livre n'est noté qu'une fois
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+
+        /** @return le nombre de documents restants */
+        int renumber(int[] renumber) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                int d = renumber[docs[i]];
+                if (d >= 0) docs[n++] = d;
+            }
+            size = n;
+            if (docs.length > 2 * n + 2) docs = Arrays.copyOf(docs, n + 2);
+            return n;
+        }
+    }
+
+    /**
+     * Résultat d'un filtre, lié à la version de l'index qui l'a produit (immuable).
+     * Un livre absent de cette version (ajouté depuis) est comparé directement au filtre.
+     */
+    private static final class Hits implements Predicate<Book> {
+        private final long[] bits;
+        private final PersistentHashMap<Long, Integer> docOf;
+        private final Query query;
+        private final String[] words;
+
+        Hits(long[] bits, PersistentHashMap<Long, Integer> docOf, Query query, String[] words) {
+            this.bits = bits;
+            this.docOf = docOf;
+            this.query = query;
+            this.words = words;
+        }
+
+        @Override
+        public boolean test(Book b) {
+            Integer doc = docOf.get(b.getId());
+            if (doc == null) return matches(b);
+            return (bits[doc >> 6] & (1L << doc)) != 0;
+        }
+
+        private boolean matches(Book b) {
+            if (query.genres() != null && !query.genres().isEmpty()
+                    && (b.getGenre() == null || !query.genres().contains(b.getGenre()))) return false;
+            if (query.onlyAvailable() && !b.isAvailable()) return false;
+            if (query.readingStatus() != null && !query.readingStatus().equalsIgnoreCase(b.getReadingStatus())) return false;
+            List<String> tokens = new ArrayList<>();
+            for (String field : fields(b)) tokens.addAll(TextFolding.tokens(field));
+            for (String w : words) {
+                boolean found = false;
+                for (String t : tokens) {
+                    if (t.startsWith(w)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fr.cactusstudio.bibliofx.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Normalisation du texte pour la recherche: minuscules, accents retirés ("é" → "e",
+ * "ç" → "c"), ligatures développées ("œ" → "oe", "æ" → "ae"), et découpage en mots
+ * (lettres et chiffres; apostrophes, tirets et ponctuation séparent les mots).
+ * <p>
+ * Les caractères latins courants passent par une table précalculée; les autres sont
+ * décomposés à la demande ({@link Normalizer}). La même normalisation sert aux clés de tri
+ * ({@link #fold(String)}).
+ */
+public final class TextFolding {
+    /** Dernier caractère couvert par la table (fin de « Latin étendu B »). */
+    private static final char TABLE_END = 'ɏ';
+    /** Forme normalisée de chaque caractère de la table ("" pour un séparateur). */
+    private static final String[] TABLE = new String[TABLE_END + 1];
+
+    static {
+        for (char c = 0; c <= TABLE_END; c++) TABLE[c] = decompose(c);
+        TABLE['œ'] = TABLE['Œ'] = "oe";
+        TABLE['æ'] = TABLE['Æ'] = "ae";
+        TABLE['ß'] = "ss";
+    }
+
+    private TextFolding() {
+    }
+
+    /**
+     * @param text texte (peut être null)
+     * @return les mots normalisés du texte, dans l'ordre (avec répétitions)
+     */
+    public static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        StringBuilder word = new StringBuilder(16);
+        for (int i = 0; i < text.length(); i++) {
+            String f = fold(text.charAt(i));
+            if (f.isEmpty()) {
+                if (!word.isEmpty()) {
+                    out.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.append(f);
+            }
+        }
+        if (!word.isEmpty()) out.add(word.toString());
+        return out;
+    }
+
+    /**
+     * Forme d'un texte entier sans majuscule ni accent, pour comparer ou trier: lettres et
+     * chiffres sont normalisés comme par {@link #tokens(String)}, les autres caractères
+     * (espaces, ponctuation) sont gardés, en minuscules.
+     * @param text texte
+     * @return la forme normalisée
+     */
+    public static String fold(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String f = fold(c);
+            if (f.isEmpty()) sb.append(Character.toLowerCase(c));
+            else sb.append(f);
+        }
+        return sb.toString();
+    }
+
+    private static String fold(char c) {
+        if (c <= TABLE_END) return TABLE[c];
+        // Caractères hors du plan de base (émojis...): séparateurs
+        if (Character.isSurrogate(c)) return "";
+        return decompose(c);
+    }
+
+    /** @return le caractère en minuscules, sans signe diacritique ("" s'il ne fait pas partie d'un mot) */
+    private static String decompose(char c) {
+        if (!Character.isLetterOrDigit(c)) return "";
+        String d = Normalizer.normalize(String.valueOf(Character.toLowerCase(c)), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(d.length());
+        for (int i = 0; i < d.length(); i++) {
+            char x = d.charAt(i);
+            if (Character.getType(x) != Character.NON_SPACING_MARK) sb.append(x);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package fr.cactusstudio.bibliofx.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Index approché par trigrammes: retrouve les textes proches d'une saisie malgré les
+ * fautes de frappe, les accents ou une saisie incomplète.
+ * <p>
+ * Chaque texte est normalisé ({@link TextFolding}, mots séparés par une espace) puis
+ * découpé en trigrammes (suites de 3 caractères, avec deux espaces au début et une à la
+ * fin pour marquer les débuts et fins de mots). Chaque trigramme liste, par numéros
+ * croissants, les documents qui le contiennent. Un document est retenu s'il partage une
+ * part minimale des trigrammes de la saisie: il figure alors forcément dans l'une des
+ * listes les plus courtes, qui donnent les candidats; les listes longues (trigrammes
+ * fréquents) ne sont consultées que par recherche dichotomique pour ces candidats. Cette
+ * part est d'abord la totalité (une seule liste à parcourir), puis abaissée jusqu'à la
+ * moitié tant qu'il n'y a pas assez de résultats.
+ * <p>
+ * Le score favorise les documents qui contiennent toute la saisie (début de titre), puis
+ * les plus courts (coefficient de Dice). Les documents sont numérotés dans l'ordre d'ajout
+ * et ne sont jamais retirés. Non synchronisé.
+ */
+public final class TrigramIndex {
+    /**
+     * Parts des trigrammes de la saisie qu'un document doit contenir, essayées dans l'ordre
+     * jusqu'à obtenir assez de résultats (la dernière est le minimum).
+     */
+    private static final double[] LEVELS = {1.0, 0.75, 0.5};
+
+    /** Ordre des résultats: score décroissant, puis ordre d'ajout. */
+    private static final Comparator<Hit> BY_SCORE = (a, b) ->
+            a.score != b.score ? Double.compare(b.score, a.score) : Integer.compare(a.doc, b.doc);
+
+    /** Trigramme → documents qui le contiennent, par numéros croissants. */
+    private final Map<Long, Postings> postings = new HashMap<>();
+    /** Nombre de trigrammes distincts de chaque document. */
+    private int[] gramCount = new int[1024];
+    private int size;
+    /** Compteurs de trigrammes communs par document, remis à zéro après chaque recherche. */
+    private int[] shared = new int[0];
+
+    /** Documents d'un trigramme. */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+
+        boolean contains(int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+        }
+    }
+
+    /**
+     * Document retenu par une recherche.
+     * @param doc   numéro du document
+     * @param score pertinence, entre 0 et 1
+     */
+    public record Hit(int doc, double score) {
+    }
+
+    /** @return le nombre de documents indexés */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param text texte du document
+     * @return le numéro attribué au document
+     */
+    public int add(String text) {
+        int doc = size++;
+        Set<Long> grams = grams(text);
+        if (doc >= gramCount.length) gramCount = Arrays.copyOf(gramCount, gramCount.length * 2);
+        gramCount[doc] = grams.size();
+        for (Long g : grams) postings.computeIfAbsent(g, k -> new Postings()).add(doc);
+        return doc;
+    }
+
+    /**
+     * @param query texte saisi
+     * @param limit nombre maximal de résultats
+     * @return les documents proches de la saisie, du plus pertinent au moins pertinent
+     */
+    public List<Hit> search(String query, int limit) {
+        Set<Long> grams = grams(query);
+        int q = grams.size();
+        if (q == 0 || limit <= 0) return List.of();
+        List<Postings> lists = new ArrayList<>(q);
+        for (Long g : grams) {
+            Postings p = postings.get(g);
+            lists.add(p != null ? p : new Postings());
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        // Exigence relâchée par paliers: une saisie exacte ne parcourt que la liste la plus courte
+        List<Hit> hits = List.of();
+        for (double level : LEVELS) {
+            hits = search(lists, Math.max(1, (int) Math.ceil(q * level)), limit);
+            if (hits.size() >= limit) break;
+        }
+        return hits;
+    }
+
+    /** @return les documents contenant au moins {@code minShared} des trigrammes (listes triées par taille) */
+    private List<Hit> search(List<Postings> lists, int minShared, int limit) {
+        int q = lists.size();
+        // Candidats: un document assez proche figure dans l'une des (q - minShared + 1) listes les plus courtes
+        int scanned = q - minShared + 1;
+        if (shared.length < size) shared = new int[Math.max(size, shared.length * 2)];
+        int[] candidates = new int[16];
+        int count = 0;
+        for (int i = 0; i < scanned; i++) {
+            Postings p = lists.get(i);
+            for (int j = 0; j < p.size; j++) {
+                int doc = p.docs[j];
+                if (shared[doc]++ == 0) {
+                    if (count == candidates.length) candidates = Arrays.copyOf(candidates, count * 2);
+                    candidates[count++] = doc;
+                }
+            }
+        }
+        // Candidats ayant le plus de trigrammes communs d'abord: le seuil des meilleurs monte vite
+        int[] order = new int[count];
+        int[] start = new int[scanned + 2];
+        for (int c = 0; c < count; c++) start[scanned - shared[candidates[c]] + 1]++;
+        for (int k = 1; k < start.length; k++) start[k] += start[k - 1];
+        for (int c = 0; c < count; c++) order[start[scanned - shared[candidates[c]]]++] = candidates[c];
+
+        // Meilleurs résultats seulement: tas des limit meilleurs, le moins bon en tête
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, BY_SCORE.reversed());
+        for (int c = 0; c < count; c++) {
+            int doc = order[c];
+            int common = shared[doc];
+            // Trigrammes communs nécessaires pour entrer parmi les meilleurs
+            int needed = minShared;
+            if (best.size() == limit) {
+                double perGram = 0.7 / q + 0.6 / (q + gramCount[doc]);
+                needed = Math.max(needed, (int) Math.floor(best.peek().score / perGram) + 1);
+            }
+            int i = scanned;
+            for (; i < q && common < needed && common + (q - i) >= needed; i++) {
+                if (lists.get(i).contains(doc)) common++;
+            }
+            if (common < needed) continue;
+            // Seuil atteint: compte exact pour le score
+            for (; i < q; i++) {
+                if (lists.get(i).contains(doc)) common++;
+            }
+            double containment = (double) common / q;
+            double dice = 2.0 * common / (q + gramCount[doc]);
+            best.add(new Hit(doc, 0.7 * containment + 0.3 * dice));
+            if (best.size() > limit) best.poll();
+        }
+        for (int c = 0; c < count; c++) shared[candidates[c]] = 0;
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(BY_SCORE);
+        return hits;
+    }
+
+    /** @return les trigrammes distincts du texte normalisé, codés sur 48 bits */
+    static Set<Long> grams(String text) {
+        Set<Long> out = new LinkedHashSet<>();
+        List<String> words = TextFolding.tokens(text);
+        if (words.isEmpty()) return out;
+        String s = "  " + String.join(" ", words) + " ";
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            out.add(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,95 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Écriture atomique de fichiers: le contenu est d'abord écrit dans un fichier temporaire
+ * voisin, puis renommé sur la cible. Un lecteur ne voit donc jamais de fichier à moitié écrit.
+ * <p>
+ * Le fichier temporaire est forcé sur disque avant le renommage, et le répertoire après
+ * (quand le système le permet): au retour de {@link #write(File, StreamAction)}, le
+ * nouveau contenu survit à une coupure de courant. Un journal dont il prend le relais
+ * peut alors être vidé sans risque.
+ */
+public final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    /** Action d'écriture du contenu. */
+    @FunctionalInterface
+    public interface WriterAction {
+        void write(Writer w) throws IOException;
+    }
+
+    /** Action d'écriture binaire du contenu. */
+    @FunctionalInterface
+    public interface StreamAction {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Écrit un fichier texte UTF-8 de manière atomique.
+     * @param target fichier cible
+     * @param action écriture du contenu
+     * @return true si l'écriture a réussi
+     */
+    public static boolean writeUtf8(File target, WriterAction action) {
+        return write(target, out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            action.write(w);
+            w.flush();
+        });
+    }
+
+    /**
+     * Écrit un fichier binaire de manière atomique.
+     * @param target fichier cible
+     * @param action écriture du contenu
+     * @return true si l'écriture a réussi
+     */
+    public static boolean write(File target, StreamAction action) {
+        File parent = target.getParentFile() != null ? target.getParentFile() : new File(".");
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmp = new File(parent, target.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp, false);
+             OutputStream out = new BufferedOutputStream(fos)) {
+            action.write(out);
+            out.flush();
+            // Contenu sur disque avant le renommage: sinon le renommage peut y arriver avant lui
+            fos.getChannel().force(true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        // sur certains OS, renameTo est atomique quand même volume
+        if (!tmp.renameTo(target)) {
+            // fallback: copie par flux
+            try (InputStream in = new FileInputStream(tmp); FileOutputStream out = new FileOutputStream(target, false)) {
+                in.transferTo(out);
+                out.getChannel().force(true);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+            // supprimer tmp
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+        syncDirectory(parent);
+        return true;
+    }
+
+    /** Force l'écriture de l'entrée du répertoire (renommage), si le système le permet. */
+    private static void syncDirectory(File dir) {
+        try (FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Windows: un répertoire ne s'ouvre pas ainsi, le renommage y est journalisé par NTFS
+        }
+    }
+}
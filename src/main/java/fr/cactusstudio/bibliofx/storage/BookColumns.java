@@ -0,0 +1,71 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import fr.cactusstudio.bibliofx.model.Book;
+
+import java.util.List;
+
+/**
+ * Bibliothèque en lecture seule organisée par colonnes: les champs d'une ligne se lisent
+ * un à un, pour filtrer ou trier sans construire de {@link Book}; {@link #get(int)}
+ * construit le livre complet d'une ligne (copie: le modifier n'a aucun effet).
+ * <p>
+ * Implémentations: l'index projeté en mémoire ({@link MappedBookList}) et sa copie en
+ * tableaux ({@link BookStore}). Lecture seule et sans état: utilisables depuis plusieurs
+ * threads.
+ */
+public interface BookColumns extends List<Book> {
+    /** Champs texte d'une ligne. */
+    enum Field {
+        TITLE,
+        /** Dédupliqué: voir {@link #ref(int, Field)}. */
+        AUTHOR,
+        /** Dédupliqué: voir {@link #ref(int, Field)}. */
+        GENRE,
+        /** Dédupliqué: voir {@link #ref(int, Field)}. */
+        READING_STATUS,
+        SUMMARY,
+        COVER
+    }
+
+    /**
+     * Lit un champ texte d'une ligne, sans construire de {@link Book}.
+     * @param index position du livre
+     * @param field champ
+     * @return la valeur enregistrée (peut être null; l'état de lecture n'est pas complété)
+     */
+    String getString(int index, Field field);
+
+    /**
+     * Référence de la valeur d'un champ dédupliqué (auteur, genre, état de lecture): deux
+     * lignes portant la même valeur ont la même référence, ce qui permet de ne décoder et
+     * comparer chaque valeur distincte qu'une fois.
+     * @param index position du livre
+     * @param field champ dédupliqué
+     * @return la référence (positive ou nulle), -1 pour une valeur nulle, -2 pour une chaîne vide
+     */
+    int ref(int index, Field field);
+
+    /** @return l'identifiant du livre de la ligne */
+    long getId(int index);
+
+    /** @return l'année de publication de la ligne */
+    int getYear(int index);
+
+    /** @return true si le livre de la ligne est disponible */
+    boolean isAvailable(int index);
+
+    /** @return l'horodatage d'ajout de la ligne, 0 s'il est inconnu */
+    long getAddedAt(int index);
+
+    /** @return l'horodatage d'emprunt de la ligne, 0 s'il est inconnu */
+    long getBorrowedAt(int index);
+
+    /**
+     * Lit uniquement le titre d'une ligne, sans construire de {@link Book}.
+     * @param index position du livre
+     * @return le titre (peut être null)
+     */
+    default String getTitle(int index) {
+        return getString(index, Field.TITLE);
+    }
+}
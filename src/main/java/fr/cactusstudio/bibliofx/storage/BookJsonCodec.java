@@ -0,0 +1,209 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture/écriture JSON en flux des livres, sans réflexion ni arbre intermédiaire.
+ * <p>
+ * Les champs sont lus un à un avec {@link JsonReader} (les champs inconnus sont ignorés)
+ * et écrits avec {@link JsonWriter} dans le même format que celui produit jusqu'ici
+ * par Gson: les valeurs nulles sont omises.
+ */
+public final class BookJsonCodec {
+    private BookJsonCodec() {
+    }
+
+    /** Enregistrement de journal décodé. */
+    public static final class JournalRecord {
+        public long seq;
+        public String op;
+        public String lib;
+        /** Nouveau nom (opération "rename"). */
+        public String to;
+        /** Position et nombre de livres retirés (opération "splice"). */
+        public int at;
+        public int del;
+        /** Livres insérés (opération "splice"). */
+        public List<Book> ins = List.of();
+        /** Livre ajouté ou remplacé (opération "put"). */
+        public Book book;
+        /** Identifiant du livre retiré (opération "remove"). */
+        public long id;
+    }
+
+    /**
+     * Lit un livre (objet JSON).
+     * @param in lecteur positionné sur le début de l'objet
+     * @return le livre lu
+     * @throws IOException si le JSON est invalide
+     */
+    public static Book readBook(JsonReader in) throws IOException {
+        // L'identifiant, immuable, peut apparaître après les autres champs
+        long id = 0;
+        String title = null, author = null, genre = null, readingStatus = null, summary = null, coverUrl = null;
+        int year = 0;
+        boolean available = false;
+        long addedAt = Book.NO_DATE, borrowedAt = Book.NO_DATE;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id" -> id = in.nextLong();
+                case "title" -> title = in.nextString();
+                case "author" -> author = in.nextString();
+                case "year" -> year = in.nextInt();
+                case "genre" -> genre = in.nextString();
+                case "available" -> available = in.nextBoolean();
+                case "readingStatus" -> readingStatus = in.nextString();
+                case "summary" -> summary = in.nextString();
+                case "coverUrl" -> coverUrl = in.nextString();
+                case "addedAt" -> addedAt = in.nextLong();
+                case "borrowedAt" -> borrowedAt = in.nextLong();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        Book b = new Book(id);
+        b.setTitle(title);
+        b.setAuthor(author);
+        b.setYear(year);
+        b.setGenre(genre);
+        b.setAvailable(available);
+        b.setReadingStatus(readingStatus);
+        b.setSummary(summary);
+        b.setCoverUrl(coverUrl);
+        b.setAddedAt(addedAt);
+        b.setBorrowedAt(borrowedAt);
+        return b;
+    }
+
+    /**
+     * Écrit un livre (objet JSON, valeurs nulles omises).
+     * @param out rédacteur JSON
+     * @param b   livre à écrire
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public static void writeBook(JsonWriter out, BookRecord b) throws IOException {
+        out.beginObject();
+        if (b.id() != 0) out.name("id").value(b.id());
+        if (b.title() != null) out.name("title").value(b.title());
+        if (b.author() != null) out.name("author").value(b.author());
+        out.name("year").value(b.year());
+        if (b.genre() != null) out.name("genre").value(b.genre());
+        out.name("available").value(b.available());
+        out.name("readingStatus").value(b.readingStatus());
+        if (b.summary() != null) out.name("summary").value(b.summary());
+        if (b.coverUrl() != null) out.name("coverUrl").value(b.coverUrl());
+        if (b.addedAt() != Book.NO_DATE) out.name("addedAt").value(b.addedAt());
+        if (b.borrowedAt() != Book.NO_DATE) out.name("borrowedAt").value(b.borrowedAt());
+        out.endObject();
+    }
+
+    /**
+     * Lit un tableau JSON de livres.
+     * @param in lecteur positionné sur le début du tableau
+     * @return les livres lus
+     * @throws IOException si le JSON est invalide
+     */
+    public static List<Book> readBookArray(JsonReader in) throws IOException {
+        List<Book> books = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            books.add(readBook(in));
+        }
+        in.endArray();
+        return books;
+    }
+
+    /**
+     * Écrit un tableau JSON de livres.
+     * @param out   rédacteur JSON
+     * @param books livres à écrire
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public static void writeBookArray(JsonWriter out, List<BookRecord> books) throws IOException {
+        out.beginArray();
+        for (BookRecord b : books) writeBook(out, b);
+        out.endArray();
+    }
+
+    /**
+     * @param b livre
+     * @return la forme JSON compacte du livre
+     */
+    public static String toJson(BookRecord b) {
+        StringWriter sw = new StringWriter(256);
+        try {
+            JsonWriter w = new JsonWriter(sw);
+            writeBook(w, b);
+            w.flush();
+        } catch (IOException e) {
+            // StringWriter ne lève pas d'IOException
+            throw new UncheckedIOException(e);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * @param s chaîne
+     * @return la chaîne encodée comme littéral JSON (avec guillemets)
+     */
+    public static String quote(String s) {
+        StringWriter sw = new StringWriter(s.length() + 2);
+        try {
+            JsonWriter w = new JsonWriter(sw);
+            w.value(s);
+            w.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Lit un enregistrement de journal.
+     * @param in lecteur positionné sur le début de l'objet
+     * @return l'enregistrement décodé
+     * @throws IOException si le JSON est invalide ou incomplet
+     */
+    public static JournalRecord readRecord(JsonReader in) throws IOException {
+        JournalRecord r = new JournalRecord();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "seq" -> r.seq = in.nextLong();
+                case "op" -> r.op = in.nextString();
+                case "lib" -> r.lib = in.nextString();
+                case "to" -> r.to = in.nextString();
+                case "at" -> r.at = in.nextInt();
+                case "del" -> r.del = in.nextInt();
+                case "ins" -> r.ins = readBookArray(in);
+                case "book" -> r.book = readBook(in);
+                case "id" -> r.id = in.nextLong();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (r.op == null) throw new IOException("Enregistrement de journal sans opération");
+        return r;
+    }
+}
@@ -0,0 +1,418 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import fr.cactusstudio.bibliofx.model.Book;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Instantané binaire versionné d'une bibliothèque, organisé en colonnes.
+ * <p>
+ * Sert de copie binaire de l'instantané JSON d'un shard ({@code <id>.bfxs}, voir
+ * {@link LibraryShard}), plus rapide à relire; elle remplace l'ancien {@code books.ser}
+ * produit par {@code ObjectOutputStream}. Format (version 3):
+ * <pre>
+ * "BFXS" | version (u8) | taille du corps (varint) | nombre de blocs (varint)
+ * blocs: taille compressée (varint) + octets DEFLATE de chaque tranche de 1 Mio du corps
+ * CRC32 du corps décompressé (4 octets, big-endian)
+ * corps:
+ *   bibliothèque (chaîne) | séquence (varint) | n (varint)
+ *   dictionnaire: taille (varint), chaînes     — auteurs, genres, statuts de lecture
+ *   colonnes de n valeurs chacune:
+ *     identifiant (delta zigzag), titre (préfixé), auteur (code), année (varint zigzag), genre (code),
+ *     drapeaux (u8: disponible), statut (code), résumé (chaîne), couverture (préfixé),
+ *     addedAt (delta zigzag), borrowedAt (delta zigzag)
+ * </pre>
+ * Une chaîne est codée par sa longueur UTF-8 + 1 (0 pour null) suivie des octets; une
+ * chaîne « préfixée » commence en plus par le nombre de caractères partagés avec la
+ * valeur précédente de la colonne (front coding). Un code de dictionnaire vaut
+ * l'indice + 1 (0 pour null). Les horodatages sont codés en delta par rapport à la
+ * valeur présente précédente de la même colonne, avec un marqueur 0 pour null (les
+ * deltas non nuls sont décalés de 1). Les colonnes regroupant des valeurs semblables,
+ * la compression finale est efficace; les blocs indépendants sont compressés et
+ * décompressés en parallèle.
+ */
+public final class BookSnapshotCodec {
+    private static final byte[] MAGIC = {'B', 'F', 'X', 'S'};
+    /** Version courante du format. */
+    public static final int VERSION = 3;
+
+    private static final int FLAG_AVAILABLE = 1;
+    /** Taille (non compressée) d'un bloc. */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private BookSnapshotCodec() {
+    }
+
+    /** Contenu d'un instantané: bibliothèque, séquence du contenu et livres. */
+    public record Snapshot(String library, long seq, List<Book> books) {
+    }
+
+    /**
+     * Écrit l'instantané d'une bibliothèque.
+     * @param out     flux de sortie (non fermé)
+     * @param library identifiant de la bibliothèque
+     * @param seq     séquence du contenu (celle de l'instantané JSON du shard)
+     * @param books   livres
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public static void write(OutputStream out, String library, long seq, List<Book> books) throws IOException {
+        int n = books.size();
+        Sink s = new Sink(Math.max(1024, n * 96));
+        s.string(library);
+        s.varint(seq);
+        s.varint(n);
+
+        // Dictionnaire partagé pour les colonnes à faible cardinalité
+        Map<String, Integer> dict = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+        int[] authors = new int[n];
+        int[] genres = new int[n];
+        int[] statuses = new int[n];
+        for (int i = 0; i < n; i++) {
+            Book b = books.get(i);
+            authors[i] = code(dict, entries, b.getAuthor());
+            genres[i] = code(dict, entries, b.getGenre());
+            statuses[i] = code(dict, entries, b.getReadingStatus());
+        }
+        s.varint(entries.size());
+        for (String e : entries) s.string(e);
+
+        long prevId = 0;
+        for (Book b : books) {
+            s.varint(zigzag(b.getId() - prevId));
+            prevId = b.getId();
+        }
+        String prevText = null;
+        for (Book b : books) prevText = s.prefixed(b.getTitle(), prevText);
+        for (int c : authors) s.varint(c);
+        for (Book b : books) s.varint(zigzag(b.getYear()));
+        for (int c : genres) s.varint(c);
+        for (Book b : books) s.u8(b.isAvailable() ? FLAG_AVAILABLE : 0);
+        for (int c : statuses) s.varint(c);
+        for (Book b : books) s.string(b.getSummary());
+        prevText = null;
+        for (Book b : books) prevText = s.prefixed(b.getCoverUrl(), prevText);
+        long prev = 0;
+        for (Book b : books) prev = s.timestamp(b.getAddedAt(), prev);
+        prev = 0;
+        for (Book b : books) prev = s.timestamp(b.getBorrowedAt(), prev);
+
+        CRC32 crc = new CRC32();
+        crc.update(s.buf, 0, s.len);
+        byte[] body = s.buf;
+        int bodyLen = s.len;
+        int blocks = (bodyLen + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[][] compressed = new byte[blocks][];
+        IntStream.range(0, blocks).parallel().forEach(i -> {
+            int off = i * BLOCK_SIZE;
+            compressed[i] = deflate(body, off, Math.min(BLOCK_SIZE, bodyLen - off));
+        });
+
+        Sink head = new Sink(32 + blocks * 5);
+        head.bytes(MAGIC);
+        head.u8(VERSION);
+        head.varint(bodyLen);
+        head.varint(blocks);
+        out.write(head.buf, 0, head.len);
+        for (byte[] block : compressed) {
+            head.len = 0;
+            head.varint(block.length);
+            out.write(head.buf, 0, head.len);
+            out.write(block);
+        }
+        int c = (int) crc.getValue();
+        out.write(new byte[]{(byte) (c >>> 24), (byte) (c >>> 16), (byte) (c >>> 8), (byte) c});
+    }
+
+    private static byte[] deflate(byte[] data, int off, int len) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, off, len);
+            deflater.finish();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 2 + 64);
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int k = deflater.deflate(chunk);
+                bos.write(chunk, 0, k);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void inflate(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(src, off, len);
+            int done = 0;
+            while (done < dstLen) {
+                int k = inflater.inflate(dst, dstOff + done, dstLen - done);
+                if (k == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                done += k;
+            }
+            if (done != dstLen) throw new EOFException("Instantané tronqué");
+        } catch (DataFormatException e) {
+            throw new IOException("Instantané corrompu", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Lit un instantané.
+     * @param in flux d'entrée (lu jusqu'au bout, non fermé)
+     * @return le contenu de l'instantané
+     * @throws IOException si le fichier est tronqué, corrompu ou d'une version inconnue
+     */
+    public static Snapshot read(InputStream in) throws IOException {
+        byte[] raw = in.readAllBytes();
+        if (raw.length < MAGIC.length + 5) throw new EOFException("Instantané tronqué");
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (raw[i] != MAGIC[i]) throw new IOException("Ce fichier n'est pas un instantané BiblioFX");
+        }
+        int version = raw[MAGIC.length] & 0xFF;
+        if (version != VERSION) throw new IOException("Version d'instantané non supportée: " + version);
+        Source head = new Source(raw, raw.length - 4);
+        head.pos = MAGIC.length + 1;
+        int bodyLen = head.varint();
+        int blocks = head.varint();
+        if (blocks != (bodyLen + BLOCK_SIZE - 1) / BLOCK_SIZE) throw new IOException("Instantané corrompu");
+        int[] offsets = new int[blocks];
+        int[] lengths = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            lengths[i] = head.varint();
+            offsets[i] = head.pos;
+            if (lengths[i] > head.limit - head.pos) throw new EOFException("Instantané tronqué");
+            head.pos += lengths[i];
+        }
+        byte[] data = new byte[bodyLen];
+        try {
+            IntStream.range(0, blocks).parallel().forEach(i -> {
+                int off = i * BLOCK_SIZE;
+                try {
+                    inflate(raw, offsets[i], lengths[i], data, off, Math.min(BLOCK_SIZE, bodyLen - off));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        int stored = ((raw[raw.length - 4] & 0xFF) << 24) | ((raw[raw.length - 3] & 0xFF) << 16)
+                | ((raw[raw.length - 2] & 0xFF) << 8) | (raw[raw.length - 1] & 0xFF);
+        if (stored != (int) crc.getValue()) throw new IOException("Instantané corrompu (CRC)");
+        Source src = new Source(data, data.length);
+        String library = src.string();
+        long seq = src.varlong();
+        int n = src.varint();
+
+        int dictSize = src.varint();
+        String[] dict = new String[dictSize];
+        for (int i = 0; i < dictSize; i++) dict[i] = src.string();
+
+        List<Book> books = new ArrayList<>(n);
+        long prevId = 0;
+        for (int i = 0; i < n; i++) {
+            prevId += unzigzag(src.varlong());
+            books.add(new Book(prevId));
+        }
+        String prevText = null;
+        for (Book b : books) {
+            String title = src.prefixed(prevText);
+            if (title != null) prevText = title;
+            b.setTitle(title);
+        }
+        for (Book b : books) b.setAuthor(src.dict(dict));
+        for (Book b : books) b.setYear(unzigzag(src.varint()));
+        for (Book b : books) b.setGenre(src.dict(dict));
+        for (Book b : books) b.setAvailable((src.u8() & FLAG_AVAILABLE) != 0);
+        for (Book b : books) b.setReadingStatus(src.dict(dict));
+        for (Book b : books) b.setSummary(src.string());
+        prevText = null;
+        for (Book b : books) {
+            String cover = src.prefixed(prevText);
+            if (cover != null) prevText = cover;
+            b.setCoverUrl(cover);
+        }
+        long prev = 0;
+        for (Book b : books) {
+            long t = src.timestamp(prev);
+            if (t != Book.NO_DATE) prev = t;
+            b.setAddedAt(t);
+        }
+        prev = 0;
+        for (Book b : books) {
+            long t = src.timestamp(prev);
+            if (t != Book.NO_DATE) prev = t;
+            b.setBorrowedAt(t);
+        }
+        return new Snapshot(library, seq, books);
+    }
+
+    private static int code(Map<String, Integer> dict, List<String> entries, String value) {
+        if (value == null) return 0;
+        Integer c = dict.get(value);
+        if (c == null) {
+            entries.add(value);
+            c = entries.size();
+            dict.put(value, c);
+        }
+        return c;
+    }
+
+    private static int zigzag(int v) { return (v << 1) ^ (v >> 31); }
+    private static int unzigzag(int v) { return (v >>> 1) ^ -(v & 1); }
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    /** Tampon d'écriture extensible. */
+    private static final class Sink {
+        byte[] buf;
+        int len;
+
+        Sink(int capacity) { buf = new byte[capacity]; }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) {
+                buf = java.util.Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+
+        void u8(int v) {
+            ensure(1);
+            buf[len++] = (byte) v;
+        }
+
+        void bytes(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        void string(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length + 1L);
+            bytes(b);
+        }
+
+        /** Écrit une chaîne en partageant son préfixe avec la précédente; retourne la nouvelle référence. */
+        String prefixed(String s, String prev) {
+            if (s == null) {
+                varint(0);
+                return prev;
+            }
+            int shared = 0;
+            if (prev != null) {
+                int max = Math.min(s.length(), prev.length());
+                while (shared < max && s.charAt(shared) == prev.charAt(shared)) shared++;
+                // ne pas couper une paire de substitution
+                if (shared > 0 && shared < s.length() && Character.isLowSurrogate(s.charAt(shared))) shared--;
+            }
+            varint(shared + 1L);
+            string(s.substring(shared));
+            return s;
+        }
+
+        /** Écrit un horodatage (delta) et retourne la nouvelle valeur de référence. */
+        long timestamp(long t, long prev) {
+            if (t == Book.NO_DATE) {
+                varint(0);
+                return prev;
+            }
+            varint(zigzag(t - prev) + 1);
+            return t;
+        }
+    }
+
+    /** Lecture séquentielle d'un tableau d'octets. */
+    private static final class Source {
+        final byte[] data;
+        final int limit;
+        int pos;
+
+        Source(byte[] data, int limit) {
+            this.data = data;
+            this.limit = limit;
+        }
+
+        int u8() throws EOFException {
+            if (pos >= limit) throw new EOFException("Instantané tronqué");
+            return data[pos++] & 0xFF;
+        }
+
+        long varlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = u8();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Varint invalide");
+        }
+
+        int varint() throws IOException {
+            long v = varlong();
+            if (v < 0 || v > Integer.MAX_VALUE) throw new IOException("Valeur hors limites");
+            return (int) v;
+        }
+
+        String string() throws IOException {
+            int l = varint();
+            if (l == 0) return null;
+            l--;
+            if (l > limit - pos) throw new EOFException("Instantané tronqué");
+            String s = new String(data, pos, l, StandardCharsets.UTF_8);
+            pos += l;
+            return s;
+        }
+
+        String prefixed(String prev) throws IOException {
+            int shared = varint();
+            if (shared == 0) return null;
+            shared--;
+            if (shared > 0 && (prev == null || shared > prev.length())) throw new IOException("Préfixe invalide");
+            String suffix = string();
+            if (suffix == null) throw new IOException("Suffixe manquant");
+            return shared == 0 ? suffix : prev.substring(0, shared) + suffix;
+        }
+
+        String dict(String[] dict) throws IOException {
+            int c = varint();
+            if (c == 0) return null;
+            if (c > dict.length) throw new IOException("Code de dictionnaire invalide");
+            return dict[c - 1];
+        }
+
+        long timestamp(long prev) throws IOException {
+            long v = varlong();
+            if (v == 0) return Book.NO_DATE;
+            return prev + unzigzag(v - 1);
+        }
+    }
+}
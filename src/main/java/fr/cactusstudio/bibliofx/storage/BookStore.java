@@ -0,0 +1,356 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+import fr.cactusstudio.bibliofx.model.StringPool;
+import fr.cactusstudio.bibliofx.model.SummaryText;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Bibliothèque en lecture seule rangée par colonnes, en mémoire: un tableau de types
+ * primitifs par champ plutôt qu'un objet par livre.
+ * <p>
+ * L'année, les indicateurs et les horodatages sont des tableaux parallèles; l'auteur, le
+ * genre et l'état de lecture sont des codes entiers dans un dictionnaire de valeurs
+ * distinctes (le code sert de référence, voir {@link #ref(int, Field)}); titres et
+ * couvertures sont des octets UTF-8 mis bout à bout dans un tas, repérés par leur position
+ * de début. Les résumés, volumineux et rarement lus, restent hors des colonnes: dans la
+ * source ({@link #copyOf(BookColumns)}) ou compressés ({@link #of(List)}). Un filtre ou
+ * un tri sur l'une de ces colonnes parcourt donc un tableau contigu, sans déréférencer un
+ * objet par ligne.
+ * <p>
+ * {@link #get(int)} construit le {@link Book} d'une ligne (copie). Immuable: utilisable
+ * depuis plusieurs threads.
+ */
+public final class BookStore extends AbstractList<Book> implements BookColumns, RandomAccess {
+    private static final byte FLAG_AVAILABLE = 1;
+    private static final byte FLAG_HAS_ADDED = 2;
+    private static final byte FLAG_HAS_BORROWED = 4;
+    private static final byte FLAG_NO_TITLE = 8;
+    private static final byte FLAG_NO_COVER = 16;
+
+    private final int size;
+    private final long[] ids;
+    private final int[] years;
+    private final byte[] flags;
+    private final long[] addedAt;
+    private final long[] borrowedAt;
+
+    // Champs dédupliqués: code dans le dictionnaire, -1 pour null, -2 pour une chaîne vide
+    private final int[] authors;
+    private final int[] genres;
+    private final int[] statuses;
+    private final String[] authorValues;
+    private final String[] genreValues;
+    private final String[] statusValues;
+
+    /** Titres puis couvertures: octets UTF-8 de la ligne i entre start[i] et start[i + 1]. */
+    private final byte[] titleHeap;
+    private final int[] titleStart;
+    private final byte[] coverHeap;
+    private final int[] coverStart;
+
+    /** Résumés compressés (null si lus depuis {@link #summarySource}). */
+    private final SummaryText[] summaries;
+    private final BookColumns summarySource;
+
+    private BookStore(Builder b, BookColumns summarySource) {
+        this.size = b.size;
+        this.ids = Arrays.copyOf(b.ids, size);
+        this.years = Arrays.copyOf(b.years, size);
+        this.flags = Arrays.copyOf(b.flags, size);
+        this.addedAt = Arrays.copyOf(b.addedAt, size);
+        this.borrowedAt = Arrays.copyOf(b.borrowedAt, size);
+        this.authors = Arrays.copyOf(b.authors.codes, size);
+        this.genres = Arrays.copyOf(b.genres.codes, size);
+        this.statuses = Arrays.copyOf(b.statuses.codes, size);
+        this.authorValues = b.authors.values.toArray(new String[0]);
+        this.genreValues = b.genres.values.toArray(new String[0]);
+        this.statusValues = b.statuses.values.toArray(new String[0]);
+        this.titleHeap = b.titles.heap();
+        this.titleStart = b.titles.starts();
+        this.coverHeap = b.covers.heap();
+        this.coverStart = b.covers.starts();
+        this.summaries = summarySource == null ? Arrays.copyOf(b.summaries, size) : null;
+        this.summarySource = summarySource;
+    }
+
+    /**
+     * Copie une bibliothèque en colonnes (typiquement l'index projeté d'une grande
+     * bibliothèque). Les résumés ne sont pas copiés: ils sont lus dans la source, qui doit
+     * donc rester lisible.
+     * @param source bibliothèque à copier
+     * @return la copie
+     */
+    public static BookStore copyOf(BookColumns source) {
+        int n = source.size();
+        Builder b = new Builder(n);
+        // Valeurs dédupliquées de la source: décodées une fois par référence
+        Map<Integer, Integer> authorCodes = new HashMap<>();
+        Map<Integer, Integer> genreCodes = new HashMap<>();
+        Map<Integer, Integer> statusCodes = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            int row = i;
+            long added = source.getAddedAt(row);
+            long borrowed = source.getBorrowedAt(row);
+            int flags = (source.isAvailable(row) ? FLAG_AVAILABLE : 0)
+                    | (added != Book.NO_DATE ? FLAG_HAS_ADDED : 0)
+                    | (borrowed != Book.NO_DATE ? FLAG_HAS_BORROWED : 0);
+            b.add(source.getId(row), source.getYear(row), flags, added, borrowed,
+                    authorCodes.computeIfAbsent(source.ref(row, Field.AUTHOR), ref -> b.authors.code(source.getString(row, Field.AUTHOR))),
+                    genreCodes.computeIfAbsent(source.ref(row, Field.GENRE), ref -> b.genres.code(source.getString(row, Field.GENRE))),
+                    statusCodes.computeIfAbsent(source.ref(row, Field.READING_STATUS), ref -> b.statuses.code(source.getString(row, Field.READING_STATUS))),
+                    source.getString(row, Field.TITLE), source.getString(row, Field.COVER), null);
+        }
+        return new BookStore(b, source);
+    }
+
+    /**
+     * @param records livres à ranger, dans l'ordre des lignes
+     * @return la bibliothèque en colonnes
+     */
+    public static BookStore of(List<BookRecord> records) {
+        Builder b = new Builder(records.size());
+        for (BookRecord r : records) {
+            int flags = (r.available() ? FLAG_AVAILABLE : 0)
+                    | (r.addedAt() != Book.NO_DATE ? FLAG_HAS_ADDED : 0)
+                    | (r.borrowedAt() != Book.NO_DATE ? FLAG_HAS_BORROWED : 0);
+            b.add(r.id(), r.year(), flags, r.addedAt(), r.borrowedAt(),
+                    b.authors.code(r.author()), b.genres.code(r.genre()), b.statuses.code(r.readingStatus()),
+                    r.title(), r.coverUrl(), r.summaryText());
+        }
+        return new BookStore(b, null);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Book get(int index) {
+        check(index);
+        Book b = new Book(ids[index]);
+        b.setTitle(title(index));
+        b.setAuthor(value(authorValues, authors[index]));
+        b.setGenre(value(genreValues, genres[index]));
+        b.setReadingStatus(value(statusValues, statuses[index]));
+        if (summaries != null) b.setSummaryText(summaries[index]);
+        else b.setSummary(summarySource.getString(index, Field.SUMMARY));
+        b.setCoverUrl(cover(index));
+        b.setYear(years[index]);
+        int f = flags[index];
+        b.setAvailable((f & FLAG_AVAILABLE) != 0);
+        if ((f & FLAG_HAS_ADDED) != 0) b.setAddedAt(addedAt[index]);
+        if ((f & FLAG_HAS_BORROWED) != 0) b.setBorrowedAt(borrowedAt[index]);
+        return b;
+    }
+
+    @Override
+    public String getTitle(int index) {
+        check(index);
+        return title(index);
+    }
+
+    @Override
+    public String getString(int index, Field field) {
+        check(index);
+        return switch (field) {
+            case TITLE -> title(index);
+            case AUTHOR -> value(authorValues, authors[index]);
+            case GENRE -> value(genreValues, genres[index]);
+            case READING_STATUS -> value(statusValues, statuses[index]);
+            case SUMMARY -> summaries != null ? SummaryText.text(summaries[index]) : summarySource.getString(index, Field.SUMMARY);
+            case COVER -> cover(index);
+        };
+    }
+
+    /** {@inheritDoc} La référence est le code de la valeur dans le dictionnaire du champ. */
+    @Override
+    public int ref(int index, Field field) {
+        check(index);
+        return switch (field) {
+            case AUTHOR -> authors[index];
+            case GENRE -> genres[index];
+            case READING_STATUS -> statuses[index];
+            default -> throw new IllegalArgumentException("Champ non dédupliqué: " + field);
+        };
+    }
+
+    @Override
+    public long getId(int index) {
+        check(index);
+        return ids[index];
+    }
+
+    @Override
+    public int getYear(int index) {
+        check(index);
+        return years[index];
+    }
+
+    @Override
+    public boolean isAvailable(int index) {
+        check(index);
+        return (flags[index] & FLAG_AVAILABLE) != 0;
+    }
+
+    @Override
+    public long getAddedAt(int index) {
+        check(index);
+        return addedAt[index];
+    }
+
+    @Override
+    public long getBorrowedAt(int index) {
+        check(index);
+        return borrowedAt[index];
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", taille: " + size);
+    }
+
+    private String title(int index) {
+        return (flags[index] & FLAG_NO_TITLE) != 0 ? null : text(titleHeap, titleStart, index);
+    }
+
+    private String cover(int index) {
+        return (flags[index] & FLAG_NO_COVER) != 0 ? null : text(coverHeap, coverStart, index);
+    }
+
+    private static String text(byte[] heap, int[] start, int index) {
+        int from = start[index];
+        int len = start[index + 1] - from;
+        return len == 0 ? "" : new String(heap, from, len, StandardCharsets.UTF_8);
+    }
+
+    private static String value(String[] values, int code) {
+        return code >= 0 ? values[code] : code == -2 ? "" : null;
+    }
+
+    /** Colonnes en cours de remplissage, agrandies au besoin. */
+    private static final class Builder {
+        int size;
+        long[] ids;
+        int[] years;
+        byte[] flags;
+        long[] addedAt;
+        long[] borrowedAt;
+        final Dictionary authors;
+        final Dictionary genres;
+        final Dictionary statuses;
+        final Heap titles;
+        final Heap covers;
+        SummaryText[] summaries;
+
+        Builder(int capacity) {
+            int c = Math.max(16, capacity);
+            ids = new long[c];
+            years = new int[c];
+            flags = new byte[c];
+            addedAt = new long[c];
+            borrowedAt = new long[c];
+            authors = new Dictionary(c, StringPool.AUTHORS);
+            genres = new Dictionary(c, StringPool.GENRES);
+            statuses = new Dictionary(c, null);
+            titles = new Heap(c, 24);
+            covers = new Heap(c, 48);
+            summaries = new SummaryText[c];
+        }
+
+        void add(long id, int year, int flag, long added, long borrowed, int author, int genre, int status,
+                 String title, String cover, SummaryText summary) {
+            if (size == ids.length) {
+                int c = size * 2;
+                ids = Arrays.copyOf(ids, c);
+                years = Arrays.copyOf(years, c);
+                flags = Arrays.copyOf(flags, c);
+                addedAt = Arrays.copyOf(addedAt, c);
+                borrowedAt = Arrays.copyOf(borrowedAt, c);
+                summaries = Arrays.copyOf(summaries, c);
+            }
+            int i = size++;
+            ids[i] = id;
+            years[i] = year;
+            flags[i] = (byte) (flag | (title == null ? FLAG_NO_TITLE : 0) | (cover == null ? FLAG_NO_COVER : 0));
+            addedAt[i] = added;
+            borrowedAt[i] = borrowed;
+            authors.set(i, author);
+            genres.set(i, genre);
+            statuses.set(i, status);
+            titles.append(title);
+            covers.append(cover);
+            summaries[i] = summary;
+        }
+    }
+
+    /** Colonne de codes et valeurs distinctes, dans l'ordre de première apparition. */
+    private static final class Dictionary {
+        int[] codes;
+        final List<String> values = new ArrayList<>();
+        final Map<String, Integer> byValue = new HashMap<>();
+        final StringPool pool;
+
+        Dictionary(int capacity, StringPool pool) {
+            this.codes = new int[capacity];
+            this.pool = pool;
+        }
+
+        int code(String value) {
+            if (value == null) return -1;
+            if (value.isEmpty()) return -2;
+            return byValue.computeIfAbsent(value, v -> {
+                values.add(pool != null ? pool.intern(v) : v);
+                return values.size() - 1;
+            });
+        }
+
+        void set(int row, int code) {
+            if (row == codes.length) codes = Arrays.copyOf(codes, row * 2);
+            codes[row] = code;
+        }
+    }
+
+    /** Tas d'octets UTF-8 et positions de début de chaque ligne. */
+    private static final class Heap {
+        byte[] bytes;
+        int used;
+        int[] start;
+        int rows;
+
+        Heap(int capacity, int bytesPerRow) {
+            bytes = new byte[(int) Math.min(Integer.MAX_VALUE - 8, (long) capacity * bytesPerRow)];
+            start = new int[capacity + 1];
+        }
+
+        void append(String s) {
+            if (s != null && !s.isEmpty()) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                if (used + b.length > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) bytes.length * 2, (long) used + b.length)));
+                }
+                System.arraycopy(b, 0, bytes, used, b.length);
+                used += b.length;
+            }
+            if (rows + 1 == start.length) start = Arrays.copyOf(start, start.length * 2);
+            start[++rows] = used;
+        }
+
+        byte[] heap() {
+            return Arrays.copyOf(bytes, used);
+        }
+
+        int[] starts() {
+            return Arrays.copyOf(start, rows + 1);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Journal d'écriture en ajout seul (write-ahead log) pour les bibliothèques.
+ * <p>
+ * Chaque modification (ajout/édition/suppression de livres, création, renommage ou
+ * suppression de bibliothèque) est ajoutée en fin de fichier sous forme d'un
+ * enregistrement JSON sur une ligne. Le coût d'une sauvegarde dépend donc de la taille
+ * du changement et non de celle du catalogue. Une compaction périodique replie le
+ * journal dans l'instantané complet puis le vide.
+ * <p>
+ * Chaque enregistrement porte un numéro de séquence croissant ({@code "seq"}) : au
+ * rechargement, seuls les enregistrements postérieurs à la séquence de l'instantané
+ * sont rejoués, ce qui rend la compaction sûre même en cas d'arrêt brutal entre
+ * l'écriture de l'instantané et la troncature du journal.
+ */
+public final class LibraryJournal {
+    /** Fichier du journal (une ligne JSON par enregistrement). */
+    private final File file;
+    /** Nombre d'enregistrements actuellement présents dans le journal. */
+    private int recordCount;
+
+    /**
+     * @param file fichier du journal (créé à la première écriture)
+     */
+    public LibraryJournal(File file) {
+        this.file = file;
+    }
+
+    /** @return le fichier du journal */
+    public File getFile() { return file; }
+
+    /** @return le nombre d'enregistrements présents dans le journal */
+    public int getRecordCount() { return recordCount; }
+
+    /** @return la taille du journal en octets (0 s'il n'existe pas) */
+    public long sizeInBytes() { return file.exists() ? file.length() : 0L; }
+
+    /**
+     * Ajoute des enregistrements en fin de journal puis force leur écriture sur disque.
+     * @param records enregistrements JSON déjà sérialisés (une ligne chacun)
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public void append(List<String> records) throws IOException {
+        if (records.isEmpty()) return;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (FileOutputStream fos = new FileOutputStream(file, true);
+             Writer w = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            for (String r : records) {
+                w.write(r);
+                w.write('\n');
+            }
+            w.flush();
+            fos.getFD().sync();
+        }
+        recordCount += records.size();
+    }
+
+    /**
+     * Relit le journal et transmet chaque enregistrement valide au consommateur.
+     * <p>
+     * Une ligne illisible (typiquement la dernière, tronquée par un arrêt brutal) met fin
+     * à la relecture: les enregistrements suivants ne peuvent plus être appliqués de façon sûre.
+     * Le journal est alors tronqué après la dernière ligne valide, pour que les prochains
+     * ajouts ne se retrouvent pas derrière la ligne illisible (et perdus à la relecture
+     * suivante). Un dernier enregistrement valide sans fin de ligne est complété.
+     *
+     * @param consumer traitement de chaque enregistrement
+     * @return le nombre d'enregistrements relus
+     */
+    public int replay(Consumer<BookJsonCodec.JournalRecord> consumer) {
+        recordCount = 0;
+        Tail tail = read(consumer);
+        recordCount = tail.records();
+        try {
+            if (tail.corrupt()) {
+                System.err.println("Journal tronqué ou corrompu, relecture arrêtée et fin retirée: " + file);
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    ch.truncate(tail.good());
+                    ch.force(true);
+                }
+            } else if (tail.missingNewline()) {
+                try (FileOutputStream fos = new FileOutputStream(file, true)) {
+                    fos.write('\n');
+                    fos.getFD().sync();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return recordCount;
+    }
+
+    /**
+     * Lit le journal sans le modifier ni le réparer, jusqu'à la première ligne illisible:
+     * utilisable pendant qu'un autre objet écrit dans le même fichier.
+     *
+     * @param consumer traitement de chaque enregistrement
+     */
+    public void scan(Consumer<BookJsonCodec.JournalRecord> consumer) {
+        read(consumer);
+    }
+
+    /**
+     * Fin de la lecture du journal.
+     * @param records        nombre d'enregistrements lus
+     * @param good           fin (en octets) de la dernière ligne valide
+     * @param corrupt        true si une ligne illisible a arrêté la lecture
+     * @param missingNewline true si le dernier enregistrement n'a pas de fin de ligne
+     */
+    private record Tail(int records, long good, boolean corrupt, boolean missingNewline) {
+    }
+
+    /** Lit le journal et transmet chaque enregistrement valide, jusqu'à la première ligne illisible. */
+    private Tail read(Consumer<BookJsonCodec.JournalRecord> consumer) {
+        if (!file.exists()) return new Tail(0, 0, false, false);
+        int records = 0;
+        long good = 0;
+        long pos = 0;
+        boolean corrupt = false;
+        boolean missingNewline = false;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            while (true) {
+                int c = in.read();
+                if (c != '\n' && c != -1) {
+                    line.write(c);
+                    pos++;
+                    continue;
+                }
+                if (c == '\n') pos++;
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (!text.isBlank()) {
+                    BookJsonCodec.JournalRecord record;
+                    try {
+                        record = BookJsonCodec.readRecord(new JsonReader(new StringReader(text)));
+                    } catch (IOException | IllegalStateException | NumberFormatException e) {
+                        corrupt = true;
+                        break;
+                    }
+                    consumer.accept(record);
+                    records++;
+                    missingNewline = c == -1;
+                }
+                good = pos;
+                if (c == -1) break;
+            }
+        } catch (IOException e) {
+            // Rien à réparer: la fin du fichier n'a pas été lue
+            e.printStackTrace();
+            return new Tail(records, good, false, false);
+        }
+        return new Tail(records, good, corrupt, missingNewline);
+    }
+
+    /**
+     * Vide le journal (après qu'un instantané complet a été écrit).
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public void truncate() throws IOException {
+        if (file.exists()) {
+            try (FileOutputStream fos = new FileOutputStream(file, false)) {
+                fos.getFD().sync();
+            }
+        }
+        recordCount = 0;
+    }
+}
@@ -0,0 +1,738 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookDelta;
+import fr.cactusstudio.bibliofx.model.BookIds;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+import fr.cactusstudio.bibliofx.model.Change;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Stockage d'une bibliothèque dans son propre fichier (« shard »).
+ * <p>
+ * Chaque shard possède un instantané JSON ({@code <id>.json}) et un journal
+ * ({@code <id>.journal}). Chaque livre porte un identifiant stable ({@link BookIds});
+ * les modifications sont journalisées livre par livre ({@code "put"}:
+ * ajout ou remplacement, {@code "remove"}: suppression), puis repliées dans
+ * l'instantané lorsque le journal devient volumineux. Les anciens enregistrements
+ * positionnels ({@code "splice"}) restent relus.
+ * <p>
+ * Le contenu est un {@link PersistentVector} d'enregistrements immuables, remplacé à
+ * chaque modification: une version capturée (par exemple pour une compaction) ne
+ * change plus et s'écrit hors verrou, sans copie. Les méthodes de modification sont
+ * synchronisées sur l'instance, et chaque version est capturée avec sa séquence.
+ * <p>
+ * Un index identifiant → position ({@link PersistentHashMap}) rend la recherche, la
+ * modification et la suppression d'un livre indépendantes de la taille de la
+ * bibliothèque. Une suppression laisse un emplacement vide, pour ne pas décaler les
+ * positions indexées; les emplacements vides sont retirés lorsqu'ils deviennent
+ * majoritaires. L'index est construit à la première recherche: un simple chargement
+ * n'en a pas besoin.
+ * <p>
+ * Un index binaire facultatif ({@code <id>.idx}, voir {@link MappedBookIndex}) permet
+ * de consulter une très grande bibliothèque en lecture seule sans la charger.
+ * <p>
+ * Chaque instantané JSON est doublé d'une copie binaire ({@code <id>.bfxs}, voir
+ * {@link BookSnapshotCodec}), plus rapide à relire. Le JSON reste la référence: la copie
+ * n'est lue que si elle porte la même séquence que lui, sinon elle est ignorée (écriture
+ * interrompue, fichier d'une version antérieure). Le journal est rejoué de la même façon
+ * après l'une ou l'autre.
+ */
+public final class LibraryShard {
+    /** Nombre minimal d'emplacements vides avant de les retirer. */
+    private static final int PACK_MIN_HOLES = 64;
+    /** Nombre d'enregistrements au-delà duquel le journal est replié dans l'instantané. */
+    private static final int COMPACT_MAX_RECORDS = 2000;
+    /** Taille minimale du journal (octets) avant compaction sur critère de taille. */
+    private static final long COMPACT_MIN_BYTES = 1L << 20;
+
+    private final String id;
+    private final File snapshotFile;
+    private final File binaryFile;
+    private final File indexFile;
+    private final LibraryJournal journal;
+    /** Si false, chaque modification réécrit l'instantané complet du shard. */
+    private final boolean journalEnabled;
+
+    /** Contenu courant; c'est aussi l'état déjà journalisé (ou en attente de l'être). */
+    private volatile State state = State.of(PersistentVector.empty());
+    /** Enregistrements en attente d'ajout au journal. */
+    private final List<String> pending = new ArrayList<>();
+    /** Dernier numéro de séquence attribué. */
+    private long seq;
+    private boolean snapshotRequested;
+    /** Écriture en cours ({@link #flush()}): le lot n'est plus dans {@link #pending} mais pas encore sur disque. */
+    private boolean flushing;
+    /** Sérialise les écritures de l'index (ouverture en lecture seule et compaction). */
+    private final Object indexLock = new Object();
+
+    private LibraryShard(String id, File dir, boolean journalEnabled) {
+        this.id = id;
+        this.snapshotFile = new File(dir, id + ".json");
+        this.binaryFile = new File(dir, id + ".bfxs");
+        this.indexFile = new File(dir, id + ".idx");
+        this.journal = new LibraryJournal(new File(dir, id + ".journal"));
+        this.journalEnabled = journalEnabled;
+    }
+
+    /**
+     * Ouvre un shard existant: lit l'instantané puis rejoue le journal.
+     * Un shard sans fichier est une bibliothèque vide.
+     */
+    public static LibraryShard open(String id, File dir, boolean journalEnabled) {
+        LibraryShard s = new LibraryShard(id, dir, journalEnabled);
+        s.readFromDisk();
+        return s;
+    }
+
+    /**
+     * Crée un shard avec un contenu initial et écrit immédiatement son instantané
+     * (utilisé pour la migration depuis l'ancien fichier unique).
+     */
+    public static LibraryShard create(String id, File dir, boolean journalEnabled, List<Book> initial) {
+        LibraryShard s = new LibraryShard(id, dir, journalEnabled);
+        List<BookRecord> records = toRecords(initial);
+        assignMissingIds(records);
+        s.state = State.of(PersistentVector.of(records));
+        s.journal.getFile().delete();
+        s.writeSnapshot(s.state.books(), 0);
+        return s;
+    }
+
+    /**
+     * Version du contenu: emplacements (null pour un livre supprimé) et index
+     * identifiant → emplacement, construit au premier besoin.
+     */
+    private static final class State {
+        final PersistentVector<BookRecord> slots;
+        final int holes;
+        /** Index des emplacements; null tant qu'il n'a pas été construit. */
+        final PersistentHashMap<Long, Integer> index;
+        /** Livres sans les emplacements vides, calculés au premier besoin. */
+        private volatile PersistentVector<BookRecord> books;
+
+        private State(PersistentVector<BookRecord> slots, int holes, PersistentHashMap<Long, Integer> index) {
+            this.slots = slots;
+            this.holes = holes;
+            this.index = index;
+            if (holes == 0) this.books = slots;
+        }
+
+        static State of(PersistentVector<BookRecord> books) {
+            return new State(books, 0, null);
+        }
+
+        State withIndex() {
+            if (index != null) return this;
+            PersistentVector<BookRecord> v = slots;
+            int[] at = new int[v.size() - holes];
+            int n = 0;
+            for (int i = 0; i < v.size(); i++) {
+                if (v.get(i) != null) at[n++] = i;
+            }
+            PersistentHashMap<Long, Integer> built = PersistentHashMap.of(n, k -> v.get(at[k]).id(), k -> at[k]);
+            State s = new State(slots, holes, built);
+            s.books = books;
+            return s;
+        }
+
+        /** @return l'emplacement du livre, ou -1 (l'index doit être construit) */
+        int slotOf(long bookId) {
+            Integer i = index.get(bookId);
+            return i == null ? -1 : i;
+        }
+
+        State added(BookRecord r) {
+            return new State(slots.plus(r), holes, index.plus(r.id(), slots.size()));
+        }
+
+        State replaced(int slot, BookRecord r) {
+            return new State(slots.with(slot, r), holes, index);
+        }
+
+        State removed(int slot, long bookId) {
+            if (holes + 1 >= PACK_MIN_HOLES && 2 * (holes + 1) > slots.size()) {
+                // Emplacements vides majoritaires: une seule reconstruction, l'index sera refait au besoin
+                List<BookRecord> rest = new ArrayList<>(slots.size() - holes - 1);
+                for (int i = 0; i < slots.size(); i++) {
+                    BookRecord r = slots.get(i);
+                    if (r != null && i != slot) rest.add(r);
+                }
+                return of(PersistentVector.of(rest));
+            }
+            return new State(slots.with(slot, null), holes + 1, index.minus(bookId));
+        }
+
+        /** @return les livres, dans l'ordre, sans emplacement vide */
+        PersistentVector<BookRecord> books() {
+            PersistentVector<BookRecord> b = books;
+            if (b == null) {
+                List<BookRecord> rest = new ArrayList<>(slots.size() - holes);
+                for (BookRecord r : slots) {
+                    if (r != null) rest.add(r);
+                }
+                // Course sans conséquence: deux calculs donnent le même résultat
+                books = b = PersistentVector.of(rest);
+            }
+            return b;
+        }
+    }
+
+    /** @return l'identifiant (nom de fichier) du shard */
+    public String getId() { return id; }
+
+    /** @return le dernier numéro de séquence attribué */
+    public synchronized long getSeq() { return seq; }
+
+    private void readFromDisk() {
+        List<Book> loaded = readBinary();
+        if (loaded == null) loaded = readJson();
+        // Rejeu sur une liste modifiable, convertie une seule fois en vecteur
+        Replay replay = new Replay(toRecords(loaded));
+        long snapshotSeq = seq;
+        journal.replay(record -> {
+            if (record.seq <= snapshotSeq) return; // déjà inclus dans l'instantané
+            replay.apply(record);
+            seq = Math.max(seq, record.seq);
+        });
+        List<BookRecord> records = replay.result();
+        boolean migrated = assignMissingIds(records);
+        state = State.of(PersistentVector.of(records));
+        if (migrated) {
+            // Identifiants attribués à des données anciennes: les écrire tout de suite,
+            // pour qu'une réouverture ne les attribue pas différemment
+            seq++;
+            if (writeSnapshot(state.books(), seq)) {
+                try {
+                    journal.truncate();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                snapshotRequested = true;
+            }
+        }
+        // Index écrit depuis un état jamais persisté (arrêt brutal): la séquence pourrait être réattribuée
+        if (MappedBookIndex.readSeq(indexFile) > seq) {
+            //noinspection ResultOfMethodCallIgnored
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Lit la copie binaire de l'instantané, si elle porte la même séquence que le JSON.
+     * @return les livres (la séquence est alors celle de l'instantané), ou null pour lire le JSON
+     */
+    private List<Book> readBinary() {
+        if (!binaryFile.exists() || !snapshotFile.exists()) return null;
+        long jsonSeq = readSnapshotSeq(snapshotFile);
+        if (jsonSeq < 0) return null;
+        try (InputStream in = new FileInputStream(binaryFile)) {
+            BookSnapshotCodec.Snapshot snap = BookSnapshotCodec.read(in);
+            if (!id.equals(snap.library()) || snap.seq() != jsonSeq) return null;
+            seq = snap.seq();
+            return snap.books();
+        } catch (IOException e) {
+            System.err.println("Copie binaire ignorée (" + binaryFile + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Lit l'instantané JSON et sa séquence (aucun livre s'il est absent ou illisible). */
+    private List<Book> readJson() {
+        List<Book> loaded = new ArrayList<>();
+        if (snapshotFile.exists()) {
+            // Lecture en flux: {"seq": n, "books": [...]}
+            try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)))) {
+                if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "seq" -> seq = in.nextLong();
+                            case "books" -> loaded = BookJsonCodec.readBookArray(in);
+                            default -> in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                }
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Donne un nouvel identifiant aux enregistrements qui n'en ont pas (ou dont
+     * l'identifiant est en double), dans l'ordre de la liste.
+     * @return true si au moins un identifiant a été attribué
+     */
+    private static boolean assignMissingIds(List<BookRecord> records) {
+        Set<Long> seen = new HashSet<>();
+        boolean assigned = false;
+        for (int i = 0; i < records.size(); i++) {
+            BookRecord r = records.get(i);
+            if (r.id() <= 0 || !seen.add(r.id())) {
+                r = r.withId(BookIds.next());
+                records.set(i, r);
+                seen.add(r.id());
+                assigned = true;
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Rejeu du journal: les suppressions laissent un trou (null) et un index
+     * identifiant → position évite de parcourir la liste à chaque enregistrement.
+     */
+    private final class Replay {
+        private final List<BookRecord> records;
+        private Map<Long, Integer> positions;
+        private boolean holes;
+
+        Replay(List<BookRecord> records) {
+            this.records = records;
+        }
+
+        void apply(BookJsonCodec.JournalRecord r) {
+            switch (r.op) {
+                case "splice" -> {
+                    // Format positionnel (antérieur aux identifiants)
+                    pack();
+                    positions = null;
+                    if (r.at < 0 || r.del < 0 || r.at + r.del > records.size()) {
+                        System.err.println("Enregistrement de journal incohérent ignoré (seq " + r.seq + ")");
+                        return;
+                    }
+                    records.subList(r.at, r.at + r.del).clear();
+                    records.addAll(r.at, toRecords(r.ins));
+                }
+                case "put" -> {
+                    if (r.book == null || r.book.getId() <= 0) return;
+                    BookRecord rec = BookRecord.of(r.book);
+                    Integer i = positions().get(rec.id());
+                    if (i != null) {
+                        records.set(i, rec);
+                    } else {
+                        positions.put(rec.id(), records.size());
+                        records.add(rec);
+                    }
+                }
+                case "remove" -> {
+                    Integer i = positions().remove(r.id);
+                    if (i != null) {
+                        records.set(i, null);
+                        holes = true;
+                    }
+                }
+                default -> { }
+            }
+        }
+
+        /** Index des positions, construit au premier besoin (les identifiants manquants sont alors attribués). */
+        private Map<Long, Integer> positions() {
+            if (positions == null) {
+                pack();
+                assignMissingIds(records);
+                positions = new HashMap<>();
+                for (int i = 0; i < records.size(); i++) positions.put(records.get(i).id(), i);
+            }
+            return positions;
+        }
+
+        private void pack() {
+            if (!holes) return;
+            records.removeIf(java.util.Objects::isNull);
+            holes = false;
+            positions = null;
+        }
+
+        List<BookRecord> result() {
+            pack();
+            return records;
+        }
+    }
+
+    /** @return la version courante du contenu (immuable; O(1) en l'absence de suppression récente) */
+    public PersistentVector<BookRecord> snapshot() {
+        return state.books();
+    }
+
+    /**
+     * @param bookId identifiant du livre
+     * @return l'enregistrement correspondant, ou null
+     */
+    public BookRecord find(long bookId) {
+        State st = state;
+        if (st.index == null) st = indexed();
+        int i = st.slotOf(bookId);
+        return i < 0 ? null : st.slots.get(i);
+    }
+
+    /** @return l'état courant, avec son index construit */
+    private synchronized State indexed() {
+        State st = state;
+        if (st.index == null) state = st = st.withIndex();
+        return st;
+    }
+
+    /**
+     * @return true si des modifications ne sont pas encore écrites sur disque, y compris
+     *         pendant leur écriture: le shard ne doit alors pas être évincé (une réouverture
+     *         relirait un journal incomplet)
+     */
+    public synchronized boolean isDirty() {
+        return !pending.isEmpty() || snapshotRequested || flushing;
+    }
+
+    /**
+     * Applique des modifications désignées par identifiant. Un ajout sans identifiant ou
+     * dont l'identifiant est déjà présent, une modification qui ne change rien, ou qui vise
+     * un livre absent, sont ignorés.
+     * @param changes modifications, appliquées dans l'ordre
+     * @return l'effet de chaque modification retenue (dans l'ordre)
+     */
+    public synchronized List<BookDelta> apply(List<Change> changes) {
+        List<BookDelta> deltas = new ArrayList<>(changes.size());
+        State st = indexed();
+        for (Change c : changes) {
+            switch (c) {
+                case Change.Add a -> {
+                    Book b = a.book();
+                    if (b.getId() <= 0 || st.slotOf(b.getId()) >= 0) continue;
+                    BookRecord r = BookRecord.of(b);
+                    st = st.added(r);
+                    record(deltas, new BookDelta(null, r));
+                }
+                case Change.Update u -> {
+                    int i = st.slotOf(u.id());
+                    if (i < 0) continue;
+                    BookRecord old = st.slots.get(i);
+                    Book copy = old.toBook();
+                    u.patch().accept(copy);
+                    BookRecord r = BookRecord.of(copy);
+                    if (r.equals(old)) continue;
+                    st = st.replaced(i, r);
+                    record(deltas, new BookDelta(old, r));
+                }
+                case Change.Remove rm -> {
+                    int i = st.slotOf(rm.id());
+                    if (i < 0) continue;
+                    BookRecord old = st.slots.get(i);
+                    st = st.removed(i, old.id());
+                    if (st.index == null) st = st.withIndex();
+                    record(deltas, new BookDelta(old, null));
+                }
+            }
+        }
+        state = st;
+        return deltas;
+    }
+
+    /**
+     * Remplace le contenu de la bibliothèque. La différence est calculée par identifiant:
+     * livres retirés, modifiés, puis ajoutés (en fin, dans l'ordre de la liste). L'ordre
+     * des livres déjà présents n'est pas modifié.
+     * @param newBooks nouvelle liste de livres (un identifiant en double n'est retenu qu'une fois)
+     * @return l'effet de chaque modification (vide si rien n'a changé)
+     */
+    public synchronized List<BookDelta> replaceBooks(List<Book> newBooks) {
+        State st = indexed();
+        PersistentVector<BookRecord> v = st.slots;
+        Set<Long> kept = new HashSet<>();
+        List<Book> added = new ArrayList<>();
+        List<BookDelta> deltas = new ArrayList<>();
+        for (Book b : newBooks) {
+            if (b.getId() <= 0 || !kept.add(b.getId())) continue;
+            int i = st.slotOf(b.getId());
+            if (i < 0) {
+                added.add(b);
+            } else if (!v.get(i).matches(b)) {
+                BookRecord r = BookRecord.of(b);
+                record(deltas, new BookDelta(v.get(i), r));
+                v = v.with(i, r);
+            }
+        }
+        List<BookRecord> rest = new ArrayList<>(v.size() + added.size());
+        boolean removed = false;
+        for (BookRecord r : v) {
+            if (r == null) continue;
+            if (kept.contains(r.id())) {
+                rest.add(r);
+            } else {
+                record(deltas, new BookDelta(r, null));
+                removed = true;
+            }
+        }
+        for (Book b : added) {
+            BookRecord r = BookRecord.of(b);
+            rest.add(r);
+            record(deltas, new BookDelta(null, r));
+        }
+        if (!deltas.isEmpty()) {
+            // Sans suppression, les positions indexées restent valables
+            if (removed || st.holes > 0) {
+                state = State.of(PersistentVector.of(rest));
+            } else {
+                State next = new State(v, 0, st.index);
+                for (int i = v.size(); i < rest.size(); i++) next = next.added(rest.get(i));
+                state = next;
+            }
+        }
+        return deltas;
+    }
+
+    /** Enregistre l'effet d'une modification et prépare son enregistrement de journal. */
+    private void record(List<BookDelta> deltas, BookDelta d) {
+        deltas.add(d);
+        seq++;
+        if (!journalEnabled) {
+            snapshotRequested = true;
+            return;
+        }
+        if (d.after() != null) {
+            pending.add("{\"seq\":" + seq + ",\"op\":\"put\",\"book\":" + BookJsonCodec.toJson(d.after()) + "}");
+        } else {
+            pending.add("{\"seq\":" + seq + ",\"op\":\"remove\",\"id\":" + d.id() + "}");
+        }
+    }
+
+    /**
+     * Écrit les enregistrements en attente dans le journal, puis replie le journal dans
+     * l'instantané si nécessaire. Appelé uniquement depuis le thread d'écriture.
+     * @return false si les modifications n'ont pas pu être écrites (elles le seront au prochain flush)
+     */
+    public boolean flush() {
+        List<String> batch;
+        boolean compact;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            compact = snapshotRequested;
+            snapshotRequested = false;
+            flushing = true;
+        }
+        try {
+            try {
+                journal.append(batch);
+            } catch (IOException e) {
+                e.printStackTrace();
+                // Le journal n'est plus fiable: se rabattre sur un instantané complet
+                compact = true;
+            }
+            if (compact || needsCompaction()) {
+                if (!compact() && compact) {
+                    synchronized (this) {
+                        snapshotRequested = true;
+                    }
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            synchronized (this) {
+                flushing = false;
+            }
+        }
+    }
+
+    private boolean needsCompaction() {
+        if (journal.getRecordCount() >= COMPACT_MAX_RECORDS) return true;
+        long journalBytes = journal.sizeInBytes();
+        return journalBytes >= COMPACT_MIN_BYTES && journalBytes >= snapshotFile.length();
+    }
+
+    /**
+     * Replie le journal dans l'instantané puis le vide. La version écrite est capturée en
+     * O(1); l'écriture se fait hors verrou, les modifications restent donc possibles.
+     * Seul le thread d'écriture ajoute au journal: le tronquer après l'instantané ne
+     * peut faire perdre que des enregistrements dont la séquence y est incluse. Le journal
+     * n'est vidé qu'une fois l'instantané forcé sur disque ({@link AtomicFiles}).
+     * @return false si l'instantané n'a pas pu être écrit
+     */
+    private boolean compact() {
+        State captured;
+        long versionSeq;
+        synchronized (this) {
+            captured = state;
+            versionSeq = seq;
+        }
+        PersistentVector<BookRecord> version = captured.books();
+        if (!writeSnapshot(version, versionSeq)) return false;
+        // Un index existant est tenu à jour pour que la lecture seule reste immédiate
+        synchronized (indexLock) {
+            if (indexFile.exists() && MappedBookIndex.readSeq(indexFile) < versionSeq) {
+                MappedBookIndex.write(indexFile, version, versionSeq);
+            }
+        }
+        try {
+            journal.truncate();
+        } catch (IOException e) {
+            // Sans danger: les enregistrements restants ont une séquence déjà incluse
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    private boolean writeSnapshot(PersistentVector<BookRecord> version, long versionSeq) {
+        boolean written = AtomicFiles.writeUtf8(snapshotFile, w -> {
+            JsonWriter out = new JsonWriter(w);
+            out.beginObject();
+            out.name("seq").value(versionSeq);
+            out.name("books");
+            BookJsonCodec.writeBookArray(out, version);
+            out.endObject();
+            out.flush();
+        });
+        if (written) {
+            // Copie binaire: en cas d'échec, l'ancienne copie n'a plus la bonne séquence et sera ignorée
+            List<Book> books = new ArrayList<>(version.size());
+            for (BookRecord r : version) books.add(r.toBook());
+            AtomicFiles.write(binaryFile, out -> BookSnapshotCodec.write(out, id, versionSeq, books));
+        }
+        return written;
+    }
+
+    /**
+     * Projette en mémoire l'index binaire du contenu courant.
+     * @param build si true, (ré)écrit l'index lorsqu'il est absent ou périmé; si le journal
+     *              n'est pas vide, une compaction est alors demandée pour que les prochaines
+     *              ouvertures puissent se passer du chargement
+     * @return la vue en lecture seule, ou null si l'index est périmé et que {@code build} vaut false
+     * @throws IOException si l'index ne peut être écrit ou relu
+     */
+    public synchronized MappedBookList openMapped(boolean build) throws IOException {
+        synchronized (indexLock) {
+            if (MappedBookIndex.readSeq(indexFile) != seq) {
+                if (!build) return null;
+                if (!MappedBookIndex.write(indexFile, state.books(), seq)) {
+                    throw new IOException("Écriture de l'index impossible: " + indexFile);
+                }
+                if (journal.sizeInBytes() > 0 || !pending.isEmpty()) snapshotRequested = true;
+            }
+            return MappedBookIndex.open(indexFile);
+        }
+    }
+
+    /**
+     * Projette l'index d'un shard non chargé, sans lire l'instantané JSON, à condition
+     * qu'il soit à jour: même séquence que l'instantané et journal vide.
+     * @param id  identifiant du shard
+     * @param dir répertoire des shards
+     * @return la vue en lecture seule, ou null si l'index est absent ou périmé
+     */
+    public static MappedBookList openMappedIfCurrent(String id, File dir) {
+        File index = new File(dir, id + ".idx");
+        long indexSeq = MappedBookIndex.readSeq(index);
+        if (indexSeq < 0) return null;
+        if (new File(dir, id + ".journal").length() > 0) return null;
+        if (readSnapshotSeq(new File(dir, id + ".json")) != indexSeq) return null;
+        try {
+            return MappedBookIndex.open(index);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Parcourt en flux les livres d'un shard non chargé, sans construire son contenu ni
+     * modifier ses fichiers: ceux de l'instantané JSON, puis ceux ajoutés ou remplacés par
+     * le journal. Un livre remplacé est donc vu plusieurs fois, et un livre supprimé par le
+     * journal est vu quand même.
+     * @param id      identifiant du shard
+     * @param dir     répertoire des shards
+     * @param visitor traitement de chaque livre (instance propre à l'appel)
+     */
+    public static void scan(String id, File dir, Consumer<Book> visitor) {
+        long snapshotSeq = 0;
+        File snapshot = new File(dir, id + ".json");
+        if (snapshot.exists()) {
+            // {"seq": n, "books": [...]}: la séquence est écrite en premier
+            try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(snapshot), StandardCharsets.UTF_8)))) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "seq" -> snapshotSeq = in.nextLong();
+                        case "books" -> {
+                            in.beginArray();
+                            while (in.hasNext()) visitor.accept(BookJsonCodec.readBook(in));
+                            in.endArray();
+                        }
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        long afterSeq = snapshotSeq;
+        new LibraryJournal(new File(dir, id + ".journal")).scan(record -> {
+            if (record.seq <= afterSeq) return;
+            switch (record.op) {
+                case "put" -> {
+                    if (record.book != null) visitor.accept(record.book);
+                }
+                case "splice" -> record.ins.forEach(visitor);
+                default -> { }
+            }
+        });
+    }
+
+    /** Lit la séquence d'un instantané (premier champ écrit), sans parcourir les livres. */
+    private static long readSnapshotSeq(File snapshot) {
+        if (!snapshot.exists()) return 0;
+        try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(snapshot), StandardCharsets.UTF_8)))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("seq")) return in.nextLong();
+                in.skipValue();
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /** Abandonne les écritures en attente (bibliothèque supprimée). */
+    public synchronized void discardPending() {
+        pending.clear();
+        snapshotRequested = false;
+    }
+
+    /**
+     * Supprime les fichiers d'un shard (bibliothèque supprimée).
+     * @param id  identifiant du shard
+     * @param dir répertoire des shards
+     */
+    public static void deleteFiles(String id, File dir) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, id + ".json").delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, id + ".journal").delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, id + ".bfxs").delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, id + ".idx").delete();
+    }
+
+    private static List<BookRecord> toRecords(List<Book> list) {
+        List<BookRecord> records = new ArrayList<>(list.size());
+        for (Book b : list) records.add(BookRecord.of(b));
+        return records;
+    }
+}
@@ -0,0 +1,188 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index binaire à disposition fixe d'une bibliothèque, destiné à être projeté en
+ * mémoire ({@link MappedByteBuffer}) pour une consultation en lecture seule.
+ * <p>
+ * Format (little-endian):
+ * <pre>
+ * en-tête (32 octets): "BFXM" | version (i32) | n (i32) | taille de ligne (i32) | seq (i64) | début du tas (i64)
+ * lignes: n × 80 octets
+ *   6 × (offset i32, longueur i32) pour titre, auteur, genre, statut, résumé, couverture
+ *   année (i32) | drapeaux (i32) | addedAt (i64) | borrowedAt (i64) | identifiant (i64)
+ * tas de chaînes: octets UTF-8 (auteurs, genres et statuts dédupliqués)
+ * </pre>
+ * Une longueur de -1 désigne une chaîne nulle. La séquence {@code seq} est celle du shard
+ * au moment de l'écriture: elle permet de savoir si l'index est à jour sans relire le JSON.
+ * Comme l'accès à une ligne est direct, l'ouverture ne dépend pas du nombre de livres.
+ */
+public final class MappedBookIndex {
+    private static final int MAGIC = 0x4D584642; // "BFXM" en little-endian
+    /** Version courante du format. */
+    public static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int ROW_SIZE = 80;
+
+    static final int F_TITLE = 0;
+    static final int F_AUTHOR = 1;
+    static final int F_GENRE = 2;
+    static final int F_STATUS = 3;
+    static final int F_SUMMARY = 4;
+    static final int F_COVER = 5;
+    static final int OFF_YEAR = 48;
+    static final int OFF_FLAGS = 52;
+    static final int OFF_ADDED = 56;
+    static final int OFF_BORROWED = 64;
+    static final int OFF_ID = 72;
+
+    static final int FLAG_AVAILABLE = 1;
+    static final int FLAG_HAS_ADDED = 2;
+    static final int FLAG_HAS_BORROWED = 4;
+
+    private MappedBookIndex() {
+    }
+
+    /**
+     * Écrit l'index d'une bibliothèque (de manière atomique).
+     * @param file  fichier cible
+     * @param books livres
+     * @param seq   séquence du shard correspondant
+     * @return true si l'écriture a réussi
+     */
+    public static boolean write(File file, List<BookRecord> books, long seq) {
+        int n = books.size();
+        ByteBuffer rows = ByteBuffer.allocate(n * ROW_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        Heap heap = new Heap();
+        for (BookRecord b : books) {
+            int base = rows.position();
+            heap.put(rows, b.title(), false);
+            heap.put(rows, b.author(), true);
+            heap.put(rows, b.genre(), true);
+            heap.put(rows, b.readingStatus(), true);
+            heap.put(rows, b.summary(), false);
+            heap.put(rows, b.coverUrl(), false);
+            int flags = (b.available() ? FLAG_AVAILABLE : 0)
+                    | (b.addedAt() != Book.NO_DATE ? FLAG_HAS_ADDED : 0)
+                    | (b.borrowedAt() != Book.NO_DATE ? FLAG_HAS_BORROWED : 0);
+            rows.putInt(b.year());
+            rows.putInt(flags);
+            rows.putLong(b.addedAt());
+            rows.putLong(b.borrowedAt());
+            rows.putLong(b.id());
+            if (rows.position() - base != ROW_SIZE) throw new IllegalStateException("Ligne d'index mal formée");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(ROW_SIZE).putLong(seq)
+                .putLong(HEADER_SIZE + (long) n * ROW_SIZE);
+        return AtomicFiles.write(file, out -> {
+            out.write(header.array());
+            out.write(rows.array(), 0, rows.position());
+            out.write(heap.buf, 0, heap.len);
+        });
+    }
+
+    /**
+     * Lit uniquement la séquence enregistrée dans l'en-tête d'un index.
+     * @param file fichier d'index
+     * @return la séquence, ou -1 si l'index est absent ou invalide
+     */
+    public static long readSeq(File file) {
+        if (!file.exists() || file.length() < HEADER_SIZE) return -1;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) return -1;
+            return header.getLong(16);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Projette un index en mémoire. Le coût ne dépend pas du nombre de livres: les
+     * champs sont décodés à la demande par {@link MappedBookList}.
+     * @param file fichier d'index
+     * @return la liste en lecture seule
+     * @throws IOException si le fichier est absent, invalide ou trop volumineux
+     */
+    public static MappedBookList open(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) throw new EOFException("Index tronqué: " + file);
+            if (size > Integer.MAX_VALUE) throw new IOException("Index trop volumineux pour une projection unique: " + file);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt(0) != MAGIC) throw new IOException("Ce fichier n'est pas un index BiblioFX: " + file);
+            int version = buf.getInt(4);
+            if (version != VERSION) throw new IOException("Version d'index non supportée: " + version);
+            int n = buf.getInt(8);
+            int rowSize = buf.getInt(12);
+            long seq = buf.getLong(16);
+            long heapStart = buf.getLong(24);
+            if (rowSize != ROW_SIZE || n < 0 || heapStart != HEADER_SIZE + (long) n * ROW_SIZE || heapStart > size) {
+                throw new IOException("Index corrompu: " + file);
+            }
+            // La projection reste valide après la fermeture du canal
+            return new MappedBookList(buf, n, (int) heapStart, seq);
+        }
+    }
+
+    /** Tas de chaînes UTF-8 en construction, avec déduplication optionnelle. */
+    private static final class Heap {
+        byte[] buf = new byte[1 << 16];
+        int len;
+        final Map<String, Integer> shared = new HashMap<>();
+
+        void put(ByteBuffer rows, String s, boolean dedupe) {
+            if (s == null) {
+                rows.putInt(0).putInt(-1);
+                return;
+            }
+            if (dedupe) {
+                Integer off = shared.get(s);
+                if (off != null) {
+                    rows.putInt(off).putInt(utf8Length(s));
+                    return;
+                }
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            if ((long) len + b.length > Integer.MAX_VALUE - HEADER_SIZE) {
+                throw new IllegalStateException("Tas de chaînes trop volumineux");
+            }
+            if (len + b.length > buf.length) {
+                buf = java.util.Arrays.copyOf(buf, Math.max(buf.length * 2, len + b.length));
+            }
+            System.arraycopy(b, 0, buf, len, b.length);
+            if (dedupe) shared.put(s, len);
+            rows.putInt(len).putInt(b.length);
+            len += b.length;
+        }
+
+        private static int utf8Length(String s) {
+            int n = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) n++;
+                else if (c < 0x800) n += 2;
+                else if (Character.isHighSurrogate(c)) { n += 4; i++; }
+                else n += 3;
+            }
+            return n;
+        }
+    }
+}
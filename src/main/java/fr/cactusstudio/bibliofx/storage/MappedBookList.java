@@ -0,0 +1,136 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import fr.cactusstudio.bibliofx.model.Book;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Vue en lecture seule d'un index projeté en mémoire ({@link MappedBookIndex}).
+ * <p>
+ * Aucun livre n'est décodé à l'ouverture: {@link #get(int)} construit le {@link Book}
+ * d'une ligne à chaque appel (la conservation des lignes affichées revient à l'appelant,
+ * voir {@code PagedBookView}). Les champs d'une ligne peuvent aussi être lus un à un,
+ * pour filtrer ou trier sans construire de livre ({@link BookColumns}). Les livres
+ * retournés sont des copies: les modifier n'a aucun effet sur le fichier.
+ * <p>
+ * Lecture seule et sans état: utilisable depuis plusieurs threads.
+ */
+public final class MappedBookList extends AbstractList<Book> implements BookColumns, RandomAccess {
+    private final ByteBuffer buf;
+    private final int size;
+    private final int heapStart;
+    private final long seq;
+
+    MappedBookList(ByteBuffer buf, int size, int heapStart, long seq) {
+        this.buf = buf;
+        this.size = size;
+        this.heapStart = heapStart;
+        this.seq = seq;
+    }
+
+    /** @return la séquence du shard au moment de l'écriture de l'index */
+    public long getSeq() { return seq; }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Book get(int index) {
+        int row = row(index);
+        Book b = new Book(buf.getLong(row + MappedBookIndex.OFF_ID));
+        b.setTitle(string(row, MappedBookIndex.F_TITLE));
+        b.setAuthor(string(row, MappedBookIndex.F_AUTHOR));
+        b.setGenre(string(row, MappedBookIndex.F_GENRE));
+        b.setReadingStatus(string(row, MappedBookIndex.F_STATUS));
+        b.setSummary(string(row, MappedBookIndex.F_SUMMARY));
+        b.setCoverUrl(string(row, MappedBookIndex.F_COVER));
+        b.setYear(buf.getInt(row + MappedBookIndex.OFF_YEAR));
+        int flags = buf.getInt(row + MappedBookIndex.OFF_FLAGS);
+        b.setAvailable((flags & MappedBookIndex.FLAG_AVAILABLE) != 0);
+        if ((flags & MappedBookIndex.FLAG_HAS_ADDED) != 0) b.setAddedAt(buf.getLong(row + MappedBookIndex.OFF_ADDED));
+        if ((flags & MappedBookIndex.FLAG_HAS_BORROWED) != 0) b.setBorrowedAt(buf.getLong(row + MappedBookIndex.OFF_BORROWED));
+        return b;
+    }
+
+    @Override
+    public String getTitle(int index) {
+        return string(row(index), MappedBookIndex.F_TITLE);
+    }
+
+    @Override
+    public String getString(int index, Field field) {
+        return string(row(index), slot(field));
+    }
+
+    /** {@inheritDoc} La référence est la position de la valeur dans le tas de l'index. */
+    @Override
+    public int ref(int index, Field field) {
+        int row = row(index);
+        int slot = slot(field);
+        int len = buf.getInt(row + slot * 8 + 4);
+        // Une chaîne vide n'occupe pas le tas: sa position peut être celle de la suivante
+        if (len <= 0) return len < 0 ? -1 : -2;
+        return buf.getInt(row + slot * 8);
+    }
+
+    @Override
+    public long getId(int index) {
+        return buf.getLong(row(index) + MappedBookIndex.OFF_ID);
+    }
+
+    @Override
+    public int getYear(int index) {
+        return buf.getInt(row(index) + MappedBookIndex.OFF_YEAR);
+    }
+
+    @Override
+    public boolean isAvailable(int index) {
+        return (buf.getInt(row(index) + MappedBookIndex.OFF_FLAGS) & MappedBookIndex.FLAG_AVAILABLE) != 0;
+    }
+
+    @Override
+    public long getAddedAt(int index) {
+        int row = row(index);
+        return (buf.getInt(row + MappedBookIndex.OFF_FLAGS) & MappedBookIndex.FLAG_HAS_ADDED) != 0
+                ? buf.getLong(row + MappedBookIndex.OFF_ADDED) : 0;
+    }
+
+    @Override
+    public long getBorrowedAt(int index) {
+        int row = row(index);
+        return (buf.getInt(row + MappedBookIndex.OFF_FLAGS) & MappedBookIndex.FLAG_HAS_BORROWED) != 0
+                ? buf.getLong(row + MappedBookIndex.OFF_BORROWED) : 0;
+    }
+
+    /** @return l'emplacement du champ dans une ligne de l'index */
+    private static int slot(Field field) {
+        return switch (field) {
+            case TITLE -> MappedBookIndex.F_TITLE;
+            case AUTHOR -> MappedBookIndex.F_AUTHOR;
+            case GENRE -> MappedBookIndex.F_GENRE;
+            case READING_STATUS -> MappedBookIndex.F_STATUS;
+            case SUMMARY -> MappedBookIndex.F_SUMMARY;
+            case COVER -> MappedBookIndex.F_COVER;
+        };
+    }
+
+    private int row(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", taille: " + size);
+        return MappedBookIndex.HEADER_SIZE + index * MappedBookIndex.ROW_SIZE;
+    }
+
+    private String string(int row, int field) {
+        int off = buf.getInt(row + field * 8);
+        int len = buf.getInt(row + field * 8 + 4);
+        if (len < 0) return null;
+        if (len == 0) return "";
+        byte[] bytes = new byte[len];
+        buf.get(heapStart + off, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
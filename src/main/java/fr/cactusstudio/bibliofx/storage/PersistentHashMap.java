@@ -0,0 +1,355 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Table associative immuable à partage de structure (HAMT: « hash array mapped trie »).
+ * <p>
+ * Les clés sont réparties selon 5 bits de leur hachage par niveau; chaque nœud ne stocke
+ * que ses entrées présentes, repérées par un masque de bits. Un ajout ou un retrait ne
+ * copie que le chemin de la racine à l'entrée (O(log32 n)), le reste est partagé avec
+ * la version précédente. Les collisions complètes de hachage sont rangées dans un
+ * nœud linéaire.
+ *
+ * @param <K> type des clés
+ * @param <V> type des valeurs
+ */
+public final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /** @return la table vide */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Construit une table en une passe, sans copies de chemins: les entrées sont réparties
+     * niveau par niveau selon leur hachage (tri par dénombrement). En cas de clés en
+     * double, la dernière l'emporte.
+     * @param n     nombre d'entrées
+     * @param key   clé de l'entrée i (non nulle)
+     * @param value valeur de l'entrée i
+     * @return la table
+     */
+    public static <K, V> PersistentHashMap<K, V> of(int n, IntFunction<? extends K> key, IntFunction<? extends V> value) {
+        if (n == 0) return empty();
+        Object[] keys = new Object[n];
+        Object[] values = new Object[n];
+        int[] hashes = new int[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.apply(i);
+            hashes[i] = hash(keys[i]);
+            values[i] = value.apply(i);
+            order[i] = i;
+        }
+        int[] size = new int[1];
+        Node root = new Builder(keys, values, hashes, order).build(0, n, 0, size);
+        return new PersistentHashMap<>(root, size[0]);
+    }
+
+    /** @return le nombre d'entrées */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key clé (non nulle)
+     * @return la valeur associée, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        return root == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    /**
+     * @param key   clé (non nulle)
+     * @param value valeur
+     * @return une nouvelle table contenant l'association
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node base = root != null ? root : BitmapNode.EMPTY;
+        Node newRoot = base.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key clé
+     * @return une nouvelle table sans cette clé (ou la même si elle est absente)
+     */
+    public PersistentHashMap<K, V> minus(K key) {
+        if (root == null) return this;
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.requireNonNull(key, "key").hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Construction récursive à partir d'entrées triées par tranche de hachage. */
+    private record Builder(Object[] keys, Object[] values, int[] hashes, int[] order) {
+
+        BitmapNode build(int from, int to, int shift, int[] size) {
+            // Tri stable par dénombrement sur les 5 bits du niveau
+            int[] start = new int[WIDTH + 1];
+            for (int i = from; i < to; i++) start[slot(order[i], shift) + 1]++;
+            for (int b = 0; b < WIDTH; b++) start[b + 1] += start[b];
+            int[] sorted = new int[to - from];
+            int[] next = Arrays.copyOf(start, WIDTH);
+            for (int i = from; i < to; i++) sorted[next[slot(order[i], shift)]++] = order[i];
+            System.arraycopy(sorted, 0, order, from, sorted.length);
+
+            int bitmap = 0;
+            int buckets = 0;
+            for (int b = 0; b < WIDTH; b++) {
+                if (start[b + 1] > start[b]) {
+                    bitmap |= 1 << b;
+                    buckets++;
+                }
+            }
+            Object[] array = new Object[2 * buckets];
+            int j = 0;
+            for (int b = 0; b < WIDTH; b++) {
+                int lo = from + start[b];
+                int hi = from + start[b + 1];
+                if (lo == hi) continue;
+                if (hi - lo == 1) {
+                    array[j] = keys[order[lo]];
+                    array[j + 1] = values[order[lo]];
+                    size[0]++;
+                } else if (sameHash(lo, hi)) {
+                    Object[] pairs = collision(lo, hi);
+                    size[0] += pairs.length / 2;
+                    if (pairs.length == 2) {
+                        array[j] = pairs[0];
+                        array[j + 1] = pairs[1];
+                    } else {
+                        array[j + 1] = new CollisionNode(hashes[order[lo]], pairs);
+                    }
+                } else {
+                    array[j + 1] = build(lo, hi, shift + BITS, size);
+                }
+                j += 2;
+            }
+            return new BitmapNode(bitmap, array);
+        }
+
+        private int slot(int i, int shift) {
+            return (hashes[i] >>> shift) & MASK;
+        }
+
+        private boolean sameHash(int lo, int hi) {
+            int h = hashes[order[lo]];
+            for (int i = lo + 1; i < hi; i++) {
+                if (hashes[order[i]] != h) return false;
+            }
+            return true;
+        }
+
+        /** @return les paires (clé, valeur) distinctes, la dernière valeur l'emportant */
+        private Object[] collision(int lo, int hi) {
+            Object[] pairs = new Object[2 * (hi - lo)];
+            int len = 0;
+            outer:
+            for (int i = lo; i < hi; i++) {
+                Object k = keys[order[i]];
+                for (int p = 0; p < len; p += 2) {
+                    if (k.equals(pairs[p])) {
+                        pairs[p + 1] = values[order[i]];
+                        continue outer;
+                    }
+                }
+                pairs[len] = k;
+                pairs[len + 1] = values[order[i]];
+                len += 2;
+            }
+            return Arrays.copyOf(pairs, len);
+        }
+    }
+
+    private interface Node {
+        Object find(int shift, int hash, Object key);
+
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /** @return le nœud sans la clé, le même nœud si absente, ou null si le nœud devient vide */
+        Node without(int shift, int hash, Object key);
+    }
+
+    /**
+     * Nœud indexé par masque: {@code array} contient, pour chaque bit présent, soit
+     * (clé, valeur), soit (null, sous-nœud).
+     */
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return null;
+            int i = 2 * index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) return ((Node) v).find(shift + BITS, hash, key);
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int idx = index(bit);
+            int i = 2 * idx;
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, a);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                return child == v ? this : with(i + 1, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(i + 1, value);
+            }
+            // Deux clés différentes au même emplacement: descendre d'un niveau
+            added[0] = true;
+            return withPair(i, null, split(shift + BITS, k, v, hash, key, value));
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return this;
+            int i = 2 * index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).without(shift + BITS, hash, key);
+                if (child == v) return this;
+                if (child != null) return with(i + 1, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, a);
+        }
+
+        private BitmapNode with(int i, Object o) {
+            Object[] a = array.clone();
+            a[i] = o;
+            return new BitmapNode(bitmap, a);
+        }
+
+        private BitmapNode withPair(int i, Object k, Object v) {
+            Object[] a = array.clone();
+            a[i] = k;
+            a[i + 1] = v;
+            return new BitmapNode(bitmap, a);
+        }
+
+        private static Node split(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+            boolean[] ignored = new boolean[1];
+            return EMPTY.assoc(shift, h1, k1, v1, ignored).assoc(shift, h2, k2, v2, ignored);
+        }
+    }
+
+    /** Clés distinctes de même hachage, rangées à plat. */
+    private static final class CollisionNode implements Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Nouvelle clé de hachage différent: insérer ce nœud dans un nœud indexé
+                BitmapNode parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[]{null, this});
+                return parent.assoc(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) return this;
+                Object[] a = array.clone();
+                a[i + 1] = value;
+                return new CollisionNode(hash, a);
+            }
+            Object[] a = Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, a);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) return this;
+            if (array.length == 2) return null;
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new CollisionNode(hash, a);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Vecteur immuable à partage de structure (trie de largeur 32 avec « queue »).
+ * <p>
+ * Chaque modification retourne un nouveau vecteur qui partage tous les nœuds non
+ * touchés avec l'ancien: ajout en fin en O(1) amorti, lecture et remplacement d'un
+ * élément en O(log32 n). Un vecteur ne change jamais une fois construit: le
+ * transmettre à un autre thread (pour une écriture disque, par exemple) ne coûte
+ * qu'une référence et ne nécessite aucune copie ni aucun verrou.
+ * <p>
+ * Les opérations qui modifient la {@link List} héritée lèvent
+ * {@link UnsupportedOperationException}.
+ *
+ * @param <E> type des éléments
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentVector EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, EMPTY_NODE);
+
+    private final int size;
+    /** Profondeur de l'arbre en bits (5 par niveau). */
+    private final int shift;
+    /** Racine du trie: tableaux de 32 nœuds ou, au dernier niveau, de 32 éléments. */
+    private final Object[] root;
+    /** Derniers éléments (au plus 32), hors du trie. */
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /** @return le vecteur vide */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Construit un vecteur en O(n), sans copies intermédiaires.
+     * @param items éléments
+     * @return le vecteur
+     */
+    public static <E> PersistentVector<E> of(Collection<? extends E> items) {
+        if (items instanceof PersistentVector<?> v) {
+            @SuppressWarnings("unchecked") PersistentVector<E> same = (PersistentVector<E>) v;
+            return same;
+        }
+        Object[] all = items.toArray();
+        int n = all.length;
+        if (n == 0) return empty();
+        int tailLen = n - ((n - 1) >>> BITS << BITS);
+        int treeLen = n - tailLen;
+        Object[] tail = Arrays.copyOfRange(all, treeLen, n);
+        // Feuilles, puis niveaux successifs jusqu'à une racine unique
+        Object[][] level = new Object[treeLen >>> BITS][];
+        for (int i = 0; i < level.length; i++) level[i] = Arrays.copyOfRange(all, i << BITS, (i + 1) << BITS);
+        int shift = BITS;
+        while (level.length > WIDTH) {
+            Object[][] up = new Object[(level.length + MASK) >>> BITS][];
+            for (int i = 0; i < up.length; i++) {
+                up[i] = Arrays.copyOfRange(level, i << BITS, Math.min(level.length, (i + 1) << BITS), Object[].class);
+            }
+            level = up;
+            shift += BITS;
+        }
+        Object[] root = Arrays.copyOf(level, level.length, Object[].class);
+        return new PersistentVector<>(n, shift, root, tail);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /** @return le tableau de 32 éléments contenant l'indice i */
+    private Object[] leafFor(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", taille: " + size);
+        if (i >= tailOffset()) return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(i >>> level) & MASK];
+        }
+        return node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    /**
+     * @param e élément à ajouter en fin
+     * @return un nouveau vecteur
+     */
+    public PersistentVector<E> plus(E e) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = e;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        // Queue pleine: elle descend dans le trie
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[]{root, newPath(shift, tail)};
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{e});
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int sub = ((size - 1) >>> level) & MASK;
+        Object[] ret = Arrays.copyOf(parent, Math.max(parent.length, sub + 1));
+        if (level == BITS) {
+            ret[sub] = tailNode;
+        } else {
+            Object[] child = sub < parent.length ? (Object[]) parent[sub] : null;
+            ret[sub] = child != null ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        return ret;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        return level == 0 ? node : new Object[]{newPath(level - BITS, node)};
+    }
+
+    /**
+     * @param index position
+     * @param e     nouvel élément
+     * @return un nouveau vecteur (seul le chemin vers l'élément est copié)
+     */
+    public PersistentVector<E> with(int index, E e) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", taille: " + size);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = e;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, e), tail);
+    }
+
+    private static Object[] assoc(int level, Object[] node, int i, Object e) {
+        Object[] ret = node.clone();
+        if (level == 0) {
+            ret[i & MASK] = e;
+        } else {
+            int sub = (i >>> level) & MASK;
+            ret[sub] = assoc(level - BITS, (Object[]) node[sub], i, e);
+        }
+        return ret;
+    }
+
+    /**
+     * @param n nombre d'éléments à conserver
+     * @return les n premiers éléments (partage de structure lorsque la coupure tombe dans la queue)
+     */
+    public PersistentVector<E> take(int n) {
+        if (n < 0 || n > size) throw new IndexOutOfBoundsException("Taille: " + n);
+        if (n == size) return this;
+        if (n == 0) return empty();
+        if (n > tailOffset()) {
+            return new PersistentVector<>(n, shift, root, Arrays.copyOf(tail, n - tailOffset()));
+        }
+        return of(subList(0, n));
+    }
+
+    /**
+     * Remplace {@code del} éléments à partir de {@code at} par {@code ins}.
+     * <p>
+     * Les cas courants partagent la structure: remplacement d'autant d'éléments,
+     * ajout ou suppression en fin. Un retrait ou une insertion au milieu reconstruit
+     * le vecteur en O(n).
+     *
+     * @param at  position
+     * @param del nombre d'éléments retirés
+     * @param ins éléments insérés
+     * @return un nouveau vecteur
+     */
+    public PersistentVector<E> splice(int at, int del, List<? extends E> ins) {
+        if (at < 0 || del < 0 || at + del > size) throw new IndexOutOfBoundsException("splice " + at + "+" + del + " / " + size);
+        if (del == ins.size()) {
+            PersistentVector<E> v = this;
+            for (int i = 0; i < del; i++) v = v.with(at + i, ins.get(i));
+            return v;
+        }
+        if (at + del == size) {
+            PersistentVector<E> v = take(at);
+            for (E e : ins) v = v.plus(e);
+            return v;
+        }
+        Object[] all = new Object[size - del + ins.size()];
+        int k = 0;
+        for (int i = 0; i < at; i++) all[k++] = get(i);
+        for (E e : ins) all[k++] = e;
+        for (int i = at + del; i < size; i++) all[k++] = get(i);
+        @SuppressWarnings("unchecked") List<E> list = (List<E>) Arrays.asList(all);
+        return of(list);
+    }
+}
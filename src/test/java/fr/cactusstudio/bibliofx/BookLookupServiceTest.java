@@ -0,0 +1,154 @@
+package fr.cactusstudio.bibliofx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.cactusstudio.bibliofx.BookLookupService.Suggestion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recherches servies par un serveur HTTP local à la place de l'API Google Books.
+ */
+class BookLookupServiceTest {
+    private static final String RESPONSE = """
+            {"items": [{"volumeInfo": {"title": "Les Misérables", "authors": ["Victor Hugo"], "publishedDate": "1862"}}]}
+            """;
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private final AtomicInteger requests = new AtomicInteger();
+    /** Instant d'arrivée de chaque requête (System.nanoTime). */
+    private final List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    /** Requêtes arrivées, avant réponse. */
+    private volatile CountDownLatch arrived = new CountDownLatch(1);
+    /** Réponses retenues tant qu'il n'est pas ouvert. */
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/volumes", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        arrivals.add(System.nanoTime());
+        arrived.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private BookLookupService service(double ratePerSecond, int burst) {
+        URI api = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/volumes");
+        return new BookLookupService(api, Duration.ofSeconds(2), Duration.ofSeconds(5), ratePerSecond, burst);
+    }
+
+    @Test
+    void concurrentSearchesShareOneRequest() throws Exception {
+        BookLookupService lookup = service(100, 10);
+        release = new CountDownLatch(1);
+
+        List<CompletableFuture<List<Suggestion>>> searches = new ArrayList<>();
+        for (String q : List.of("Les Misérables", "les misérables", "  LES   Misérables ", "Les Misérables")) {
+            searches.add(lookup.search(q));
+        }
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        // Laisse le temps à une éventuelle requête en double d'arriver
+        Thread.sleep(200);
+        release.countDown();
+
+        for (CompletableFuture<List<Suggestion>> f : searches) {
+            List<Suggestion> list = f.get(5, TimeUnit.SECONDS);
+            assertEquals(1, list.size());
+            assertEquals("Victor Hugo", list.get(0).author());
+        }
+        assertEquals(1, requests.get());
+
+        // Réponse en cache: pas de nouvelle requête
+        assertEquals(1, lookup.search("les misérables").get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void cancelStopsTheRequest() throws Exception {
+        // Un jeton d'avance, puis un toutes les 500 ms
+        BookLookupService lookup = service(2, 1);
+        lookup.search("premier").get(5, TimeUnit.SECONDS);
+        assertEquals(1, requests.get());
+
+        // Recherche en attente du limiteur, annulée avant son départ: rien n'est envoyé
+        CompletableFuture<List<Suggestion>> waiting = lookup.search("second");
+        assertTrue(waiting.cancel(true));
+        Thread.sleep(1000);
+        assertEquals(1, requests.get());
+
+        // Recherche envoyée puis annulée par son seul appelant: abandonnée, pas partagée ensuite
+        arrived = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        CompletableFuture<List<Suggestion>> sent = lookup.search("troisième");
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        assertTrue(sent.cancel(true));
+        release.countDown();
+        assertEquals(1, lookup.search("troisième").get(5, TimeUnit.SECONDS).size());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void requestsRespectTokenBucket() throws Exception {
+        // Rafale de 2, puis une requête toutes les 200 ms
+        BookLookupService lookup = service(5, 2);
+        long start = System.nanoTime();
+        List<CompletableFuture<List<Suggestion>>> searches = new ArrayList<>();
+        for (int i = 0; i < 6; i++) searches.add(lookup.search("titre " + i));
+        for (CompletableFuture<List<Suggestion>> f : searches) f.get(10, TimeUnit.SECONDS);
+
+        assertEquals(6, requests.get());
+        List<Long> sorted = new ArrayList<>(arrivals);
+        Collections.sort(sorted);
+        for (int i = 2; i < sorted.size(); i++) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(sorted.get(i) - start);
+            // Tolérance pour l'arrondi du minuteur
+            assertTrue(elapsedMs >= (i - 1) * 200L - 20, "requête " + i + " partie après " + elapsedMs + " ms");
+        }
+    }
+}
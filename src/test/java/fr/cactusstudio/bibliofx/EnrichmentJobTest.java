@@ -0,0 +1,231 @@
+package fr.cactusstudio.bibliofx;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.BookDelta;
+import fr.cactusstudio.bibliofx.model.Change;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Complétion en lot servie par un serveur HTTP local: reprise après interruption et
+ * livres en échec.
+ * <p>
+ * Le serveur ne renvoie qu'un résumé: un livre complété manque encore de couverture et
+ * reste donc à compléter; seul le point de reprise lui évite une nouvelle recherche.
+ */
+class EnrichmentJobTest {
+    @TempDir
+    File home;
+
+    private String previousHome;
+    private HttpServer server;
+    private ExecutorService handlers;
+    /** Titres recherchés, dans l'ordre d'arrivée. */
+    private final List<String> queried = Collections.synchronizedList(new ArrayList<>());
+    /** Titres (en minuscules) dont la réponse est retenue jusqu'à {@link #release}. */
+    private volatile Set<String> held = Set.of();
+    private final CountDownLatch release = new CountDownLatch(1);
+    /** Titres (en minuscules) pour lesquels le serveur répond par une erreur. */
+    private volatile Set<String> failing = Set.of();
+
+    private LibraryRepository repository;
+    private String library;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Dépôt et points de reprise dans un répertoire personnel jetable
+        previousHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.getPath());
+        repository = new LibraryRepository();
+        library = repository.getCurrentLibrary();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/volumes", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        server.stop(0);
+        handlers.shutdownNow();
+        System.setProperty("user.home", previousHome);
+    }
+
+    /** Répond à {@code q=intitle:<titre> inauthor:<auteur>} par un livre de même titre et auteur. */
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String p : exchange.getRequestURI().getRawQuery().split("&")) {
+            int eq = p.indexOf('=');
+            params.put(p.substring(0, eq), URLDecoder.decode(p.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        String q = params.get("q");
+        int by = q.indexOf(" inauthor:");
+        String title = q.substring("intitle:".length(), by);
+        String author = q.substring(by + " inauthor:".length());
+        queried.add(title);
+        if (held.contains(title)) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failing.contains(title)) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        JsonObject info = new JsonObject();
+        info.addProperty("title", title);
+        JsonArray authors = new JsonArray();
+        authors.add(author);
+        info.add("authors", authors);
+        info.addProperty("description", "Résumé de " + title);
+        JsonObject item = new JsonObject();
+        item.add("volumeInfo", info);
+        JsonArray items = new JsonArray();
+        items.add(item);
+        JsonObject response = new JsonObject();
+        response.add("items", items);
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private long add(String title) {
+        List<BookDelta> deltas = repository.apply(library, List.of(new Change.Add(new Book(title, "Auteur", 1900, "Roman", true))));
+        return deltas.get(0).after().id();
+    }
+
+    private EnrichmentJob job(AtomicReference<EnrichmentJob.Progress> last) {
+        URI api = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/volumes");
+        BookLookupService lookup = new BookLookupService(api, Duration.ofSeconds(2), Duration.ofSeconds(20), 100, 10);
+        return new EnrichmentJob(repository, lookup, library, new File(home, "enrich"), new EnrichmentJob.Listener() {
+            @Override
+            public void onProgress(EnrichmentJob.Progress progress) {
+                last.set(progress);
+            }
+
+            @Override
+            public void onCommit(List<BookDelta> deltas) {
+            }
+        });
+    }
+
+    private File checkpoint() {
+        return new File(home, "enrich/" + repository.libraryId(library) + ".done");
+    }
+
+    private List<Long> checkpointIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (String line : Files.readAllLines(checkpoint().toPath())) ids.add(Long.parseLong(line.trim()));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /** @return le résumé du livre, null s'il n'en a pas */
+    private String summary(long id) {
+        String s = repository.findBook(library, id).getSummary();
+        return s == null || s.isBlank() ? null : s;
+    }
+
+    @Test
+    void interruptedJobResumesFromCheckpoint() throws Exception {
+        long first = add("Premier");
+        long second = add("Deuxième");
+        long third = add("Troisième");
+        held = Set.of("troisième");
+
+        AtomicReference<EnrichmentJob.Progress> progress = new AtomicReference<>();
+        EnrichmentJob interrupted = job(progress);
+        interrupted.start();
+        // Deux livres traités, le troisième retenu par le serveur
+        for (int i = 0; i < 100 && (progress.get() == null || progress.get().done() < 2); i++) Thread.sleep(50);
+        assertEquals(2, progress.get().done());
+        interrupted.cancel();
+        assertTrue(interrupted.await(10_000));
+        assertTrue(progress.get().cancelled());
+
+        // Résultats obtenus appliqués et notés; le livre interrompu ne l'est pas
+        assertEquals(List.of(Math.min(first, second), Math.max(first, second)), checkpointIds());
+        assertNotNull(summary(first));
+        assertNull(summary(third));
+
+        held = Set.of();
+        queried.clear();
+        EnrichmentJob resumed = job(progress);
+        resumed.start();
+        assertTrue(resumed.await(10_000));
+        assertEquals(List.of("troisième"), queried);
+        assertEquals(1, progress.get().total());
+        assertEquals("Résumé de troisième", summary(third));
+        // Travail terminé: point de reprise supprimé
+        assertFalse(checkpoint().exists());
+    }
+
+    @Test
+    void failedItemDoesNotAdvanceCheckpoint() throws Exception {
+        long ok = add("Réussi");
+        long ko = add("Échec");
+        failing = Set.of("échec");
+
+        AtomicReference<EnrichmentJob.Progress> progress = new AtomicReference<>();
+        EnrichmentJob withFailure = job(progress);
+        withFailure.start();
+        // Nouvelles tentatives avec délai croissant: environ 10 s au plus
+        assertTrue(withFailure.await(30_000));
+        assertEquals(1, progress.get().failed());
+        assertEquals(1, progress.get().enriched());
+        assertEquals(List.of(ok), checkpointIds());
+        assertNull(summary(ko));
+
+        failing = Set.of();
+        queried.clear();
+        EnrichmentJob retry = job(progress);
+        retry.start();
+        assertTrue(retry.await(10_000));
+        assertEquals(List.of("échec"), queried);
+        assertEquals("Résumé de échec", summary(ko));
+        assertFalse(checkpoint().exists());
+    }
+}
@@ -0,0 +1,86 @@
+package fr.cactusstudio.bibliofx.storage;
+
+import fr.cactusstudio.bibliofx.model.Book;
+import fr.cactusstudio.bibliofx.model.Change;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reprise après un arrêt brutal pendant l'écriture du journal d'un shard.
+ */
+class LibraryJournalTest {
+    @TempDir
+    File dir;
+
+    @Test
+    void appendAfterTornTailSurvivesReopen() throws IOException {
+        LibraryShard shard = LibraryShard.create("lib", dir, true, List.of());
+        shard.apply(List.of(new Change.Add(new Book("Premier", "Auteur", 2000, "Roman", true))));
+        shard.flush();
+
+        // Arrêt brutal: fin du dernier enregistrement perdue
+        File journal = new File(dir, "lib.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        shard = LibraryShard.open("lib", dir, true);
+        assertEquals(0, shard.snapshot().size());
+        shard.apply(List.of(new Change.Add(new Book("Second", "Auteur", 2001, "Roman", true))));
+        shard.flush();
+
+        shard = LibraryShard.open("lib", dir, true);
+        assertEquals(1, shard.snapshot().size());
+        assertEquals("Second", shard.snapshot().get(0).toBook().getTitle());
+    }
+
+    @Test
+    void recordWithoutNewlineIsKept() throws IOException {
+        LibraryShard shard = LibraryShard.create("lib", dir, true, List.of());
+        shard.apply(List.of(new Change.Add(new Book("Premier", "Auteur", 2000, "Roman", true))));
+        shard.flush();
+
+        // Arrêt brutal juste avant la fin de ligne
+        File journal = new File(dir, "lib.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        shard = LibraryShard.open("lib", dir, true);
+        shard.apply(List.of(new Change.Add(new Book("Second", "Auteur", 2001, "Roman", true))));
+        shard.flush();
+
+        shard = LibraryShard.open("lib", dir, true);
+        assertEquals(2, shard.snapshot().size());
+    }
+
+    @Test
+    void scanReadsSnapshotThenJournalWithoutRepairing() throws IOException {
+        LibraryShard shard = LibraryShard.create("lib", dir, true, List.of(new Book("Premier", "Auteur", 2000, "Roman", true)));
+        shard.apply(List.of(new Change.Add(new Book("Second", "Auteur", 2001, "Roman", true))));
+        shard.flush();
+
+        List<String> titles = new ArrayList<>();
+        LibraryShard.scan("lib", dir, b -> titles.add(b.getTitle()));
+        assertEquals(List.of("Premier", "Second"), titles);
+
+        // Fin tronquée: ignorée, mais laissée en place
+        File journal = new File(dir, "lib.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        long length = journal.length();
+        titles.clear();
+        LibraryShard.scan("lib", dir, b -> titles.add(b.getTitle()));
+        assertEquals(List.of("Premier"), titles);
+        assertEquals(length, journal.length());
+    }
+}